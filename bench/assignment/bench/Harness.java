@@ -0,0 +1,158 @@
+package assignment.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal benchmark runner in the style of JMH's average-time mode: each benchmark runs for
+ * a number of timed warm-up iterations, which are discarded, then for a number of measured
+ * iterations, and reports the mean time per operation with a 99.9% confidence interval.
+ * Results are written as JSON in the layout JMH uses (see toJson).
+ *
+ * An operation with a setup step is timed one call at a time and the setup is left out of
+ * the time; one without is timed in growing batches, so fast operations are not swamped by
+ * the cost of reading the clock.
+ */
+public class Harness {
+
+    public interface Op {
+        void run() throws Exception;
+    }
+
+    // Two-sided 99.9% quantile of the normal distribution, used for the score error
+    private static final double Z_999 = 3.291;
+    private static final int MAX_BATCH = 1 << 20;
+
+    // Results are stored here so the JIT cannot remove the work that produced them
+    private static volatile Object sink;
+
+    private final Map<String, String> params;
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationMillis;
+    private final List<String> results = new ArrayList<>();
+
+    public Harness(Map<String, String> params, int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.params = new LinkedHashMap<>(params);
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    public static void consume(Object value) {
+        sink = value;
+    }
+
+    /**
+     * Runs one benchmark and prints its score.
+     * @param setup Run before every operation and not timed, or null if there is none
+     */
+    public void run(String benchmark, Op setup, Op op) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(setup, op);
+        }
+        double[] scores = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            scores[i] = iteration(setup, op);
+        }
+
+        double mean = 0;
+        for (double score : scores) {
+            mean += score;
+        }
+        mean /= scores.length;
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double error = scores.length < 2 ? Double.NaN
+                : Z_999 * Math.sqrt(variance / (scores.length - 1)) / Math.sqrt(scores.length);
+
+        System.out.printf(Locale.ROOT, "%-42s %-12s %14.3f +- %10.3f us/op%n",
+                benchmark, params.values(), mean, error);
+        results.add(toJson(benchmark, mean, error, scores));
+    }
+
+    // Runs the operation for iterationMillis and returns the average microseconds per operation
+    private double iteration(Op setup, Op op) throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+        long elapsed = 0;
+        long operations = 0;
+        if (setup != null) {
+            do {
+                setup.run();
+                long start = System.nanoTime();
+                op.run();
+                elapsed += System.nanoTime() - start;
+                operations++;
+            } while (System.nanoTime() < deadline);
+        } else {
+            int batch = 1;
+            do {
+                long start = System.nanoTime();
+                for (int i = 0; i < batch; i++) {
+                    op.run();
+                }
+                elapsed += System.nanoTime() - start;
+                operations += batch;
+                batch = Math.min(batch * 2, MAX_BATCH);
+            } while (System.nanoTime() < deadline);
+        }
+        return elapsed / 1000.0 / operations;
+    }
+
+    /**
+     * Returns the results so far as a JSON array.
+     */
+    public String toJson() {
+        return "[\n" + String.join(",\n", results) + "\n]\n";
+    }
+
+    private String toJson(String benchmark, double score, double error, double[] scores) {
+        StringBuilder json = new StringBuilder();
+        json.append("    {\n");
+        json.append("        \"benchmark\" : ").append(quote(benchmark)).append(",\n");
+        json.append("        \"mode\" : \"avgt\",\n");
+        json.append("        \"threads\" : 1,\n");
+        json.append("        \"forks\" : 1,\n");
+        json.append("        \"jdkVersion\" : ").append(quote(System.getProperty("java.version"))).append(",\n");
+        json.append("        \"warmupIterations\" : ").append(warmupIterations).append(",\n");
+        json.append("        \"warmupTime\" : ").append(quote(iterationMillis + " ms")).append(",\n");
+        json.append("        \"measurementIterations\" : ").append(measurementIterations).append(",\n");
+        json.append("        \"measurementTime\" : ").append(quote(iterationMillis + " ms")).append(",\n");
+        json.append("        \"params\" : {");
+        String separator = "\n";
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            json.append(separator).append("            ").append(quote(param.getKey()))
+                    .append(" : ").append(quote(param.getValue()));
+            separator = ",\n";
+        }
+        json.append("\n        },\n");
+        json.append("        \"primaryMetric\" : {\n");
+        json.append("            \"score\" : ").append(number(score)).append(",\n");
+        json.append("            \"scoreError\" : ").append(number(error)).append(",\n");
+        json.append("            \"scoreConfidence\" : [").append(number(score - error)).append(", ")
+                .append(number(score + error)).append("],\n");
+        json.append("            \"scoreUnit\" : \"us/op\",\n");
+        json.append("            \"rawData\" : [[");
+        for (int i = 0; i < scores.length; i++) {
+            json.append(i == 0 ? "" : ", ").append(number(scores[i]));
+        }
+        json.append("]]\n");
+        json.append("        },\n");
+        json.append("        \"secondaryMetrics\" : {}\n");
+        json.append("    }");
+        return json.toString();
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,313 @@
+package assignment.bench;
+
+import assignment.model.Membership;
+import assignment.model.Staff;
+import assignment.model.Stock;
+import assignment.repo.MemberStore;
+import assignment.repo.Repositories;
+import assignment.repo.StockRepository;
+import assignment.service.CartSessionManager;
+import assignment.service.PaymentService;
+import assignment.service.SalesService;
+import assignment.util.IoStats;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the sales and payment services headlessly, the way the tills do through
+ * SalesController, with a number of simulated terminals running at once. Each terminal has
+ * its own SalesService, like a till; the cart sessions, stock, and payment service are
+ * shared, as they are between tills.
+ *
+ * A terminal runs shopping sessions one after another: add products, edit and remove lines,
+ * then pay, with the discount of a member when the session names one. Sessions are either
+ * randomized (seeded per terminal, so a run can be repeated) or replayed from a script
+ * file, one step per line, blank line or # for comments:
+ *
+ *   add 10001 2        product ID and quantity
+ *   edit 1 +1          order number and quantity change (+ to add, - to reduce)
+ *   remove 2           order number
+ *   pay 100            pays the cart, with the discount of member 100 (0 or none: no member)
+ *   cancel             cancels the cart instead
+ *
+ * Every terminal plays the whole script per session. After WARMUP_SESSIONS sessions per
+ * terminal, which are not counted, reports throughput, p50/p99/p999 latency per step,
+ * and files opened for writing per paid order (see IoStats).
+ *
+ * The run writes to the data files in the working directory. Unless rows is 0 they are first
+ * replaced with synthetic data of that many rows (see SyntheticData), so "ant load" runs in
+ * build/load and never touches the real data.
+ *
+ * Usage: ant load [-Dload.terminals=8] [-Dload.sessions=500] [-Dload.script=random|file] [-Dload.rows=10000]
+ *        LoadGenerator [terminals [sessionsPerTerminal [random|scriptFile [rows [seed]]]]]
+ */
+public class LoadGenerator {
+    private static final int WARMUP_SESSIONS = 20;
+    private static final int MAX_LINES = 6;
+    // Chance in percent that a randomized session edits a line, removes one, or names a member
+    private static final int EDIT_PERCENT = 30;
+    private static final int REMOVE_PERCENT = 15;
+    private static final int MEMBER_PERCENT = 60;
+
+    private enum Action { ADD, EDIT, REMOVE, PAY, CANCEL }
+
+    private static final class Step {
+        final Action action;
+        final int first;
+        final int second;
+
+        Step(Action action, int first, int second) {
+            this.action = action;
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    // Growable list of latencies in nanoseconds, one per step
+    private static final class Latencies {
+        long[] values = new long[1024];
+        int size;
+        long failed;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        void addAll(Latencies other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+            failed += other.failed;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int terminals = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        String script = args.length > 2 ? args[2] : "random";
+        int rows = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+
+        if (rows > 0) {
+            System.out.printf("Generating %d rows of each file%n", rows);
+            SyntheticData.generate(rows);
+        }
+        List<Step> scripted = script.equals("random") ? null : readScript(script);
+
+        StockRepository stockRepo = new StockRepository();
+        CartSessionManager sessionManager = new CartSessionManager(stockRepo);
+        PaymentService paymentService = new PaymentService(stockRepo, Repositories.paidItems(), Repositories.transactions());
+        MemberStore memberRepo = Repositories.members();
+        int[] productIds = stockRepo.loadStockFromFile().stream().mapToInt(Stock::getStockID).toArray();
+        int[] memberIds = memberRepo.loadAllMembers().stream().mapToInt(Membership::getId).toArray();
+        int[] staffIds = Repositories.staff().loadAllStaff().stream().mapToInt(Staff::getId).toArray();
+        if (productIds.length == 0) {
+            throw new IllegalStateException("No stock to sell; pass a row count to generate data");
+        }
+
+        // Counting starts once every terminal has finished warming up
+        AtomicLong startNanos = new AtomicLong();
+        CyclicBarrier warmedUp = new CyclicBarrier(terminals, () -> {
+            IoStats.reset();
+            startNanos.set(System.nanoTime());
+        });
+        Latencies[][] latencies = new Latencies[terminals][Action.values().length];
+        Thread[] threads = new Thread[terminals];
+        Throwable[] errors = new Throwable[terminals];
+        for (int t = 0; t < terminals; t++) {
+            int terminal = t;
+            for (int a = 0; a < Action.values().length; a++) {
+                latencies[t][a] = new Latencies();
+            }
+            SalesService sales = new SalesService(stockRepo, sessionManager);
+            int staffId = staffIds.length == 0 ? 0 : staffIds[t % staffIds.length];
+            Random random = new Random(seed + t);
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int s = 0; s < WARMUP_SESSIONS; s++) {
+                        runSession(scripted != null ? scripted : randomSession(random, productIds, memberIds),
+                                sales, sessionManager, paymentService, memberRepo, staffId, null);
+                    }
+                    warmedUp.await();
+                    for (int s = 0; s < sessions; s++) {
+                        runSession(scripted != null ? scripted : randomSession(random, productIds, memberIds),
+                                sales, sessionManager, paymentService, memberRepo, staffId, latencies[terminal]);
+                    }
+                } catch (Throwable e) {
+                    errors[terminal] = e;
+                    warmedUp.reset();
+                }
+            }, "terminal-" + (t + 1));
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos.get();
+        Map<String, Long> opens = IoStats.snapshot();
+        sessionManager.shutdown();
+        stockRepo.shutdown();
+        for (Throwable error : errors) {
+            if (error != null) {
+                throw new IllegalStateException("A terminal failed", error);
+            }
+        }
+
+        report(terminals, sessions, script, elapsedNanos, latencies, opens);
+    }
+
+    // Runs one session on a terminal; latencies is null while warming up
+    private static void runSession(List<Step> steps, SalesService sales, CartSessionManager sessionManager,
+                                   PaymentService paymentService, MemberStore memberRepo, int staffId,
+                                   Latencies[] latencies) {
+        for (Step step : steps) {
+            long start = System.nanoTime();
+            boolean done;
+            switch (step.action) {
+                case ADD:
+                    done = sales.addToCart(step.first, step.second);
+                    break;
+                case EDIT:
+                    done = sales.editOrderQuantity(step.first, Math.abs(step.second), step.second < 0 ? 1 : 2);
+                    break;
+                case REMOVE:
+                    done = sales.removeOrder(step.first);
+                    break;
+                case PAY:
+                    // The till looks the member up for the discount, as part of taking the payment
+                    Membership member = step.first == 0 ? null : memberRepo.findById(step.first);
+                    double discountRate = member == null ? 0.0 : member.getDiscountRate();
+                    done = paymentService.processPayment(sales.getCurrentCart(), discountRate, staffId,
+                            member == null ? 0 : step.first) != null;
+                    if (done) {
+                        // As SalesController does, so the paid cart leaves the open carts
+                        sales.closeCurrentCart();
+                    }
+                    break;
+                default:
+                    sessionManager.cancel(sales.getCurrentCart());
+                    done = true;
+                    break;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (latencies != null) {
+                Latencies action = latencies[step.action.ordinal()];
+                action.add(elapsed);
+                if (!done) {
+                    action.failed++;
+                }
+            }
+        }
+        // A session whose payment failed leaves its cart behind; start the next one afresh
+        if (!sales.getCurrentCart().isEmpty()) {
+            sessionManager.cancel(sales.getCurrentCart());
+        }
+    }
+
+    private static List<Step> randomSession(Random random, int[] productIds, int[] memberIds) {
+        List<Step> steps = new ArrayList<>();
+        int lines = 1 + random.nextInt(MAX_LINES);
+        int[] quantities = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            quantities[i] = 1 + random.nextInt(3);
+            steps.add(new Step(Action.ADD, productIds[random.nextInt(productIds.length)], quantities[i]));
+        }
+        // Order numbers start at 1 in every new cart
+        int edited = random.nextInt(lines);
+        if (random.nextInt(100) < EDIT_PERCENT) {
+            int change = quantities[edited] > 1 && random.nextBoolean() ? -1 : 1;
+            steps.add(new Step(Action.EDIT, edited + 1, change));
+        }
+        if (lines > 1 && random.nextInt(100) < REMOVE_PERCENT) {
+            steps.add(new Step(Action.REMOVE, (edited + 1) % lines + 1, 0));
+        }
+        int memberId = memberIds.length > 0 && random.nextInt(100) < MEMBER_PERCENT
+                ? memberIds[random.nextInt(memberIds.length)] : 0;
+        steps.add(new Step(Action.PAY, memberId, 0));
+        return steps;
+    }
+
+    private static List<Step> readScript(String path) throws IOException {
+        List<Step> steps = new ArrayList<>();
+        int lineNo = 0;
+        for (String line : Files.readAllLines(Paths.get(path))) {
+            lineNo++;
+            String[] words = line.trim().split("\\s+");
+            if (words[0].isEmpty() || words[0].startsWith("#")) {
+                continue;
+            }
+            try {
+                Action action = Action.valueOf(words[0].toUpperCase(Locale.ROOT));
+                int first = words.length > 1 ? Integer.parseInt(words[1]) : 0;
+                int second = words.length > 2 ? Integer.parseInt(words[2].replace("+", "")) : 0;
+                steps.add(new Step(action, first, second));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(path + ":" + lineNo + ": cannot read step \"" + line + "\"", e);
+            }
+        }
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException(path + " has no steps");
+        }
+        return steps;
+    }
+
+    private static void report(int terminals, int sessions, String script, long elapsedNanos,
+                               Latencies[][] latencies, Map<String, Long> opens) {
+        double seconds = elapsedNanos / 1e9;
+        long steps = 0;
+        Latencies[] byAction = new Latencies[Action.values().length];
+        for (Action action : Action.values()) {
+            byAction[action.ordinal()] = new Latencies();
+            for (Latencies[] terminal : latencies) {
+                byAction[action.ordinal()].addAll(terminal[action.ordinal()]);
+            }
+            steps += byAction[action.ordinal()].size;
+        }
+        Latencies pay = byAction[Action.PAY.ordinal()];
+        long orders = pay.size - pay.failed;
+
+        System.out.printf("%d terminals x %d sessions (%s), %d orders paid in %.2f s%n",
+                terminals, sessions, script, orders, seconds);
+        System.out.printf(Locale.ROOT, "Throughput: %.1f orders/s, %.1f steps/s%n", orders / seconds, steps / seconds);
+        System.out.printf("%-8s %10s %8s %12s %12s %12s%n", "STEP", "COUNT", "FAILED", "P50 (us)", "P99 (us)", "P999 (us)");
+        for (Action action : Action.values()) {
+            Latencies step = byAction[action.ordinal()];
+            if (step.size == 0) {
+                continue;
+            }
+            long[] sorted = Arrays.copyOf(step.values, step.size);
+            Arrays.sort(sorted);
+            System.out.printf(Locale.ROOT, "%-8s %10d %8d %12.1f %12.1f %12.1f%n",
+                    action.name().toLowerCase(Locale.ROOT), step.size, step.failed,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999));
+        }
+
+        long totalOpens = 0;
+        for (long count : opens.values()) {
+            totalOpens += count;
+        }
+        System.out.printf(Locale.ROOT, "Files opened for writing per order: %.2f%n",
+                orders == 0 ? 0.0 : (double) totalOpens / orders);
+        for (Map.Entry<String, Long> file : opens.entrySet()) {
+            System.out.printf(Locale.ROOT, "  %-30s %8.2f%n", file.getKey(),
+                    orders == 0 ? 0.0 : (double) file.getValue() / orders);
+        }
+    }
+
+    // In microseconds
+    private static double percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * quantile))] / 1000.0;
+    }
+}
@@ -0,0 +1,144 @@
+package assignment.bench;
+
+import assignment.model.Stock;
+import assignment.repo.MappedLogReader;
+import assignment.repo.PaidItemRepository;
+import assignment.repo.PaidItemRepository.FsyncPolicy;
+import assignment.util.Money;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compares scanning PaidItem.txt (summing revenue over every line) with the line reader
+ * plus String.split, the lazy stream of Stock objects, and the memory-mapped MappedLogReader.
+ * Reports throughput in MB/s and lines/s, and bytes allocated per line where the JVM
+ * can measure it.
+ *
+ * Usage: ant bench -Dbench.class=assignment.bench.LogParseBenchmark [-Dbench.args="lines rounds"]
+ */
+public class LogParseBenchmark {
+
+    private interface Scan {
+        long run(String filePath) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File dir = Files.createTempDirectory("logparse-bench").toFile();
+        File file = new File(dir, "PaidItem.txt");
+        writePaidItems(file, lines);
+        double megabytes = file.length() / (1024.0 * 1024.0);
+        System.out.printf("%d lines, %.1f MB, best of %d rounds%n", lines, megabytes, rounds);
+        System.out.printf("%-18s %12s %14s %14s%n", "READER", "MB/s", "LINES/s", "BYTES/LINE");
+
+        long expected = splitScan(file.getPath());
+        run("readLine+split", file.getPath(), LogParseBenchmark::splitScan, rounds, lines, megabytes, expected);
+        run("streamPaidItems", file.getPath(), LogParseBenchmark::streamScan, rounds, lines, megabytes, expected);
+        run("MappedLogReader", file.getPath(), LogParseBenchmark::mappedScan, rounds, lines, megabytes, expected);
+
+        file.delete();
+        dir.delete();
+    }
+
+    private static void run(String name, String filePath, Scan scan, int rounds, int lines,
+                            double megabytes, long expected) throws IOException {
+        // Warm up so the JIT has compiled the parse loop before measuring
+        check(name, scan.run(filePath), expected);
+
+        long best = Long.MAX_VALUE;
+        long allocated = -1;
+        for (int i = 0; i < rounds; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            check(name, scan.run(filePath), expected);
+            long elapsed = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            if (elapsed < best) {
+                best = elapsed;
+                allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+            }
+        }
+
+        double seconds = best / 1e9;
+        System.out.printf("%-18s %12.1f %14.0f %14s%n", name, megabytes / seconds, lines / seconds,
+                allocated < 0 ? "n/a" : String.format("%.1f", (double) allocated / lines));
+    }
+
+    private static long splitScan(String filePath) throws IOException {
+        long revenue = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length >= 4) {
+                    revenue += Money.parse(parts[3]) * Integer.parseInt(parts[2]);
+                }
+            }
+        }
+        return revenue;
+    }
+
+    private static long streamScan(String filePath) {
+        PaidItemRepository repo = new PaidItemRepository(filePath, FsyncPolicy.NONE, 0L);
+        long revenue = 0;
+        try (Stream<Stock> items = repo.streamPaidItems()) {
+            Iterator<Stock> it = items.iterator();
+            while (it.hasNext()) {
+                revenue += it.next().calculateTotalCost();
+            }
+        }
+        return revenue;
+    }
+
+    private static long mappedScan(String filePath) throws IOException {
+        long revenue = 0;
+        try (MappedLogReader reader = new MappedLogReader(filePath)) {
+            while (reader.next()) {
+                if (reader.fieldCount() >= PaidItemRepository.FIELD_COUNT) {
+                    revenue += reader.getCents(PaidItemRepository.FIELD_PRICE)
+                            * reader.getInt(PaidItemRepository.FIELD_QTY);
+                }
+            }
+        }
+        return revenue;
+    }
+
+    private static void check(String name, long revenue, long expected) {
+        if (revenue != expected) {
+            throw new IllegalStateException(name + " summed " + revenue + " instead of " + expected);
+        }
+    }
+
+    private static void writePaidItems(File file, int lines) throws IOException {
+        PaidItemRepository repo = new PaidItemRepository(file.getPath(), FsyncPolicy.NONE, 0L);
+        List<Stock> batch = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            batch.add(new Stock(i + 1, 10001 + i % 500, "ITEM " + (i % 500), 1 + i % 5, 90 + (i % 500) * 37L));
+            if (batch.size() == 10_000) {
+                repo.appendPaidItems(batch);
+                batch.clear();
+            }
+        }
+        repo.appendPaidItems(batch);
+    }
+
+    // Bytes allocated by this thread so far, or -1 if the JVM does not report it
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,99 @@
+package assignment.bench;
+
+import assignment.model.Stock;
+import assignment.repo.PaidItemRepository;
+import assignment.repo.PaidItemRepository.FsyncPolicy;
+import assignment.util.IoStats;
+import assignment.util.Money;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares writing a checkout to PaidItem.txt line by line (the old appendPaidItem loop,
+ * one file open per cart line) with the batched single-handle write, for each fsync policy.
+ * Reports file opens per checkout and p50/p99 latency per checkout.
+ *
+ * Usage: ant bench -Dbench.class=assignment.bench.PaidItemWriteBenchmark [-Dbench.args="checkouts lines"]
+ */
+public class PaidItemWriteBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int checkouts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int linesPerCheckout = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        List<Stock> cart = new ArrayList<>();
+        for (int i = 0; i < linesPerCheckout; i++) {
+            cart.add(new Stock(i + 1, 10001 + i, "ITEM " + i, 1 + i % 5, 990 + i * 100L));
+        }
+
+        File dir = Files.createTempDirectory("paiditem-bench").toFile();
+        System.out.printf("%d checkouts x %d lines%n", checkouts, linesPerCheckout);
+        System.out.printf("%-22s %15s %12s %12s%n", "MODE", "OPENS/CHECKOUT", "P50 (us)", "P99 (us)");
+
+        run("legacy per-line", checkouts, () -> legacyAppend(new File(dir, "legacy.txt").getPath(), cart));
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            File file = new File(dir, "batched-" + policy + ".txt");
+            PaidItemRepository repo = new PaidItemRepository(file.getPath(), policy, 1000L);
+            run("batched " + policy, checkouts, () -> {
+                try {
+                    repo.appendPaidItems(cart);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private static void run(String mode, int checkouts, Runnable checkout) {
+        // Warm up so the JIT has compiled the write path before measuring
+        for (int i = 0; i < Math.min(200, checkouts); i++) {
+            checkout.run();
+        }
+
+        IoStats.reset();
+        long[] latencies = new long[checkouts];
+        for (int i = 0; i < checkouts; i++) {
+            long start = System.nanoTime();
+            checkout.run();
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("%-22s %15.1f %12.1f %12.1f%n", mode,
+                (double) IoStats.getTotalOpens() / checkouts,
+                latencies[(int) (checkouts * 0.50)] / 1000.0,
+                latencies[Math.min(checkouts - 1, (int) (checkouts * 0.99))] / 1000.0);
+    }
+
+    // The write path as it was before batching: ensureFileExists plus a FileWriter per line
+    private static void legacyAppend(String filePath, List<Stock> items) {
+        for (Stock item : items) {
+            File file = new File(filePath);
+            try {
+                if (!file.exists()) {
+                    file.createNewFile();
+                }
+                try (FileWriter writer = new FileWriter(filePath, true)) {
+                    IoStats.recordOpen(filePath);
+                    writer.write(item.getStockID() + "\t");
+                    writer.write(item.getStockName() + "\t");
+                    writer.write(item.getQty() + "\t");
+                    writer.write(Money.format(item.getPriceCents()) + "\t");
+                    writer.write("\n");
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
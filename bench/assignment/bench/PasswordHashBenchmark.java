@@ -0,0 +1,67 @@
+package assignment.bench;
+
+import assignment.util.PasswordHasher;
+import java.util.Arrays;
+
+/**
+ * Measures staff password verification for a range of PBKDF2 iteration counts, to choose
+ * staff.password.iterations against the login latency budget. Reports p50/p99 of a full
+ * verification (cache cleared each time, i.e. a first login) and of a cached re-verification.
+ *
+ * Usage: ant bench -Dbench.class=assignment.bench.PasswordHashBenchmark
+ *            [-Dbench.args="samples iterations1,iterations2,..."]
+ */
+public class PasswordHashBenchmark {
+
+    public static void main(String[] args) {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int[] costs = args.length > 1
+                ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[]{50_000, 100_000, 210_000, 310_000, 600_000};
+        String password = "Password123";
+
+        System.out.printf("%d samples per cost, configured cost %d%n", samples, PasswordHasher.ITERATIONS);
+        System.out.printf("%-12s %14s %14s %16s%n", "ITERATIONS", "P50 (ms)", "P99 (ms)", "CACHED P50 (us)");
+
+        for (int cost : costs) {
+            String stored = PasswordHasher.hash(password, cost);
+            // Warm up so the JIT has compiled the derivation before measuring
+            for (int i = 0; i < 5; i++) {
+                PasswordHasher.clearCache();
+                PasswordHasher.verify(password, stored);
+            }
+
+            long[] full = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                PasswordHasher.clearCache();
+                long start = System.nanoTime();
+                check(PasswordHasher.verify(password, stored));
+                full[i] = System.nanoTime() - start;
+            }
+
+            long[] cached = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                long start = System.nanoTime();
+                check(PasswordHasher.verify(password, stored));
+                cached[i] = System.nanoTime() - start;
+            }
+
+            Arrays.sort(full);
+            Arrays.sort(cached);
+            System.out.printf("%-12d %14.2f %14.2f %16.1f%n", cost,
+                    percentile(full, 0.50) / 1_000_000.0,
+                    percentile(full, 0.99) / 1_000_000.0,
+                    percentile(cached, 0.50) / 1000.0);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static void check(boolean verified) {
+        if (!verified) {
+            throw new IllegalStateException("verification failed");
+        }
+    }
+}
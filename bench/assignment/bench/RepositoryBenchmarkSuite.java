@@ -0,0 +1,175 @@
+package assignment.bench;
+
+import assignment.model.Cart;
+import assignment.repo.MemberRepository;
+import assignment.repo.Repositories;
+import assignment.repo.StaffRepository;
+import assignment.repo.StockRepository;
+import assignment.repo.TransactionStore;
+import assignment.service.CartSessionManager;
+import assignment.service.PaymentService;
+import assignment.service.SalesService;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks the repository and service hot paths against synthetic data (see SyntheticData)
+ * of 1k, 100k and 1M rows and writes the results as JSON in the layout JMH uses, so two runs
+ * can be diffed or loaded into a JMH results viewer.
+ *
+ * Each size runs in its own JVM, in its own data directory next to the results file, so the
+ * repositories' caches, ID sequences and background threads never carry over from one size
+ * to the next. The stock write-behind thread is held back so it cannot compact in the
+ * middle of a timed operation.
+ *
+ * Usage: ant bench-suite [-Dbench.sizes=1000,100000] [-Dbench.out=build/bench/results.json]
+ *        RepositoryBenchmarkSuite [resultsFile [sizes [warmupIterations measurementIterations iterationMillis]]]
+ */
+public class RepositoryBenchmarkSuite {
+    private static final String CHILD_FLAG = "--rows";
+    // Lookups cycle through this many precomputed keys, chosen at random with a fixed seed
+    private static final int KEY_COUNT = 1024;
+    private static final int CART_LINES = 3;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals(CHILD_FLAG)) {
+            runSize(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                    Long.parseLong(args[4]), new File(args[5]));
+            return;
+        }
+
+        File results = new File(args.length > 0 ? args[0] : "build/bench/results.json").getAbsoluteFile();
+        String sizes = args.length > 1 ? args[1] : "1000,100000,1000000";
+        String warmup = args.length > 2 ? args[2] : "3";
+        String measurement = args.length > 3 ? args[3] : "5";
+        String iterationMillis = args.length > 4 ? args[4] : "1000";
+
+        List<String> entries = new ArrayList<>();
+        for (String size : sizes.split(",")) {
+            int rows = Integer.parseInt(size.trim());
+            File dir = new File(results.getParentFile(), "data-" + rows);
+            dir.mkdirs();
+            File part = new File(dir, "results.json");
+
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-Dstock.writeBehind.intervalMs=3600000");
+            command.add("-Dstock.writeBehind.maxDirty=" + Integer.MAX_VALUE);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(RepositoryBenchmarkSuite.class.getName());
+            Collections.addAll(command, CHILD_FLAG, String.valueOf(rows), warmup, measurement, iterationMillis,
+                    part.getPath());
+            Process process = new ProcessBuilder(command).directory(dir).inheritIO().start();
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("Benchmarks for " + rows + " rows failed");
+            }
+
+            String json = Files.readString(part.toPath());
+            String body = json.substring(json.indexOf('[') + 1, json.lastIndexOf(']')).replaceAll("^\\n+|\\n+$", "");
+            if (!body.isBlank()) {
+                entries.add(body);
+            }
+        }
+
+        Files.writeString(results.toPath(), "[\n" + String.join(",\n", entries) + "\n]\n");
+        System.out.println("Results written to " + results);
+    }
+
+    // Runs every benchmark against data of one size, in the working directory
+    private static void runSize(int rows, int warmup, int measurement, long iterationMillis, File out) throws Exception {
+        System.out.printf("Generating %d rows of each file%n", rows);
+        SyntheticData.generate(rows);
+        Harness harness = new Harness(Collections.singletonMap("rows", String.valueOf(rows)),
+                warmup, measurement, iterationMillis);
+
+        Random random = new Random(42);
+        int[] stockIds = new int[KEY_COUNT];
+        String[] memberIcs = new String[KEY_COUNT];
+        String[] staffIcs = new String[KEY_COUNT];
+        long[] fromTimes = new long[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            int row = random.nextInt(rows);
+            stockIds[i] = SyntheticData.FIRST_STOCK_ID + row;
+            memberIcs[i] = SyntheticData.memberIc(row);
+            staffIcs[i] = SyntheticData.staffIc(row);
+            fromTimes[i] = 1_700_000_000_000L + row * 60_000L;
+        }
+        int[] next = {0};
+
+        StockRepository stockRepo = new StockRepository();
+        harness.run("StockRepository.loadStockFromFile", stockRepo::shutdown,
+                () -> Harness.consume(stockRepo.loadStockFromFile()));
+        // One changed row, so every save rewrites the whole snapshot
+        harness.run("StockRepository.saveStockToFile",
+                () -> {
+                    try {
+                        stockRepo.adjustQuantity(stockRepo.findById(stockIds[next[0]++ % KEY_COUNT]), 1, "BENCH");
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                },
+                stockRepo::saveStockToFile);
+
+        MemberRepository memberRepo = new MemberRepository();
+        harness.run("MemberRepository.loadAllMembers", null, () -> Harness.consume(memberRepo.loadAllMembers()));
+        harness.run("MemberRepository.existsByIc", null,
+                () -> Harness.consume(memberRepo.existsByIc(memberIcs[next[0]++ % KEY_COUNT])));
+
+        // Verified passwords are cached (see PasswordHasher), so this is the cost of a repeat login
+        StaffRepository staffRepo = new StaffRepository();
+        harness.run("StaffRepository.findByCredentials", null,
+                () -> Harness.consume(staffRepo.findByCredentials(staffIcs[next[0]++ % KEY_COUNT], SyntheticData.PASSWORD)));
+
+        TransactionStore transactionRepo = Repositories.transactions();
+        // One hour of transactions, starting at a random one
+        harness.run("TransactionRepository.query", null, () -> {
+            long from = fromTimes[next[0]++ % KEY_COUNT];
+            Harness.consume(transactionRepo.query(from, from + 3_600_000L, null));
+        });
+
+        CartSessionManager sessions = new CartSessionManager(stockRepo);
+        SalesService sales = new SalesService(stockRepo, sessions);
+        // A fresh cart every 50 lines, so the cart does not grow for the whole run
+        harness.run("SalesService.addToCart",
+                () -> {
+                    Cart cart = sales.getCurrentCart();
+                    if (cart.size() >= 50) {
+                        sessions.cancel(cart);
+                    }
+                },
+                () -> Harness.consume(sales.addToCart(stockIds[next[0]++ % KEY_COUNT], 1)));
+        // Alternately adds and removes one unit on the first line of the cart
+        harness.run("SalesService.editOrderQuantity",
+                () -> {
+                    if (sales.findCartItemByOrderNo(1) == null) {
+                        sessions.cancel(sales.getCurrentCart());
+                        sales.addToCart(stockIds[0], 1);
+                    }
+                },
+                () -> Harness.consume(sales.editOrderQuantity(1, 1, next[0]++ % 2 == 0 ? 2 : 1)));
+
+        PaymentService paymentService = new PaymentService(stockRepo, Repositories.paidItems(), transactionRepo);
+        sessions.cancel(sales.getCurrentCart());
+        harness.run("PaymentService.processPayment",
+                () -> {
+                    for (int i = 0; i < CART_LINES; i++) {
+                        sales.addToCart(stockIds[next[0]++ % KEY_COUNT], 1 + i);
+                    }
+                },
+                () -> Harness.consume(paymentService.processPayment(sales.getCurrentCart(), 0.1,
+                        SyntheticData.FIRST_STAFF_ID, SyntheticData.FIRST_MEMBER_ID)));
+
+        sessions.shutdown();
+        stockRepo.shutdown();
+        Files.writeString(out.toPath(), harness.toJson());
+    }
+}
@@ -0,0 +1,182 @@
+package assignment.bench;
+
+import assignment.util.FieldTokenizer;
+import assignment.util.Money;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the cost of parsing one row of each data file, before (line.split("\t") plus
+ * Integer.parseInt / Double.parseDouble / Money.parse, as the repositories used to do) and
+ * after (FieldTokenizer). Reports bytes allocated and nanoseconds per row.
+ *
+ * Both variants extract the same fields, including the name Strings the repositories keep,
+ * and skip building the model objects, which costs the same either way.
+ *
+ * Usage: ant bench -Dbench.class=assignment.bench.RowParseBenchmark [-Dbench.args="rows rounds"]
+ */
+public class RowParseBenchmark {
+
+    private interface Parser {
+        long parse(String line);
+    }
+
+    private static class Format {
+        final String name;
+        final List<String> lines;
+        final Parser before;
+        final Parser after;
+
+        Format(String name, List<String> lines, Parser before, Parser after) {
+            this.name = name;
+            this.lines = lines;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private static final FieldTokenizer fields = new FieldTokenizer();
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<Format> formats = new ArrayList<>();
+        formats.add(new Format("stock.txt", lines(rows, i -> (10001 + i) + "\tITEM " + i + "\t" + (i % 300) + "\t" + Money.format(90 + i % 5000) + "\t"),
+                RowParseBenchmark::stockBefore, RowParseBenchmark::stockAfter));
+        formats.add(new Format("member.txt", lines(rows, i -> "MEMBER " + i + "\t0101010" + i + "\t01234" + i + "\t" + (2000 + i) + "\tGold\t"),
+                RowParseBenchmark::memberBefore, RowParseBenchmark::memberAfter));
+        formats.add(new Format("staff.txt", lines(rows, i -> (1000 + i) + "\t9901010" + i + "\tSTAFF " + i + "\tpbkdf2$210000$c2FsdA$aGFzaA\t" + (20 + i % 40) + "\t" + (2500.0 + i % 900) + "\t"),
+                RowParseBenchmark::staffBefore, RowParseBenchmark::staffAfter));
+        formats.add(new Format("Transaction.txt", lines(rows, i -> (i + 1) + "\t" + (1_700_000_000_000L + i * 60_000L) + "\t" + (1000 + i % 7) + "\t" + (i % 3 == 0 ? 0 : 2000 + i % 50) + "\t" + Money.format(1000 + i) + "\t" + Money.format(i % 100) + "\t" + Money.format(60 + i % 40) + "\t" + Money.format(1100 + i) + "\t"),
+                RowParseBenchmark::transactionBefore, RowParseBenchmark::transactionAfter));
+        formats.add(new Format("PaidItem.txt", lines(rows, i -> (10001 + i % 500) + "\tITEM " + (i % 500) + "\t" + (1 + i % 5) + "\t" + Money.format(90 + i % 5000) + "\t"),
+                RowParseBenchmark::paidItemBefore, RowParseBenchmark::paidItemAfter));
+
+        System.out.printf("%d rows per file, best of %d rounds%n", rows, rounds);
+        System.out.printf("%-16s %16s %16s %14s %14s%n", "FILE", "BYTES/ROW BEFORE", "BYTES/ROW AFTER", "NS/ROW BEFORE", "NS/ROW AFTER");
+        for (Format format : formats) {
+            long expected = scan(format.lines, format.before);
+            if (scan(format.lines, format.after) != expected) {
+                throw new IllegalStateException(format.name + ": parsers disagree");
+            }
+            double[] before = measure(format.lines, format.before, rounds);
+            double[] after = measure(format.lines, format.after, rounds);
+            System.out.printf("%-16s %16s %16s %14.1f %14.1f%n", format.name,
+                    formatBytes(before[0]), formatBytes(after[0]), before[1], after[1]);
+        }
+    }
+
+    private interface LineMaker {
+        String make(int i);
+    }
+
+    private static List<String> lines(int rows, LineMaker maker) {
+        List<String> lines = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            lines.add(maker.make(i));
+        }
+        return lines;
+    }
+
+    // Returns {bytes allocated per row, nanoseconds per row} of the fastest round
+    private static double[] measure(List<String> lines, Parser parser, int rounds) {
+        scan(lines, parser); // warm up
+        long bestNanos = Long.MAX_VALUE;
+        long bestAllocated = -1;
+        for (int i = 0; i < rounds; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            scan(lines, parser);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+            if (elapsed < bestNanos) {
+                bestNanos = elapsed;
+                bestAllocated = allocated;
+            }
+        }
+        return new double[]{bestAllocated < 0 ? -1 : (double) bestAllocated / lines.size(),
+                (double) bestNanos / lines.size()};
+    }
+
+    private static long scan(List<String> lines, Parser parser) {
+        long checksum = 0;
+        for (String line : lines) {
+            checksum += parser.parse(line);
+        }
+        return checksum;
+    }
+
+    private static String formatBytes(double bytes) {
+        return bytes < 0 ? "n/a" : String.format("%.1f", bytes);
+    }
+
+    // ---- Before: split and parse each part ----
+
+    private static long stockBefore(String line) {
+        String[] parts = line.split("\t");
+        return Integer.parseInt(parts[0]) + parts[1].length() + Integer.parseInt(parts[2]) + Money.parse(parts[3]);
+    }
+
+    private static long memberBefore(String line) {
+        String[] parts = line.split("\t");
+        return parts[0].length() + parts[1].length() + parts[2].length() + Integer.parseInt(parts[3]) + parts[4].length();
+    }
+
+    private static long staffBefore(String line) {
+        String[] parts = line.split("\t");
+        return Integer.parseInt(parts[0]) + parts[1].length() + parts[2].length() + parts[3].length()
+                + Integer.parseInt(parts[4]) + (long) Double.parseDouble(parts[5]);
+    }
+
+    private static long transactionBefore(String line) {
+        String[] parts = line.split("\t");
+        return Long.parseLong(parts[0]) + Long.parseLong(parts[1]) + Integer.parseInt(parts[2]) + Integer.parseInt(parts[3])
+                + Money.parse(parts[4]) + Money.parse(parts[5]) + Money.parse(parts[6]) + Money.parse(parts[7]);
+    }
+
+    private static long paidItemBefore(String line) {
+        String[] parts = line.split("\t");
+        return Integer.parseInt(parts[0]) + parts[1].length() + Integer.parseInt(parts[2]) + Money.parse(parts[3]);
+    }
+
+    // ---- After: FieldTokenizer, Strings only for the text fields ----
+
+    private static long stockAfter(String line) {
+        fields.reset(line);
+        return fields.getInt(0) + fields.getString(1).length() + fields.getInt(2) + fields.getCents(3);
+    }
+
+    private static long memberAfter(String line) {
+        fields.reset(line);
+        return fields.getString(0).length() + fields.getString(1).length() + fields.getString(2).length()
+                + fields.getInt(3) + fields.getString(4).length();
+    }
+
+    private static long staffAfter(String line) {
+        fields.reset(line);
+        return fields.getInt(0) + fields.getString(1).length() + fields.getString(2).length() + fields.getString(3).length()
+                + fields.getInt(4) + (long) fields.getDouble(5);
+    }
+
+    private static long transactionAfter(String line) {
+        fields.reset(line);
+        return fields.getLong(0) + fields.getLong(1) + fields.getInt(2) + fields.getInt(3)
+                + fields.getCents(4) + fields.getCents(5) + fields.getCents(6) + fields.getCents(7);
+    }
+
+    private static long paidItemAfter(String line) {
+        fields.reset(line);
+        return fields.getInt(0) + fields.getString(1).length() + fields.getInt(2) + fields.getCents(3);
+    }
+
+    // Bytes allocated by this thread so far, or -1 if the JVM does not report it
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,99 @@
+package assignment.bench;
+
+import assignment.util.Money;
+import assignment.util.PasswordHasher;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Writes synthetic data files of a given size into the working directory, in the formats the
+ * repositories read: stock.txt, members.txt, staff.txt, Transaction.txt and PaidItem.txt.
+ * Everything derived from them (stock journal, transaction index, rollups, sequences,
+ * checkout log, embedded database) is removed, so every run starts from the same state.
+ *
+ * Row i of each file is always the same, so two runs of the same size see identical data.
+ * Every staff member has the password PASSWORD, stored as one shared hash, and every product
+ * has STOCK_QTY units so the sales benchmarks never run out.
+ */
+public final class SyntheticData {
+    public static final String PASSWORD = "bench-password";
+    public static final int FIRST_STOCK_ID = 10001;
+    public static final int FIRST_MEMBER_ID = 100;
+    public static final int FIRST_STAFF_ID = 1000;
+    public static final int STOCK_QTY = 1_000_000_000;
+    private static final long FIRST_TIMESTAMP = 1_700_000_000_000L;
+    private static final String[] MEMBER_TYPES = {"Normal", "Gold", "Premium"};
+    private static final String[] DERIVED_FILES = {"Transaction.idx", "rollups.txt", "sequences.txt",
+            "checkout.log", "tarcafe.db", "stock_audit.txt", "stock.bin", "stock.names"};
+
+    private SyntheticData() {
+    }
+
+    public static String memberIc(int row) {
+        return String.valueOf(800_000_000_000L + row);
+    }
+
+    public static String staffIc(int row) {
+        return String.valueOf(900_000_000_000L + row);
+    }
+
+    /**
+     * Replaces the data files in the working directory with rows of each.
+     */
+    public static void generate(int rows) throws IOException {
+        for (String name : DERIVED_FILES) {
+            new File(name).delete();
+        }
+        File[] journals = new File(".").listFiles((dir, name) -> name.startsWith("stock.journal"));
+        if (journals != null) {
+            for (File journal : journals) {
+                journal.delete();
+            }
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter("stock.txt"))) {
+            writer.write("#seq\t0\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write((FIRST_STOCK_ID + i) + "\tITEM " + i + "\t" + STOCK_QTY + "\t"
+                        + Money.format(90 + i % 5000) + "\n");
+            }
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter("members.txt"))) {
+            for (int i = 0; i < rows; i++) {
+                writer.write("MEMBER " + i + "\t" + memberIc(i) + "\t01" + (10_000_000 + i % 90_000_000) + "\t"
+                        + (FIRST_MEMBER_ID + i) + "\t" + MEMBER_TYPES[i % MEMBER_TYPES.length] + "\t\n");
+            }
+        }
+
+        // Hashing is deliberately slow, so every staff member shares one stored hash
+        String storedPassword = PasswordHasher.hash(PASSWORD);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter("staff.txt"))) {
+            for (int i = 0; i < rows; i++) {
+                writer.write((FIRST_STAFF_ID + i) + "\t" + staffIc(i) + "\tSTAFF " + i + "\t" + storedPassword
+                        + "\t" + (20 + i % 40) + "\t" + (2500.0 + i % 900) + "\t\n");
+            }
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter("Transaction.txt"))) {
+            for (int i = 0; i < rows; i++) {
+                long subtotal = 1000 + i % 10_000;
+                long discount = i % 3 == 0 ? 0 : subtotal / 10;
+                long tax = (subtotal - discount) * 6 / 100;
+                writer.write((i + 1) + "\t" + (FIRST_TIMESTAMP + i * 60_000L) + "\t" + (FIRST_STAFF_ID + i % 50)
+                        + "\t" + (discount == 0 ? 0 : FIRST_MEMBER_ID + i) + "\t" + Money.format(subtotal)
+                        + "\t" + Money.format(discount) + "\t" + Money.format(tax) + "\t"
+                        + Money.format(subtotal - discount + tax) + "\t\n");
+            }
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter("PaidItem.txt"))) {
+            for (int i = 0; i < rows; i++) {
+                writer.write((FIRST_STOCK_ID + i) + "\tITEM " + i + "\t" + (1 + i % 5) + "\t"
+                        + Money.format(90 + i % 5000) + "\t\n");
+            }
+        }
+    }
+}
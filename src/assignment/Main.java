@@ -13,23 +13,37 @@ import assignment.enums.MainMenu;
 import assignment.enums.OrderMenu;
 import assignment.enums.SalesMenu;
 import assignment.enums.StockMenu;
-import assignment.repo.PaidItemRepository;
-import assignment.repo.StaffRepository;
+import assignment.repo.PaidItemStore;
+import assignment.repo.Repositories;
+import assignment.repo.StaffStore;
 import assignment.repo.StockRepository;
+import assignment.repo.RollupRepository;
 import assignment.repo.TransactionRepository;
+import assignment.repo.TransactionStore;
+import assignment.service.CartSessionManager;
+import assignment.service.MemberService;
 import assignment.service.PaymentService;
 import assignment.service.SalesService;
 import assignment.service.StaffService;
 import assignment.service.StockService;
 import assignment.util.ConsoleUtil; // Utility for logo, clearScreen, pause
+import assignment.util.Metrics;
+import assignment.util.MetricsConfig;
 import assignment.util.ValidationUtil; // Utility for input validation
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.stream.Stream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Main {
 
     public static int totalPayment = 0; // Global accumulator
+    private static final int REPORT_PAGE_SIZE = 20; // Transaction report rows per page
 
     // Controllers shared for this Main instance
     private final StockController stockController;
@@ -38,6 +52,9 @@ public class Main {
     private final StaffController staffController;
     private final LoginController loginController;
     private final SignupController signupController;
+
+    // Sales rollups, kept up to date by PaymentService and read by the transaction report
+    private final RollupRepository rollupRepo;
     
     // Current logged-in staff
     private Staff currentStaff;
@@ -56,14 +73,20 @@ public class Main {
         this.stockController = new StockController(stockService);
 
         // Sales-related setup
-        SalesService salesService = new SalesService(stockRepo);
-        PaidItemRepository paidItemRepo = new PaidItemRepository();
-        TransactionRepository transactionRepo = new TransactionRepository();
-        PaymentService paymentService = new PaymentService(stockRepo, paidItemRepo, transactionRepo);
+        // Open orders are shared by every till; abandoned ones are expired in the background
+        CartSessionManager cartSessions = CartSessionManager.getInstance();
+        SalesService salesService = new SalesService(stockRepo, cartSessions);
+        // Members, staff, transactions and paid items come from the backend chosen in StoreConfig
+        PaidItemStore paidItemRepo = Repositories.paidItems();
+        TransactionStore transactionRepo = Repositories.transactions();
+        this.rollupRepo = new RollupRepository();
+        PaymentService paymentService = new PaymentService(stockRepo, paidItemRepo, transactionRepo,
+                Repositories.checkoutWriter(paidItemRepo, transactionRepo), rollupRepo,
+                new MemberService(Repositories.members()));
         this.salesController = new SalesController(salesService, paymentService);
 
         // Staff-related setup
-        StaffRepository staffRepo = new StaffRepository();
+        StaffStore staffRepo = Repositories.staff();
         StaffService staffService = new StaffService(staffRepo);
         this.staffController = new StaffController(staffService);
         this.loginController = new LoginController(staffService);
@@ -71,6 +94,9 @@ public class Main {
 
         // Member controller (relies directly on models/utilities)
         this.memberController = new MemberController();
+
+        // Operation counts and latencies, also written to a snapshot file in the background
+        Metrics.startSnapshots(MetricsConfig.SNAPSHOT_FILE_PATH, MetricsConfig.SNAPSHOT_INTERVAL_MS);
     }
 
     // --- Menu Presentation (Uses Enums) ---
@@ -162,6 +188,7 @@ public class Main {
                     Staff loggedInStaff = loginController.performLogin();
                     if (loggedInStaff != null) {
                         this.currentStaff = loggedInStaff;
+                        salesController.setCurrentStaff(loggedInStaff);
                         run();
                         return; // Exit entry loop after successful login
                     }
@@ -189,8 +216,8 @@ public class Main {
             mainView.printMainMenu(currentStaff);
             System.out.print("ENTER YOUR SELECTION: ");
 
-            // Max option is 4 (STOCK_MANAGEMENT)
-            int opt = ValidationUtil.intValidation(0, 4);
+            // Max option is 5 (SYSTEM_METRICS)
+            int opt = ValidationUtil.intValidation(0, 5);
 
             if (opt == -9999) {
                 ConsoleUtil.systemPause();
@@ -221,11 +248,17 @@ public class Main {
                 case STOCK_MANAGEMENT -> {
                     runStock(); // Calls StockController methods
                 }
+                case SYSTEM_METRICS -> {
+                    ConsoleUtil.clearScreen();
+                    mainView.printMetrics(Metrics.dump());
+                    ConsoleUtil.systemPause();
+                }
                 case LOGOUT -> {
                     // Logout current staff
                     if (currentStaff != null) {
                         loginController.logout();
                         currentStaff = null;
+                        salesController.setCurrentStaff(null);
                     }
                     System.out.println("\nRETURNING TO LOGIN MENU...");
                     ConsoleUtil.systemPause();
@@ -318,7 +351,7 @@ public class Main {
             mainView.printCreateOrderMenu();
             System.out.print("ENTER YOUR SELECTION: ");
 
-            int orderOpt = ValidationUtil.intValidation(0, 5);
+            int orderOpt = ValidationUtil.intValidation(0, 6);
 
             if (orderOpt == -9999) {
                 ConsoleUtil.systemPause();
@@ -341,6 +374,7 @@ public class Main {
                 case MAKE_PAYMENT -> {
                     salesController.makePayment();
                 }
+                case SWITCH_ORDER -> salesController.switchOrder();
                 case BACK_TO_PREVIOUS -> {
                     mainView.printBackToPreviousMessage();
                     return; // Exit order loop
@@ -352,11 +386,72 @@ public class Main {
     public void transactionRecord() {
         ConsoleUtil.clearScreen();
         ConsoleUtil.logo();
-        TransactionRepository transactionRepo = new TransactionRepository();
-        java.util.List<TransactionRepository.Transaction> transactions = transactionRepo.loadAllTransactions();
-        mainView.printTransactionReport(transactions);
+        TransactionStore transactionRepo = Repositories.transactions();
+
+        // Optional filters: a date range and/or one staff member (blank = no filter)
+        System.out.print("ENTER START DATE (yyyy-MM-dd) OR PRESS ENTER FOR ALL: ");
+        LocalDate fromDate = parseDate(ValidationUtil.scanner.nextLine().trim());
+        System.out.print("ENTER END DATE (yyyy-MM-dd) OR PRESS ENTER FOR ALL: ");
+        LocalDate toDate = parseDate(ValidationUtil.scanner.nextLine().trim());
+        System.out.print("ENTER STAFF ID OR PRESS ENTER FOR ALL STAFF: S-");
+        String staffInput = ValidationUtil.scanner.nextLine().trim();
+        Integer staffId = null;
+        if (!staffInput.isEmpty()) {
+            try {
+                staffId = Integer.parseInt(staffInput);
+            } catch (NumberFormatException e) {
+                System.out.println("<<<INVALID STAFF ID, SHOWING ALL STAFF.>>>");
+            }
+        }
+
+        Stream<TransactionRepository.Transaction> transactions;
+        if (fromDate == null && toDate == null && staffId == null) {
+            // Unfiltered: the summary comes straight from the rollups, rows only on request
+            String fromHour = LocalDateTime.now().minusHours(23).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH"));
+            mainView.printSalesSummary(rollupRepo.getGrandTotal(),
+                    rollupRepo.getBuckets(RollupRepository.Dimension.HOUR).tailMap(fromHour),
+                    rollupRepo.getBuckets(RollupRepository.Dimension.DAY),
+                    rollupRepo.getBuckets(RollupRepository.Dimension.STAFF),
+                    rollupRepo.getBuckets(RollupRepository.Dimension.TIER),
+                    rollupRepo.getBuckets(RollupRepository.Dimension.SKU));
+            mainView.printReservationStats(new StockRepository().getReservationStats());
+            System.out.print("VIEW INDIVIDUAL TRANSACTIONS? (Y/N): ");
+            if (!ValidationUtil.scanner.nextLine().trim().equalsIgnoreCase("Y")) {
+                ConsoleUtil.systemPause();
+                ConsoleUtil.clearScreen();
+                return;
+            }
+            transactions = transactionRepo.streamAllTransactions();
+        } else {
+            long fromMillis = fromDate == null ? Long.MIN_VALUE
+                    : fromDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            long toMillis = toDate == null ? Long.MAX_VALUE
+                    : toDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+            transactions = transactionRepo.streamTransactions(fromMillis, toMillis, staffId);
+        }
+
+        // Rows are read from disk as they are printed, a page at a time
+        try (Stream<TransactionRepository.Transaction> report = transactions) {
+            mainView.printTransactionReport(report.iterator(), REPORT_PAGE_SIZE, () -> {
+                System.out.print("PRESS ENTER FOR THE NEXT PAGE OR 'S' TO SKIP TO THE TOTALS: ");
+                return !ValidationUtil.scanner.nextLine().trim().equalsIgnoreCase("S");
+            });
+        }
         ConsoleUtil.systemPause();
         ConsoleUtil.clearScreen();
     }
 
+    // Returns the parsed date, or null if the input is blank or not a valid yyyy-MM-dd date
+    private LocalDate parseDate(String input) {
+        if (input.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(input);
+        } catch (DateTimeParseException e) {
+            System.out.println("<<<INVALID DATE, IGNORING THIS FILTER.>>>");
+            return null;
+        }
+    }
+
 }
\ No newline at end of file
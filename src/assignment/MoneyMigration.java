@@ -0,0 +1,43 @@
+package assignment;
+
+import assignment.model.Stock;
+import assignment.repo.MemberRepository;
+import assignment.repo.PaidItemRepository;
+import assignment.repo.RollupRepository;
+import assignment.repo.StockRepository;
+import assignment.repo.TransactionRepository;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * One-shot tool that rewrites the data files written with double amounts (e.g.
+ * "2.4299999999999997") into exact two-decimal amounts, rounding half-up to the sen.
+ * The application already reads both formats, so running this is optional; it makes the
+ * files exact and readable. Run it from the data directory while the application is stopped:
+ *
+ *   java -cp build/classes assignment.MoneyMigration
+ */
+public class MoneyMigration {
+
+    public static void main(String[] args) throws IOException {
+        long transactions = new TransactionRepository().rewriteInCurrentFormat();
+        long paidItems = new PaidItemRepository().rewriteInCurrentFormat();
+
+        // Loading parses the old prices; marking every row dirty writes the snapshot back with two decimals
+        StockRepository stockRepo = new StockRepository();
+        List<Stock> stockItems = stockRepo.loadStockFromFile();
+        for (Stock stock : stockItems) {
+            stockRepo.markDirty(stock);
+        }
+        stockRepo.saveStockToFile();
+        stockRepo.shutdown();
+
+        // Recount the rollups from the exact amounts rather than keeping the rounded double sums
+        RollupRepository rollupRepo = new RollupRepository();
+        rollupRepo.rebuild(new TransactionRepository(), new PaidItemRepository(),
+                new MemberRepository().loadAllMembers());
+
+        System.out.printf("Migrated %d transactions, %d paid items and %d stock items to two-decimal amounts%n",
+                transactions, paidItems, stockItems.size());
+    }
+}
@@ -0,0 +1,19 @@
+package assignment;
+
+import assignment.repo.Repositories;
+
+/**
+ * One-shot tool that hashes every staff password still stored as plain text, in staff.txt
+ * or, with -Drepo.backend=embedded, in the embedded database.
+ * Without it, plain-text passwords are hashed one by one as each staff member logs in.
+ * Run it from the data directory while the application is stopped:
+ *
+ *   java -cp build/classes assignment.PasswordMigration
+ */
+public class PasswordMigration {
+
+    public static void main(String[] args) {
+        int migrated = Repositories.staff().migratePasswords();
+        System.out.printf("Hashed %d plain-text staff passwords%n", migrated);
+    }
+}
@@ -0,0 +1,27 @@
+package assignment;
+
+import assignment.repo.Repositories;
+import assignment.repo.RollupRepository;
+import assignment.util.Money;
+
+/**
+ * One-shot tool that rebuilds rollups.txt from the transactions and paid items (Transaction.txt
+ * and PaidItem.txt, or the embedded database with -Drepo.backend=embedded).
+ * Run it from the data directory while the application is stopped, e.g. after upgrading
+ * from a version without rollups or if rollups.txt was lost or damaged:
+ *
+ *   java -cp build/classes assignment.RollupBackfill
+ */
+public class RollupBackfill {
+
+    public static void main(String[] args) {
+        RollupRepository rollupRepo = new RollupRepository();
+        rollupRepo.rebuild(Repositories.transactions(), Repositories.paidItems(),
+                Repositories.members().loadAllMembers());
+
+        RollupRepository.Bucket grandTotal = rollupRepo.getGrandTotal();
+        System.out.printf("Rebuilt rollups: %d transactions, RM%s total, %d products, last order %d%n",
+                grandTotal.getCount(), Money.format(grandTotal.getTotal()),
+                rollupRepo.getBuckets(RollupRepository.Dimension.SKU).size(), rollupRepo.getLastOrderId());
+    }
+}
@@ -0,0 +1,97 @@
+package assignment;
+
+import assignment.model.Stock;
+import assignment.repo.BinaryStockStore;
+import assignment.repo.StockRepository;
+import assignment.util.StockConfig;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts the stock data between the text backend (stock.txt plus its journal) and the
+ * binary backend (stock.bin and stock.names). Run it from the data directory while the
+ * application is stopped, without -Dstock.backend:
+ *
+ *   java -cp build/classes assignment.StockStoreTool import   (stock.txt -> stock.bin)
+ *   java -cp build/classes assignment.StockStoreTool export   (stock.bin -> stock.txt)
+ *
+ * Then start the application with -Dstock.backend=binary or text to match.
+ */
+public class StockStoreTool {
+    private static final String SNAPSHOT_SEQ_HEADER = "#seq";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Usage: StockStoreTool import|export");
+            System.exit(2);
+        }
+        if (!StockConfig.BACKEND_TEXT.equals(StockConfig.STOCK_BACKEND)) {
+            System.err.println("Run StockStoreTool without -Dstock.backend=" + StockConfig.STOCK_BACKEND);
+            System.exit(2);
+        }
+
+        if (args[0].equals("import")) {
+            importText();
+        } else {
+            exportText();
+        }
+    }
+
+    private static void importText() throws IOException {
+        // Loading replays the journal; shutdown folds it into stock.txt so both copies match
+        StockRepository stockRepo = new StockRepository();
+        List<Stock> stockItems = new ArrayList<>(stockRepo.loadStockFromFile());
+        stockRepo.shutdown();
+
+        BinaryStockStore store = BinaryStockStore.create(StockConfig.STOCK_BINARY_FILE_PATH,
+                StockConfig.STOCK_NAMES_FILE_PATH, stockItems);
+        store.close();
+        System.out.printf("Imported %d stock items from %s into %s%n",
+                stockItems.size(), StockConfig.STOCK_FILE_PATH, StockConfig.STOCK_BINARY_FILE_PATH);
+    }
+
+    private static void exportText() throws IOException {
+        if (!BinaryStockStore.exists(StockConfig.STOCK_BINARY_FILE_PATH)) {
+            System.err.println(StockConfig.STOCK_BINARY_FILE_PATH + " does not exist");
+            System.exit(1);
+        }
+        BinaryStockStore store = new BinaryStockStore(StockConfig.STOCK_BINARY_FILE_PATH,
+                StockConfig.STOCK_NAMES_FILE_PATH);
+        List<Stock> stockItems = store.loadAll();
+        store.close();
+
+        // Keep the snapshot sequence so journal records already in the old stock.txt are not replayed
+        String header = readSeqHeader();
+        File tempFile = new File(StockConfig.TEMP_UPDATE_FILE_PATH);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+            writer.write(header + System.getProperty("line.separator"));
+            for (Stock stock : stockItems) {
+                writer.write(stock.toFileString() + System.getProperty("line.separator"));
+            }
+        }
+        File stockFile = new File(StockConfig.STOCK_FILE_PATH);
+        if (stockFile.exists() && !stockFile.delete() || !tempFile.renameTo(stockFile)) {
+            throw new IOException("Could not replace " + StockConfig.STOCK_FILE_PATH);
+        }
+        System.out.printf("Exported %d stock items from %s into %s%n",
+                stockItems.size(), StockConfig.STOCK_BINARY_FILE_PATH, StockConfig.STOCK_FILE_PATH);
+    }
+
+    private static String readSeqHeader() {
+        try (BufferedReader reader = new BufferedReader(new FileReader(StockConfig.STOCK_FILE_PATH))) {
+            String line = reader.readLine();
+            if (line != null && line.startsWith(SNAPSHOT_SEQ_HEADER + "\t")) {
+                return line;
+            }
+        } catch (IOException e) {
+            // No existing snapshot: start the sequence from zero
+        }
+        return SNAPSHOT_SEQ_HEADER + "\t0";
+    }
+}
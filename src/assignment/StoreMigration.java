@@ -0,0 +1,78 @@
+package assignment;
+
+import assignment.model.Stock;
+import assignment.repo.EmbeddedMemberStore;
+import assignment.repo.EmbeddedPaidItemStore;
+import assignment.repo.EmbeddedStaffStore;
+import assignment.repo.EmbeddedStockStore;
+import assignment.repo.EmbeddedStore;
+import assignment.repo.EmbeddedTransactionStore;
+import assignment.repo.MemberRepository;
+import assignment.repo.PaidItemRepository;
+import assignment.repo.StaffRepository;
+import assignment.repo.StockRepository;
+import assignment.repo.TransactionRepository;
+import assignment.util.StockConfig;
+import assignment.util.StoreConfig;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One-shot tool that copies members.txt, staff.txt, the stock (stock.txt plus its journal),
+ * Transaction.txt and PaidItem.txt into the embedded database (tarcafe.db). Each table is
+ * replaced in one transaction, so the tool can be run again after a failure. Run it from
+ * the data directory while the application is stopped, without -Drepo.backend or
+ * -Dstock.backend:
+ *
+ *   java -cp build/classes assignment.StoreMigration
+ *
+ * Then start the application with -Drepo.backend=embedded. The .txt files are left as they
+ * were and are no longer written to.
+ */
+public class StoreMigration {
+
+    public static void main(String[] args) throws IOException {
+        if (StoreConfig.isEmbedded() || !StockConfig.BACKEND_TEXT.equals(StockConfig.STOCK_BACKEND)) {
+            System.err.println("Run StoreMigration without -Drepo.backend or -Dstock.backend");
+            System.exit(2);
+        }
+        EmbeddedStore store = EmbeddedStore.getInstance();
+
+        MemberRepository memberRepo = new MemberRepository();
+        new EmbeddedMemberStore(store).saveAllMembers(memberRepo.loadAllMembers());
+        System.out.printf("Copied %d members%n", store.count(EmbeddedMemberStore.TABLE));
+
+        new EmbeddedStaffStore(store).replaceAll(new StaffRepository().loadAllStaff());
+        System.out.printf("Copied %d staff%n", store.count(EmbeddedStaffStore.TABLE));
+
+        // Loading replays the journal; shutdown folds it into stock.txt so both copies match
+        StockRepository stockRepo = new StockRepository();
+        List<Stock> stockItems = new ArrayList<>(stockRepo.loadStockFromFile());
+        stockRepo.shutdown();
+        new EmbeddedStockStore(store).replaceAll(stockItems);
+        System.out.printf("Copied %d stock items%n", store.count(EmbeddedStockStore.TABLE));
+
+        new EmbeddedTransactionStore(store).replaceAll(readLines(new TransactionRepository().getFilePath()));
+        System.out.printf("Copied %d transactions%n", store.count(EmbeddedTransactionStore.TABLE));
+
+        new EmbeddedPaidItemStore(store).replaceAll(readLines(new PaidItemRepository().getFilePath()));
+        System.out.printf("Copied %d paid items%n", store.count(EmbeddedPaidItemStore.TABLE));
+
+        store.close();
+        System.out.println("Done; start the application with -Drepo.backend=" + StoreConfig.BACKEND_EMBEDDED);
+    }
+
+    // Lines are copied as stored, so rows in older formats stay readable after the move
+    private static List<String> readLines(String filePath) throws IOException {
+        if (!new File(filePath).exists()) {
+            return Collections.emptyList();
+        }
+        return Files.readAllLines(Paths.get(filePath), StandardCharsets.UTF_8);
+    }
+}
@@ -3,6 +3,8 @@ package assignment.controller;
 import assignment.model.Staff;
 import assignment.service.StaffService;
 import assignment.util.ConsoleUtil;
+import assignment.util.LatencyHistogram;
+import assignment.util.Metrics;
 import assignment.util.ValidationUtil;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -13,6 +15,12 @@ import java.time.format.DateTimeFormatter;
  */
 public class LoginController {
     
+    // Only the credential check is timed; the rest of a login is the user typing (see Metrics)
+    private static final LatencyHistogram LOGIN_LATENCY = Metrics.histogram("login.authenticate");
+    private static final Metrics.Counter LOGIN_SUCCEEDED = Metrics.counter("login.succeeded");
+    private static final Metrics.Counter LOGIN_FAILED = Metrics.counter("login.failed");
+    private static final Metrics.Counter LOGIN_LOCKED_OUT = Metrics.counter("login.lockedOut");
+
     private final StaffService staffService;
     private Staff currentStaff;
     
@@ -40,6 +48,14 @@ public class LoginController {
                 continue;
             }
             
+            long lockoutSeconds = staffService.getLoginLockoutSeconds(ic);
+            if (lockoutSeconds > 0) {
+                LOGIN_LOCKED_OUT.increment();
+                System.out.println("<<<TOO MANY FAILED ATTEMPTS! TRY AGAIN IN " + lockoutSeconds + " SECONDS.>>>");
+                ConsoleUtil.systemPause();
+                return null;
+            }
+            
             // Get Password (with masking option)
             System.out.print("ENTER PASSWORD: ");
             String password = ValidationUtil.scanner.nextLine();
@@ -51,9 +67,12 @@ public class LoginController {
             }
             
             // Attempt login
+            long start = System.nanoTime();
             Staff staff = staffService.login(ic, password);
+            LOGIN_LATENCY.recordSince(start);
             
             if (staff != null) {
+                LOGIN_SUCCEEDED.increment();
                 // Login successful
                 LocalDateTime loginTime = LocalDateTime.now();
                 System.out.println("\n========================================");
@@ -71,6 +90,7 @@ public class LoginController {
                 return staff;
             } else {
                 // Login failed
+                LOGIN_FAILED.increment();
                 System.out.println("\n<<<LOGIN FAILED! INVALID IC OR PASSWORD!>>>\n");
                 System.out.print("PRESS 'E' TO RETURN TO MENU OR ANY OTHER KEY TO RETRY: ");
                 String choice = ValidationUtil.scanner.nextLine();
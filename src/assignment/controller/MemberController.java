@@ -15,7 +15,6 @@ import assignment.util.ValidationUtil;
 import assignment.view.MemberView;
 
 import java.util.List;
-import java.util.Random;
 
 
 /**
@@ -144,14 +143,8 @@ public class MemberController {
     private void handleAddMember(Membership member) {
         String memberName, memberHP, memberIC;
         boolean validName;
-        int randomNumber;
 
-        Random random = new Random();
-        do {
-            randomNumber = random.nextInt(898) + 100;
-        } while (memberService.checkIdExists(randomNumber));
-
-        member.setId(randomNumber);
+        member.setId(memberService.nextMemberId());
 
         System.out.println("MEMBER ID >> M-" + member.getId());
         System.out.println("[THIS IS YOUR MEMBER ID]");
@@ -312,14 +305,14 @@ public class MemberController {
     }
 
     /**
-     * Searches for a member by their 3-digit ID.
+     * Searches for a member by their ID.
      */
     public void search() {
         ConsoleUtil.logo();
         System.out.println(MemberConfig.TITLE_SEARCH_MEMBER);
         System.out.println("-------------------------------------------------------");
 
-        System.out.print("ENTER MEMBER ID TO SEARCH (3 DIGIT ONLY) OR 'E' TO CANCEL: M-");
+        System.out.print("ENTER MEMBER ID TO SEARCH OR 'E' TO CANCEL: M-");
         String input = ValidationUtil.scanner.nextLine().trim();
 
         if (input.equalsIgnoreCase("E")) {
@@ -360,6 +353,7 @@ public class MemberController {
         String rawId;
         List<Membership> memberList = memberService.getAllMembers();
         int typeOption;
+        int memberId = -1;
 
         ConsoleUtil.clearScreen();
         ConsoleUtil.logo();
@@ -367,11 +361,19 @@ public class MemberController {
         System.out.println("-------------------------------------------------------");
         do {
             System.out.print("ENTER MEMBER ID (e.g. 741 ): M-");
-            rawId = ValidationUtil.digitOnlyValidation(3);
+            rawId = ValidationUtil.digitOnlyValidation(0);
+            if (rawId == null) {
+                continue;
+            }
+            try {
+                memberId = Integer.parseInt(rawId);
+            } catch (NumberFormatException e) {
+                // Too many digits for an ID
+                System.out.println(MemberConfig.ErrorMessage.INVALID_MEMBER_ID_FORMAT);
+                rawId = null;
+            }
         } while (rawId == null);
 
-        int memberId = Integer.parseInt(rawId);
-
         // Ask service to find the member
         Membership memberFound = memberService.findMemberById(memberId);
         int memberIndexNo = memberService.findMemberIndexById(memberList, memberId);
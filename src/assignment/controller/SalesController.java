@@ -1,5 +1,7 @@
 package assignment.controller;
 
+import assignment.model.Cart;
+import assignment.model.Staff;
 import assignment.model.Stock;
 import assignment.service.PaymentService;
 import assignment.service.SalesService;
@@ -13,6 +15,8 @@ public class SalesController {
     private final SalesService salesService;
     private final PaymentService paymentService;
     private final SalesView salesView;
+    // Staff member recorded against each transaction
+    private Staff currentStaff;
 
     public SalesController(SalesService salesService, PaymentService paymentService) {
         this.salesService = salesService;
@@ -20,13 +24,18 @@ public class SalesController {
         this.salesView = new SalesView();
     }
 
+    public void setCurrentStaff(Staff currentStaff) {
+        this.currentStaff = currentStaff;
+    }
+
     public void addOrder() throws IOException {
         char nextOrder = 'N';
 
         do {
             ConsoleUtil.clearScreen();
             ConsoleUtil.logo();
-            salesView.printOrderMenu();
+            warnIfCartExpired();
+            salesView.printOrderMenu(salesService.getCurrentCart());
             salesView.displayAvailableItems(salesService.getAvailableStock());
 
             int itemID;
@@ -47,7 +56,7 @@ public class SalesController {
 
                 foundStock = salesService.findStockItem(itemID);
 
-                if (foundStock == null || foundStock.getQty() == 0) {
+                if (foundStock == null || foundStock.getAvailableQty() == 0) {
                     System.out.println("<<<The item ID is not matched or no quantity available, please enter the correct one!>>>");
                     itemID = -9999;
                 } else {
@@ -61,7 +70,7 @@ public class SalesController {
 
             // 2. Get Quantity
             int quantity = -1;
-            int maxQty = foundStock.getQty();
+            int maxQty = foundStock.getAvailableQty();
 
             do {
                 System.out.print("ENTER DESIRED QUANTITY(Enter 999 to re-enter product ID): ");
@@ -109,6 +118,7 @@ public class SalesController {
     public void searchOrder() {
         ConsoleUtil.clearScreen();
         ConsoleUtil.logo();
+        warnIfCartExpired();
         salesView.printSearchOrderMenu();
 
         System.out.print("ENTER ORDER NO TO SEARCH: ");
@@ -135,6 +145,7 @@ public class SalesController {
     public void removeOrder() {
         ConsoleUtil.clearScreen();
         ConsoleUtil.logo();
+        warnIfCartExpired();
         salesView.printRemoveOrderMenu();
 
         System.out.print("ENTER ORDER NO TO REMOVE: ");
@@ -174,6 +185,7 @@ public class SalesController {
     public void editOrder() {
         ConsoleUtil.clearScreen();
         ConsoleUtil.logo();
+        warnIfCartExpired();
         salesView.printEditOrderMenu();
 
         System.out.print("ENTER ORDER NO TO EDIT: ");
@@ -216,7 +228,7 @@ public class SalesController {
             System.out.println("Invalid choice input.");
         } else {
             // Determine maximum possible change based on choice
-            int maxChange = (choice == 1) ? cartItem.getQty() : stockItem.getQty();
+            int maxChange = (choice == 1) ? cartItem.getQty() : stockItem.getAvailableQty();
 
             System.out.print((choice == 1 ?
                     "ENTER QUANTITY TO REDUCE (1 to " + maxChange + "): "
@@ -245,7 +257,9 @@ public class SalesController {
         ConsoleUtil.logo();
         salesView.printPaymentMenu();
 
-        List<Stock> cart = salesService.getCartItems();
+        warnIfCartExpired();
+        Cart currentCart = salesService.getCurrentCart();
+        List<Stock> cart = currentCart.getItems();
 
         if (cart.isEmpty()) {
             System.out.println("<<<CART IS EMPTY. PLEASE ADD ITEMS BEFORE PAYMENT.>>>");
@@ -261,7 +275,13 @@ public class SalesController {
         String memberInput = ValidationUtil.scanner.nextLine().trim();
 
         double discountRate = 0.0;
+        int memberId = 0;
         if (!memberInput.equals("0") && !memberInput.isEmpty()) {
+            try {
+                memberId = Integer.parseInt(memberInput);
+            } catch (NumberFormatException e) {
+                // Keep the sale unlinked to a member but still allow a manual discount
+            }
             // TODO: Look up member and get discount rate from MemberService
             // For now, we'll ask for discount rate if member ID is provided
             System.out.print("ENTER DISCOUNT RATE (e.g., 0.1 for 10%): ");
@@ -276,9 +296,11 @@ public class SalesController {
         }
 
         // Process payment
-        PaymentService.PaymentResult result = paymentService.processPayment(discountRate);
+        int staffId = currentStaff != null ? currentStaff.getId() : 0;
+        PaymentService.PaymentResult result = paymentService.processPayment(currentCart, discountRate, staffId, memberId);
 
         if (result != null) {
+            salesService.closeCurrentCart();
             salesView.printPaymentSummary(result);
             salesView.printPaymentSuccess();
         } else {
@@ -288,4 +310,44 @@ public class SalesController {
         ConsoleUtil.systemPause();
         ConsoleUtil.clearScreen();
     }
-}
\ No newline at end of file
+
+    /**
+     * Lists the open orders and lets the staff member switch to one of them or open a new one,
+     * e.g. one per dine-in table or takeaway ticket.
+     */
+    public void switchOrder() {
+        ConsoleUtil.clearScreen();
+        ConsoleUtil.logo();
+        warnIfCartExpired();
+        salesView.printOpenCarts(salesService.getOpenCarts(), salesService.getCurrentCart());
+
+        System.out.print("ENTER CART NO TO SWITCH TO (0 TO OPEN A NEW ORDER): ");
+        int cartNo = ValidationUtil.intValidation(0, 0);
+
+        if (cartNo == -9999) {
+            ConsoleUtil.systemPause();
+            ConsoleUtil.clearScreen();
+            return;
+        }
+
+        if (cartNo == 0) {
+            System.out.print("ENTER A LABEL FOR THE ORDER (e.g. TABLE 5) OR PRESS ENTER: ");
+            String label = ValidationUtil.scanner.nextLine().trim();
+            salesView.printCartOpened(salesService.openCart(label.toUpperCase()));
+        } else if (salesService.switchCart(cartNo)) {
+            salesView.printCartSwitched(salesService.getCurrentCart());
+        } else {
+            salesView.printCartNotFound();
+        }
+
+        ConsoleUtil.systemPause();
+        ConsoleUtil.clearScreen();
+    }
+
+    // Tells the staff member when the order they were working on was abandoned and expired
+    private void warnIfCartExpired() {
+        if (salesService.isCurrentCartExpired()) {
+            salesView.printCartExpired(salesService.getCurrentCart());
+        }
+    }
+}
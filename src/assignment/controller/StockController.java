@@ -3,6 +3,7 @@ package assignment.controller;
 import assignment.model.Stock;
 import assignment.service.StockService;
 import assignment.util.ConsoleUtil;
+import assignment.util.Money;
 import assignment.util.ValidationUtil;
 import assignment.view.StockView;
 import java.util.List;
@@ -87,7 +88,7 @@ public class StockController {
                 price = ValidationUtil.doubleValidation();
                 if (price == -9999) continue;
                 if (price >= 1.0) {
-                    newStock.setPrice(price);
+                    newStock.setPriceCents(Money.fromDouble(price));
                     break;
                 } else {
                     System.out.println("<<<PRICE CANNOT BE LESS THAN RM 1.00!!!>>>");
@@ -5,7 +5,8 @@ public enum MainMenu {
     MEMBERSHIP_MANAGEMENT(1, "MEMBERSHIP MANAGEMENT"),
     SALES_MANAGEMENT(2, "SALES MANAGEMENT"),
     STAFF_MANAGEMENT(3, "STAFF MANAGEMENT"),
-    STOCK_MANAGEMENT(4, "FOOD AND BEVERAGES (Stock)");
+    STOCK_MANAGEMENT(4, "FOOD AND BEVERAGES (Stock)"),
+    SYSTEM_METRICS(5, "SYSTEM METRICS");
 
     private final int option;
     private final String description;
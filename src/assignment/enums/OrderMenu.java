@@ -6,7 +6,8 @@ public enum OrderMenu {
     EDIT_ORDER(2, "EDIT AN ORDER"),
     SEARCH_ORDER(3, "SEARCH AN ORDER"),
     REMOVE_ORDER(4, "REMOVE AN ORDER"),
-    MAKE_PAYMENT(5, "MAKE PAYMENT");
+    MAKE_PAYMENT(5, "MAKE PAYMENT"),
+    SWITCH_ORDER(6, "OPEN / SWITCH ORDER");
 
     private final int option;
     private final String description;
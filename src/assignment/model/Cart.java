@@ -0,0 +1,122 @@
+package assignment.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model class for one open order (a dine-in table, a takeaway ticket, ...).
+ * Each cart numbers its own lines from 1 and keeps them indexed by order number, so a
+ * line is found in constant time however many are in the cart. Each line holds its units
+ * with a Reservation, which is committed when the cart is paid for.
+ *
+ * A cart can be used by more than one thread (a till and the session manager that expires
+ * it), so every method synchronizes on the cart. Callers that need several steps to happen
+ * together, such as a check followed by a change, synchronize on the cart as well.
+ * Once closed (paid, cancelled or expired) a cart accepts no more lines.
+ */
+public class Cart {
+    private final long id;
+    private final String label;
+    // Lines in the order they were added, keyed by order number
+    private final Map<Integer, Stock> lines = new LinkedHashMap<>();
+    private final Map<Integer, Reservation> reservations = new LinkedHashMap<>();
+    private int nextOrderNo = 1;
+    private volatile long lastActivity;
+    private boolean closed = false;
+
+    public Cart(long id, String label) {
+        this.id = id;
+        this.label = label;
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    // Time of the last change to the cart, in epoch milliseconds
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds a line with the next order number of this cart, holding its units with the reservation.
+     * Returns the new line, or null if the cart has been closed.
+     */
+    public synchronized Stock addLine(int stockID, String stockName, int qty, long priceCents, Reservation reservation) {
+        if (closed) {
+            return null;
+        }
+        Stock line = new Stock(nextOrderNo++, stockID, stockName, qty, priceCents);
+        lines.put(line.getOrderNo(), line);
+        reservations.put(line.getOrderNo(), reservation);
+        touch();
+        return line;
+    }
+
+    public synchronized Stock findLine(int orderNo) {
+        return lines.get(orderNo);
+    }
+
+    public synchronized Reservation findReservation(int orderNo) {
+        return reservations.get(orderNo);
+    }
+
+    // Removes and returns the line, or returns null if there is no such order number.
+    // The caller releases the line's reservation (see findReservation).
+    public synchronized Stock removeLine(int orderNo) {
+        reservations.remove(orderNo);
+        Stock removed = lines.remove(orderNo);
+        if (removed != null) {
+            touch();
+        }
+        return removed;
+    }
+
+    // Returns a copy of the lines, safe to iterate while the cart changes
+    public synchronized List<Stock> getItems() {
+        return new ArrayList<>(lines.values());
+    }
+
+    // Returns a copy of the reservations held by the lines
+    public synchronized List<Reservation> getReservations() {
+        return new ArrayList<>(reservations.values());
+    }
+
+    public synchronized int size() {
+        return lines.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the cart and returns the reservations its lines held, leaving it empty.
+     * Returns an empty list if it was already closed.
+     */
+    public synchronized List<Reservation> close() {
+        if (closed) {
+            return new ArrayList<>();
+        }
+        closed = true;
+        List<Reservation> held = new ArrayList<>(reservations.values());
+        lines.clear();
+        reservations.clear();
+        return held;
+    }
+}
@@ -1,10 +1,9 @@
 package assignment.model;
 
-import assignment.repo.MemberRepository;
+import assignment.repo.Repositories;
 import assignment.util.ConsoleUtil;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.Scanner;
 
 /**
@@ -66,8 +65,8 @@ public abstract class Membership extends Person {
         Scanner scanner = new Scanner(System.in);
         String memberName, memberHP, memberIC;
 
-        Random random = new Random();
-        setId((random.nextInt(898) + 100));
+        // Issued by the member ID sequence, so it never collides with an existing member
+        setId(Repositories.members().nextMemberId());
 
         System.out.println("MEMBER ID >> " + "M-" + getId());
         System.out.println("[THIS IS YOUR MEMBER ID]");
@@ -0,0 +1,70 @@
+package assignment.model;
+
+/**
+ * Model class for a time-limited hold on some units of a stock item.
+ * Units held by a reservation are not available to other carts, but they are only taken
+ * out of stock when the reservation is committed at payment. A reservation that is not
+ * committed or extended before it expires is released by StockRepository's reaper.
+ *
+ * Reservations are kept in memory only, so a crash or restart releases every hold.
+ * The quantity and state are changed by StockRepository under the stock item's lock.
+ */
+public class Reservation {
+
+    public enum State {
+        ACTIVE,     // holding units
+        COMMITTED,  // units taken out of stock by a payment
+        RELEASED,   // given back by the cart, e.g. the line was removed; holds nothing any more
+        EXPIRED     // given back by the reaper after the time limit; taken again at payment if possible
+    }
+
+    private final long id;
+    private final int stockID;
+    private volatile int qty;
+    private volatile long expiresAt;
+    private volatile State state = State.ACTIVE;
+
+    public Reservation(long id, int stockID, int qty, long expiresAt) {
+        this.id = id;
+        this.stockID = stockID;
+        this.qty = qty;
+        this.expiresAt = expiresAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getStockID() {
+        return stockID;
+    }
+
+    public int getQty() {
+        return qty;
+    }
+
+    // Time after which the reaper may release the hold, in epoch milliseconds
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isActive() {
+        return state == State.ACTIVE;
+    }
+
+    public void setQty(int qty) {
+        this.qty = qty;
+    }
+
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+}
@@ -1,6 +1,7 @@
 package assignment.model;
 
-import assignment.repo.StaffRepository;
+import assignment.repo.Repositories;
+import assignment.repo.StaffStore;
 import assignment.util.ConsoleUtil;
 import assignment.util.ValidationUtil;
 import java.time.LocalDateTime;
@@ -13,7 +14,7 @@ import java.time.LocalDateTime;
 public class Staff extends Person {
 
     private final List<Staff> staffList = new ArrayList<>(); // Store staff in a list
-    private static final StaffRepository staffRepo = new StaffRepository();
+    private static final StaffStore staffRepo = Repositories.staff();
     private int stfAge;
     private String stfPassword;
     private double stfSalary;
@@ -1,36 +1,42 @@
 package assignment.model;
 
+import assignment.util.Money;
+
 /**
  * Model class for a Stock item (data structure).
+ * The price is held in sen (see Money) so line totals and subtotals add up exactly.
  */
 public class Stock {
     private int stockID;
     private String stockName;
-    private int qty;
-    private double price;
+    // Volatile so every till sees the latest quantity; changes go through StockRepository
+    private volatile int qty;
+    // Units held by open carts (see Reservation); still in qty until they are paid for
+    private volatile int reservedQty;
+    private long priceCents;
     private int orderNo;
 
-    public Stock(int stockID, String stockName, int qty, double price) {
+    public Stock(int stockID, String stockName, int qty, long priceCents) {
         this.stockID = stockID;
         this.stockName = stockName;
         this.qty = qty;
-        this.price = price;
+        this.priceCents = priceCents;
         this.orderNo = 0; // Default
     }
 
-    public Stock(int orderNo, int stockID, String stockName, int qty, double price) {
+    public Stock(int orderNo, int stockID, String stockName, int qty, long priceCents) {
         this.orderNo = orderNo;
         this.stockID = stockID;
         this.stockName = stockName;
         this.qty = qty;
-        this.price = price;
+        this.priceCents = priceCents;
     }
 
     public Stock() {
         this.orderNo = 0;
         this.stockID = 0;
         this.qty = 0;
-        this.price = 0.0;
+        this.priceCents = Money.ZERO;
     }
 
     public int getOrderNo() {
@@ -49,8 +55,17 @@ public class Stock {
         return qty;
     }
 
-    public double getPrice() {
-        return price;
+    public int getReservedQty() {
+        return reservedQty;
+    }
+
+    // Units that can still be added to a cart
+    public int getAvailableQty() {
+        return Math.max(0, qty - reservedQty);
+    }
+
+    public long getPriceCents() {
+        return priceCents;
     }
 
     public void setOrderNo(int orderNo) {
@@ -69,17 +84,21 @@ public class Stock {
         this.qty = qty;
     }
 
-    public void setPrice(double price) {
-        this.price = price;
+    public void setReservedQty(int reservedQty) {
+        this.reservedQty = reservedQty;
+    }
+
+    public void setPriceCents(long priceCents) {
+        this.priceCents = priceCents;
     }
 
-    // Helper used by sales logic to compute the total cost for an order line
-    public double calculateTotalCost() {
-        return this.qty * this.price;
+    // Helper used by sales logic to compute the total cost (in sen) for an order line
+    public long calculateTotalCost() {
+        return Money.multiply(this.priceCents, this.qty);
     }
 
     public String toFileString() {
-        return stockID + "\t" + getStockName() + "\t" + qty + "\t" + price;
+        return stockID + "\t" + getStockName() + "\t" + qty + "\t" + Money.format(priceCents);
     }
 
     @Override
@@ -88,6 +107,6 @@ public class Stock {
         return "\nPRODUCT ID >> " + getStockID()
                 + "\nPRODUCT NAME >> " + getStockName()
                 + "\nQUANTITY >> " + getQty()
-                + "\nPRODUCT PRICE >> RM" + String.format("%.2f", getPrice());
+                + "\nPRODUCT PRICE >> RM" + Money.format(getPriceCents());
     }
 }
\ No newline at end of file
@@ -0,0 +1,271 @@
+package assignment.repo;
+
+import assignment.model.Stock;
+import assignment.util.IoStats;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary stock store: fixed-width records in a memory-mapped file (stock.bin), with the
+ * product names kept in a separate append-only file (stock.names).
+ *
+ * Because every record has the same size and a known position, changing a quantity is a
+ * single 4-byte write into the mapping instead of a rewrite of the whole file. Deleting a
+ * product only sets a flag in its record. Writes reach the page cache immediately and are
+ * forced to disk by force().
+ *
+ * stock.bin layout (big-endian):
+ *   header, 32 bytes:  magic  version  recordCount  (rest reserved)
+ *   record, 32 bytes:  id  qty  priceCents(long)  nameOffset(long)  nameLength  flags
+ * A record only counts once recordCount includes it. An append forces the new record to
+ * disk before it writes recordCount and forces the header, so a crash part-way through an
+ * append leaves the store as it was.
+ */
+public class BinaryStockStore implements StockStore {
+    private static final int MAGIC = 0x53544B31; // "STK1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int MIN_CAPACITY = 64;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_COUNT = 8;
+
+    private static final int FIELD_ID = 0;
+    private static final int FIELD_QTY = 4;
+    private static final int FIELD_PRICE = 8;
+    private static final int FIELD_NAME_OFFSET = 16;
+    private static final int FIELD_NAME_LENGTH = 24;
+    private static final int FIELD_FLAGS = 28;
+    private static final int FLAG_DELETED = 1;
+
+    private final String dataPath;
+    private final String namesPath;
+    private final FileChannel dataChannel;
+    private final FileChannel namesChannel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int recordCount;
+    // Records written past recordCount but not yet counted (see publish)
+    private int pending;
+    // Slot of each live record, by stock ID
+    private final Map<Integer, Integer> slotById = new HashMap<>();
+
+    public BinaryStockStore(String dataPath, String namesPath) throws IOException {
+        this.dataPath = dataPath;
+        this.namesPath = namesPath;
+        this.dataChannel = FileChannel.open(Paths.get(dataPath),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.namesChannel = FileChannel.open(Paths.get(namesPath),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        IoStats.recordOpen(dataPath);
+        IoStats.recordOpen(namesPath);
+
+        if (dataChannel.size() < HEADER_SIZE) {
+            mapWithCapacity(MIN_CAPACITY);
+            map.putInt(HEADER_MAGIC, MAGIC);
+            map.putInt(HEADER_VERSION, VERSION);
+            map.putInt(HEADER_RECORD_COUNT, 0);
+            recordCount = 0;
+        } else {
+            int existing = (int) ((dataChannel.size() - HEADER_SIZE) / RECORD_SIZE);
+            mapWithCapacity(Math.max(MIN_CAPACITY, existing));
+            if (map.getInt(HEADER_MAGIC) != MAGIC || map.getInt(HEADER_VERSION) != VERSION) {
+                throw new IOException(dataPath + " is not a stock store (version " + VERSION + ")");
+            }
+            recordCount = Math.min(map.getInt(HEADER_RECORD_COUNT), existing);
+        }
+    }
+
+    /**
+     * Reads every live record. Also rebuilds the slot index used by the write methods.
+     */
+    public synchronized List<Stock> loadAll() throws IOException {
+        byte[] names = new byte[(int) namesChannel.size()];
+        ByteBuffer namesBuffer = ByteBuffer.wrap(names);
+        while (namesBuffer.hasRemaining() && namesChannel.read(namesBuffer, namesBuffer.position()) > 0) {
+            // read until the whole name heap is in memory
+        }
+
+        List<Stock> stock = new ArrayList<>(recordCount);
+        slotById.clear();
+        for (int slot = 0; slot < recordCount; slot++) {
+            int base = recordOffset(slot);
+            if ((map.getInt(base + FIELD_FLAGS) & FLAG_DELETED) != 0) {
+                continue;
+            }
+            int id = map.getInt(base + FIELD_ID);
+            int nameOffset = (int) map.getLong(base + FIELD_NAME_OFFSET);
+            int nameLength = map.getInt(base + FIELD_NAME_LENGTH);
+            String name = new String(names, nameOffset, nameLength, StandardCharsets.UTF_8);
+            stock.add(new Stock(id, name, map.getInt(base + FIELD_QTY), map.getLong(base + FIELD_PRICE)));
+            slotById.put(id, slot);
+        }
+        return stock;
+    }
+
+    /**
+     * Writes a new quantity in place. Returns false if the stock ID is not in the store.
+     */
+    public synchronized boolean writeQty(int stockId, int qty) {
+        Integer slot = slotById.get(stockId);
+        if (slot == null) {
+            return false;
+        }
+        map.putInt(recordOffset(slot) + FIELD_QTY, qty);
+        return true;
+    }
+
+    /**
+     * Writes the quantity and price of an existing record in place.
+     * Returns false if the stock ID is not in the store.
+     */
+    public synchronized boolean writeRecord(Stock stock) {
+        Integer slot = slotById.get(stock.getStockID());
+        if (slot == null) {
+            return false;
+        }
+        int base = recordOffset(slot);
+        map.putInt(base + FIELD_QTY, stock.getQty());
+        map.putLong(base + FIELD_PRICE, stock.getPriceCents());
+        return true;
+    }
+
+    /**
+     * Appends a new stock record (its name goes to the end of the name file) and syncs it.
+     */
+    public synchronized void append(Stock stock) throws IOException {
+        int slot = writeNewRecord(stock);
+        namesChannel.force(false);
+        // The record must be on disk before the count that makes it visible
+        map.force(recordOffset(slot), RECORD_SIZE);
+        publish(slot + 1);
+    }
+
+    /**
+     * Marks a record as deleted in place. Returns false if the stock ID is not in the store.
+     */
+    public synchronized boolean delete(int stockId) {
+        Integer slot = slotById.remove(stockId);
+        if (slot == null) {
+            return false;
+        }
+        int base = recordOffset(slot);
+        map.putInt(base + FIELD_FLAGS, map.getInt(base + FIELD_FLAGS) | FLAG_DELETED);
+        return true;
+    }
+
+    // Returns the largest stock ID in the store, or the given default if it is empty
+    public synchronized int maxStockId(int defaultId) {
+        int max = defaultId;
+        for (int id : slotById.keySet()) {
+            max = Math.max(max, id);
+        }
+        return max;
+    }
+
+    // Forces every write so far to disk
+    public synchronized void force() {
+        map.force();
+    }
+
+    public synchronized void close() {
+        map.force();
+        try {
+            dataChannel.close();
+            namesChannel.close();
+        } catch (IOException e) {
+            // Nothing left to write; the mapping was forced above
+        }
+    }
+
+    public String getDataPath() {
+        return dataPath;
+    }
+
+    public String getNamesPath() {
+        return namesPath;
+    }
+
+    /**
+     * Creates a new store holding exactly the given stock, replacing any existing files.
+     */
+    public static BinaryStockStore create(String dataPath, String namesPath, List<Stock> stock) throws IOException {
+        Files.deleteIfExists(Paths.get(dataPath));
+        Files.deleteIfExists(Paths.get(namesPath));
+        BinaryStockStore store = new BinaryStockStore(dataPath, namesPath);
+        synchronized (store) {
+            // Every record is written and forced before the count is, as for a single append
+            for (Stock item : stock) {
+                store.writeNewRecord(item);
+            }
+            store.namesChannel.force(false);
+            store.map.force();
+            store.publish(store.recordCount + store.pending);
+        }
+        return store;
+    }
+
+    // Returns true if a store exists at the path (used to pick a backend or tool direction)
+    public static boolean exists(String dataPath) {
+        return new File(dataPath).length() >= HEADER_SIZE;
+    }
+
+    // Writes the record into the next free slot and its name to the name file, without
+    // counting it yet (see publish); returns the slot
+    private int writeNewRecord(Stock stock) throws IOException {
+        byte[] name = stock.getStockName().getBytes(StandardCharsets.UTF_8);
+        long nameOffset = namesChannel.size();
+        ByteBuffer nameBuffer = ByteBuffer.wrap(name);
+        while (nameBuffer.hasRemaining()) {
+            namesChannel.write(nameBuffer, nameOffset + nameBuffer.position());
+        }
+
+        int slot = recordCount + pending;
+        if (slot == capacity) {
+            mapWithCapacity(capacity * 2);
+        }
+        int base = recordOffset(slot);
+        map.putInt(base + FIELD_ID, stock.getStockID());
+        map.putInt(base + FIELD_QTY, stock.getQty());
+        map.putLong(base + FIELD_PRICE, stock.getPriceCents());
+        map.putLong(base + FIELD_NAME_OFFSET, nameOffset);
+        map.putInt(base + FIELD_NAME_LENGTH, name.length);
+        map.putInt(base + FIELD_FLAGS, 0);
+        pending++;
+        slotById.put(stock.getStockID(), slot);
+        return slot;
+    }
+
+    // Makes the written records visible: writes the new record count and forces the header
+    private void publish(int newRecordCount) {
+        recordCount = newRecordCount;
+        pending = 0;
+        map.putInt(HEADER_RECORD_COUNT, recordCount);
+        map.force(0, HEADER_SIZE);
+    }
+
+    private void mapWithCapacity(int newCapacity) throws IOException {
+        if (map != null) {
+            map.force();
+        }
+        map = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * RECORD_SIZE);
+        capacity = newCapacity;
+    }
+
+    private static int recordOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,317 @@
+package assignment.repo;
+
+import assignment.util.FieldTokenizer;
+import assignment.util.IoStats;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-ahead log that makes one checkout a single recoverable unit (checkout.log).
+ *
+ * Before a payment touches PaidItem.txt or Transaction.txt, the exact bytes it is going to
+ * append to each file and each file's length beforehand are written here and synced. Once
+ * the appends are done and both files are synced, the log is cleared. If an append fails,
+ * both files are truncated back to their recorded lengths. If the program dies in between, recover() finds
+ * the unfinished checkout, truncates each file back to its recorded length (dropping any
+ * partial write) and appends the recorded bytes again, so the files always end up holding
+ * either the whole checkout or, if the intent itself never reached disk, none of it.
+ * A checkout that was refused but could not be truncated away is marked with ABORT;
+ * recover() then only truncates, and no other checkout is written until that has worked.
+ *
+ * Format:
+ *   BEGIN  checkoutId
+ *   W      filePath  lengthBefore  lineCount   (followed by lineCount payload lines)
+ *   END    checkoutId
+ *   ABORT  checkoutId                          (only if the checkout was refused)
+ */
+public class CheckoutLog implements CheckoutWriter {
+    private static final String CHECKOUT_LOG_FILE_PATH = "checkout.log";
+    private static final Logger LOGGER = Logger.getLogger(CheckoutLog.class.getName());
+
+    private final String logFilePath;
+    private final PaidItemRepository paidItemRepo;
+    private final TransactionRepository transactionRepo;
+    // A refused checkout whose appends could not be truncated away yet, or 0 if there is none
+    private long abortedCheckoutId;
+    private List<PendingWrite> abortedWrites;
+
+    /**
+     * One append that belongs to a checkout.
+     */
+    public static class PendingWrite {
+        private final String filePath;
+        private final long lengthBefore;
+        private final String payload;
+
+        public PendingWrite(String filePath, long lengthBefore, String payload) {
+            this.filePath = filePath;
+            this.lengthBefore = lengthBefore;
+            this.payload = payload;
+        }
+
+        public String getFilePath() {
+            return filePath;
+        }
+
+        public long getLengthBefore() {
+            return lengthBefore;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+
+    public CheckoutLog(PaidItemRepository paidItemRepo, TransactionRepository transactionRepo) {
+        this(CHECKOUT_LOG_FILE_PATH, paidItemRepo, transactionRepo);
+    }
+
+    public CheckoutLog(String logFilePath, PaidItemRepository paidItemRepo, TransactionRepository transactionRepo) {
+        this.logFilePath = logFilePath;
+        this.paidItemRepo = paidItemRepo;
+        this.transactionRepo = transactionRepo;
+    }
+
+    /**
+     * Records the checkout in the log, then appends the paid items and the transaction
+     * to their files. The log is cleared by commit().
+     * If an append fails, what was appended is truncated away and the log cleared before the
+     * error is thrown. Should that undo fail as well, the checkout is marked aborted in the log,
+     * so recover() truncates it away instead of completing it, and every later write() tries
+     * the undo again first, refusing its own checkout while it still fails.
+     */
+    @Override
+    public synchronized void write(long checkoutId, String paidItemLines, String transactionLine) throws IOException {
+        if (abortedCheckoutId != 0) {
+            // begin() would overwrite the ABORT record, so the old checkout must be undone first
+            if (!rollBack(abortedCheckoutId, abortedWrites)) {
+                throw new IOException("Checkout " + abortedCheckoutId + " has still not been undone");
+            }
+            abortedCheckoutId = 0;
+            abortedWrites = null;
+        }
+        List<PendingWrite> writes = Arrays.asList(
+                new PendingWrite(paidItemRepo.getFilePath(), paidItemRepo.length(), paidItemLines),
+                new PendingWrite(transactionRepo.getFilePath(), transactionRepo.length(), transactionLine));
+        begin(checkoutId, writes);
+        try {
+            paidItemRepo.appendFormatted(paidItemLines);
+            transactionRepo.appendFormatted(transactionLine);
+        } catch (IOException e) {
+            if (!rollBack(checkoutId, writes)) {
+                abort(checkoutId);
+                abortedCheckoutId = checkoutId;
+                abortedWrites = writes;
+            }
+            throw e;
+        }
+    }
+
+    // Truncates each file back to its length before the checkout, then clears the log.
+    // Returns false, keeping the log, if a file could not be truncated.
+    private boolean rollBack(long checkoutId, List<PendingWrite> writes) {
+        try {
+            truncateAll(writes);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to undo checkout " + checkoutId, e);
+            return false;
+        }
+        clear(checkoutId);
+        return true;
+    }
+
+    private static void truncateAll(List<PendingWrite> writes) throws IOException {
+        for (PendingWrite write : writes) {
+            try (FileChannel channel = FileChannel.open(Paths.get(write.getFilePath()), StandardOpenOption.WRITE)) {
+                IoStats.recordOpen(write.getFilePath());
+                if (channel.size() > write.getLengthBefore()) {
+                    channel.truncate(write.getLengthBefore());
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                throw new IOException("Unable to truncate " + write.getFilePath(), e);
+            }
+        }
+    }
+
+    // Marks the checkout in the log as refused, so recover() truncates it away instead of completing it
+    private void abort(long checkoutId) {
+        try (FileChannel channel = FileChannel.open(Paths.get(logFilePath), StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            IoStats.recordOpen(logFilePath);
+            writeFully(channel, "ABORT\t" + checkoutId + "\n");
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to mark checkout " + checkoutId
+                    + " as aborted; it will be completed on the next start", e);
+        }
+    }
+
+    /**
+     * Records and syncs the intent of a checkout. Nothing may be written to the data
+     * files until this returns; if it throws, the checkout must be abandoned.
+     */
+    public synchronized void begin(long checkoutId, List<PendingWrite> writes) throws IOException {
+        StringBuilder record = new StringBuilder();
+        record.append("BEGIN\t").append(checkoutId).append('\n');
+        for (PendingWrite write : writes) {
+            String[] lines = splitLines(write.getPayload());
+            record.append("W\t").append(write.getFilePath()).append('\t')
+                    .append(write.getLengthBefore()).append('\t')
+                    .append(lines.length).append('\n');
+            for (String line : lines) {
+                record.append(line).append('\n');
+            }
+        }
+        record.append("END\t").append(checkoutId).append('\n');
+
+        try (FileChannel channel = FileChannel.open(Paths.get(logFilePath),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            IoStats.recordOpen(logFilePath);
+            writeFully(channel, record.toString());
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Marks the checkout as finished: both data files are forced to disk, then the log is
+     * cleared. If they cannot be forced the log is kept, so recover() writes the checkout
+     * again on the next start.
+     */
+    @Override
+    public synchronized void commit(long checkoutId) {
+        try {
+            paidItemRepo.force();
+            transactionRepo.force();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error syncing checkout " + checkoutId + "; keeping it in the checkout log", e);
+            return;
+        }
+        clear(checkoutId);
+    }
+
+    private void clear(long checkoutId) {
+        try (FileChannel channel = FileChannel.open(Paths.get(logFilePath), StandardOpenOption.WRITE)) {
+            IoStats.recordOpen(logFilePath);
+            channel.truncate(0);
+        } catch (IOException e) {
+            // After a commit this is harmless: recovery re-applies the same bytes at the same offsets
+            LOGGER.log(Level.WARNING, "Error clearing checkout log for checkout " + checkoutId, e);
+        }
+    }
+
+    /**
+     * Finishes a checkout left behind by a crash, if there is one. A checkout marked ABORT is
+     * truncated away instead.
+     * Returns the ID of the checkout that was replayed, or 0 if there was nothing to do.
+     */
+    @Override
+    public synchronized long recover() {
+        File logFile = new File(logFilePath);
+        if (!logFile.exists() || logFile.length() == 0) {
+            return 0;
+        }
+
+        long checkoutId = 0;
+        boolean complete = false;
+        boolean aborted = false;
+        List<PendingWrite> writes = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
+            FieldTokenizer fields = new FieldTokenizer();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (fields.reset(line).fieldCount() == 0) {
+                    continue;
+                }
+                if (fields.fieldEquals(0, "BEGIN") && fields.fieldCount() >= 2) {
+                    checkoutId = fields.getLong(1);
+                } else if (fields.fieldEquals(0, "W") && fields.fieldCount() >= 4) {
+                    String target = fields.getString(1);
+                    long offset = fields.getLong(2);
+                    int lineCount = fields.getInt(3);
+                    StringBuilder payload = new StringBuilder();
+                    for (int i = 0; i < lineCount; i++) {
+                        String payloadLine = reader.readLine();
+                        if (payloadLine == null) {
+                            break;
+                        }
+                        payload.append(payloadLine).append('\n');
+                    }
+                    writes.add(new PendingWrite(target, offset, payload.toString()));
+                } else if (fields.fieldEquals(0, "END") && fields.fieldCount() >= 2) {
+                    complete = fields.getLong(1) == checkoutId;
+                } else if (fields.fieldEquals(0, "ABORT") && fields.fieldCount() >= 2) {
+                    aborted = fields.getLong(1) == checkoutId;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.log(Level.SEVERE, "Error reading checkout log", e);
+            return 0;
+        }
+
+        if (!complete) {
+            // The intent never fully reached disk, so no data file was touched for it
+            LOGGER.warning("Discarding incomplete checkout intent " + checkoutId);
+            clear(checkoutId);
+            return 0;
+        }
+        if (aborted) {
+            // The payment was refused, so drop whatever part of it reached the files
+            if (rollBack(checkoutId, writes)) {
+                LOGGER.info("Undid refused checkout " + checkoutId);
+            } else {
+                abortedCheckoutId = checkoutId;
+                abortedWrites = writes;
+            }
+            return 0;
+        }
+
+        for (PendingWrite write : writes) {
+            try (FileChannel channel = FileChannel.open(Paths.get(write.getFilePath()),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                IoStats.recordOpen(write.getFilePath());
+                if (channel.size() > write.getLengthBefore()) {
+                    channel.truncate(write.getLengthBefore());
+                }
+                channel.position(channel.size());
+                writeFully(channel, write.getPayload());
+                channel.force(false);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error replaying checkout " + checkoutId + " to " + write.getFilePath(), e);
+                return 0;
+            }
+        }
+
+        LOGGER.info("Replayed unfinished checkout " + checkoutId);
+        clear(checkoutId);
+        return checkoutId;
+    }
+
+    private static String[] splitLines(String payload) {
+        if (payload.isEmpty()) {
+            return new String[0];
+        }
+        String body = payload.endsWith("\n") ? payload.substring(0, payload.length() - 1) : payload;
+        return body.split("\n", -1);
+    }
+
+    private static void writeFully(FileChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
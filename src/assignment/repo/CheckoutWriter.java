@@ -0,0 +1,36 @@
+package assignment.repo;
+
+import java.io.IOException;
+
+/**
+ * Writes the paid items and the transaction of one checkout as a single unit.
+ * CheckoutLog does this for the flat files through its write-ahead log and
+ * EmbeddedCheckoutWriter does it with one embedded database transaction;
+ * Repositories.checkoutWriter picks the one that matches the stores in use.
+ *
+ * A checkout is written with write() and finished with commit(). Anything that must be
+ * recorded along with the checkout (see PaymentService) goes in between, so a crash there
+ * is handled by recover() on the next start.
+ */
+public interface CheckoutWriter {
+
+    /**
+     * Finishes a checkout left behind by a crash, if there is one.
+     * Returns the ID of the checkout that was finished, or 0 if there was nothing to do.
+     */
+    long recover();
+
+    /**
+     * Writes the lines produced by PaidItemStore.formatPaidItems and
+     * TransactionStore.formatTransaction for one checkout. If this throws, the payment must
+     * be abandoned. The writer undoes whatever part of the checkout it had written; if it
+     * cannot do so straight away it finishes the undo later, and never completes a checkout
+     * that was refused here (see CheckoutLog.write).
+     */
+    void write(long checkoutId, String paidItemLines, String transactionLine) throws IOException;
+
+    /**
+     * Marks the checkout as finished, once everything write() wrote is durable.
+     */
+    void commit(long checkoutId);
+}
@@ -0,0 +1,39 @@
+package assignment.repo;
+
+import java.io.IOException;
+
+/**
+ * Checkout writer for the embedded database: the paid items and the transaction are put in
+ * one batch, which the database commits atomically and replays in full or not at all after a
+ * crash. There is no separate log, so nothing is left to recover or clear.
+ */
+public class EmbeddedCheckoutWriter implements CheckoutWriter {
+    private final EmbeddedStore store;
+    private final EmbeddedPaidItemStore paidItemStore;
+    private final EmbeddedTransactionStore transactionStore;
+
+    public EmbeddedCheckoutWriter(EmbeddedStore store, EmbeddedPaidItemStore paidItemStore,
+                                  EmbeddedTransactionStore transactionStore) {
+        this.store = store;
+        this.paidItemStore = paidItemStore;
+        this.transactionStore = transactionStore;
+    }
+
+    @Override
+    public long recover() {
+        return 0;
+    }
+
+    @Override
+    public void write(long checkoutId, String paidItemLines, String transactionLine) throws IOException {
+        EmbeddedStore.Batch batch = store.batch();
+        paidItemStore.stage(batch, paidItemLines);
+        transactionStore.stage(batch, transactionLine);
+        batch.commit();
+    }
+
+    @Override
+    public void commit(long checkoutId) {
+        // The batch committed in write() is already the whole checkout
+    }
+}
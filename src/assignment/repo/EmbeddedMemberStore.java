@@ -0,0 +1,140 @@
+package assignment.repo;
+
+import assignment.model.Membership;
+import assignment.util.FieldTokenizer;
+import assignment.util.MemberConfig;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Member storage in the "member" table of the embedded database: one row per member, keyed
+ * by member ID and in the same format as members.txt, with an index on the IC number.
+ * Lookups by ID or IC read a single row; nothing is cached apart from the database's own
+ * indexes. Writes are serialized so an ID check and the write that depends on it happen
+ * together.
+ */
+public class EmbeddedMemberStore implements MemberStore {
+    public static final String TABLE = "member";
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedMemberStore.class.getName());
+
+    private final EmbeddedStore store;
+    private final EmbeddedStore.Index<String> byIc;
+    private SequenceAllocator.Sequence memberIds;
+
+    public EmbeddedMemberStore(EmbeddedStore store) {
+        this.store = store;
+        this.byIc = store.createIndex(TABLE, row -> new FieldTokenizer().reset(row).getString(1));
+    }
+
+    @Override
+    public List<Membership> loadAllMembers() {
+        List<Membership> members = new ArrayList<>(store.count(TABLE));
+        FieldTokenizer fields = new FieldTokenizer();
+        try (Stream<String> rows = store.rows(TABLE)) {
+            rows.forEach(row -> {
+                Membership member = parse(fields, row);
+                if (member != null) {
+                    members.add(member);
+                }
+            });
+        }
+        return members;
+    }
+
+    @Override
+    public Membership findById(int memberId) {
+        return parse(new FieldTokenizer(), store.get(TABLE, memberId));
+    }
+
+    @Override
+    public Membership findByIc(String ic) {
+        List<String> rows = store.getAll(TABLE, byIc.find(ic));
+        return rows.isEmpty() ? null : parse(new FieldTokenizer(), rows.get(0));
+    }
+
+    @Override
+    public boolean existsById(int memberId) {
+        return store.contains(TABLE, memberId);
+    }
+
+    @Override
+    public boolean existsByIc(String ic) {
+        return byIc.contains(ic);
+    }
+
+    /**
+     * Issues the ID for a new member from the member sequence, which starts after the highest
+     * ID in the table (see MemberRepository.nextMemberId).
+     */
+    @Override
+    public synchronized int nextMemberId() {
+        long floor = Math.max(MemberConfig.FIRST_MEMBER_ID, store.lastKey(TABLE, 0) + 1);
+        if (memberIds == null || memberIds.peek() < floor) {
+            memberIds = SequenceAllocator.getInstance().sequence(SequenceAllocator.MEMBER, floor);
+        }
+        int id;
+        do {
+            id = Math.toIntExact(memberIds.next());
+        } while (store.contains(TABLE, id));
+        return id;
+    }
+
+    @Override
+    public synchronized void appendMember(Membership member) {
+        try {
+            store.batch().put(TABLE, member.getId(), MemberRepository.formatMember(member)).commit();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, MemberConfig.ErrorMessage.FILE_WRITE_ERROR, e);
+        }
+    }
+
+    /**
+     * Replaces every member with the given list in one transaction.
+     */
+    @Override
+    public synchronized void saveAllMembers(List<Membership> members) {
+        EmbeddedStore.Batch batch = store.batch();
+        for (long key : store.keys(TABLE, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            batch.delete(TABLE, key);
+        }
+        for (Membership member : members) {
+            batch.put(TABLE, member.getId(), MemberRepository.formatMember(member));
+        }
+        try {
+            batch.commit();
+        } catch (IOException e) {
+            System.out.println(MemberConfig.ErrorMessage.SAVE_MEMBERS_FAILED_TEMPLATE + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized boolean deleteById(int memberId) {
+        if (!store.contains(TABLE, memberId)) {
+            return false;
+        }
+        try {
+            store.batch().delete(TABLE, memberId).commit();
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, MemberConfig.ErrorMessage.FILE_DELETE_ERROR, e);
+            return false;
+        }
+    }
+
+    private static Membership parse(FieldTokenizer fields, String row) {
+        if (row == null || fields.reset(row).fieldCount() < 5) {
+            return null;
+        }
+        try {
+            return MemberRepository.create(fields.getString(0), fields.getString(1), fields.getInt(3),
+                    fields.getString(2), fields.getString(4));
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Skipping malformed member row: " + row);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package assignment.repo;
+
+import assignment.model.Stock;
+import assignment.util.FieldTokenizer;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Paid item storage in the "paid_item" table of the embedded database: one row per item, in
+ * the same format as PaidItem.txt, keyed by the order in which they were appended. The items
+ * of one payment are committed together.
+ */
+public class EmbeddedPaidItemStore implements PaidItemStore {
+    public static final String TABLE = "paid_item";
+
+    private final EmbeddedStore store;
+    private final AtomicLong nextKey;
+
+    public EmbeddedPaidItemStore(EmbeddedStore store) {
+        this.store = store;
+        this.nextKey = new AtomicLong(store.lastKey(TABLE, 0) + 1);
+    }
+
+    @Override
+    public void appendFormatted(String lines) throws IOException {
+        EmbeddedStore.Batch batch = store.batch();
+        stage(batch, lines);
+        batch.commit();
+    }
+
+    // Adds the rows of lines produced by formatPaidItems to a batch (see EmbeddedCheckoutWriter)
+    void stage(EmbeddedStore.Batch batch, String lines) {
+        for (String line : lines.split("\n")) {
+            if (!line.trim().isEmpty()) {
+                batch.put(TABLE, nextKey.getAndIncrement(), line.trim());
+            }
+        }
+    }
+
+    @Override
+    public Stream<Stock> streamPaidItems() {
+        FieldTokenizer fields = new FieldTokenizer();
+        return store.rows(TABLE)
+                .map(row -> PaidItemRepository.parse(fields, row))
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public RecordCursor openReader() {
+        return store.openCursor(TABLE);
+    }
+
+    /**
+     * Replaces the whole table with the given lines in one transaction (see StoreMigration).
+     */
+    public synchronized void replaceAll(List<String> lines) throws IOException {
+        EmbeddedStore.Batch batch = store.batch();
+        for (long key : store.keys(TABLE, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            batch.delete(TABLE, key);
+        }
+        nextKey.set(1);
+        for (String line : lines) {
+            stage(batch, line);
+        }
+        batch.commit();
+    }
+}
@@ -0,0 +1,173 @@
+package assignment.repo;
+
+import assignment.model.Staff;
+import assignment.util.FieldTokenizer;
+import assignment.util.PasswordHasher;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Staff storage in the "staff" table of the embedded database: one row per staff member,
+ * keyed by staff ID and in the same format as staff.txt, with an index on the IC number so
+ * a login reads a single row. Passwords are stored as salted hashes, as in StaffRepository.
+ * Writes are serialized so an existence check and the write that depends on it happen together.
+ */
+public class EmbeddedStaffStore implements StaffStore {
+    public static final String TABLE = "staff";
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedStaffStore.class.getName());
+
+    private final EmbeddedStore store;
+    private final EmbeddedStore.Index<String> byIc;
+
+    public EmbeddedStaffStore(EmbeddedStore store) {
+        this.store = store;
+        this.byIc = store.createIndex(TABLE, row -> new FieldTokenizer().reset(row).getString(1));
+    }
+
+    @Override
+    public List<Staff> loadAllStaff() {
+        List<Staff> staffList = new ArrayList<>(store.count(TABLE));
+        FieldTokenizer fields = new FieldTokenizer();
+        try (Stream<String> rows = store.rows(TABLE)) {
+            rows.forEach(row -> {
+                Staff staff = parse(fields, row);
+                if (staff != null) {
+                    staffList.add(staff);
+                }
+            });
+        }
+        return staffList;
+    }
+
+    @Override
+    public Staff findById(int staffId) {
+        return parse(new FieldTokenizer(), store.get(TABLE, staffId));
+    }
+
+    @Override
+    public Staff findByIc(String ic) {
+        List<String> rows = store.getAll(TABLE, byIc.find(ic));
+        return rows.isEmpty() ? null : parse(new FieldTokenizer(), rows.get(0));
+    }
+
+    /**
+     * Finds staff members by name (case-insensitive partial match).
+     * A partial match cannot use an index, so every row is checked; the staff list is short.
+     */
+    @Override
+    public List<Staff> findByName(String name) {
+        String searchName = name.toUpperCase().trim();
+        List<Staff> results = new ArrayList<>();
+        for (Staff staff : loadAllStaff()) {
+            if (staff.getName().toUpperCase().contains(searchName)) {
+                results.add(staff);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public boolean existsByIc(String ic) {
+        return byIc.contains(ic);
+    }
+
+    @Override
+    public synchronized void appendStaff(Staff staff) {
+        put(StaffRepository.withStoredPassword(staff));
+    }
+
+    @Override
+    public synchronized boolean updateStaff(Staff updatedStaff) {
+        return store.contains(TABLE, updatedStaff.getId()) && put(StaffRepository.withStoredPassword(updatedStaff));
+    }
+
+    @Override
+    public synchronized boolean deleteById(int staffId) {
+        return delete(staffId);
+    }
+
+    @Override
+    public synchronized boolean deleteByIc(String ic) {
+        List<Long> keys = byIc.find(ic);
+        return !keys.isEmpty() && delete(keys.get(0));
+    }
+
+    /**
+     * Hashes every password still stored as plain text, in one transaction.
+     */
+    @Override
+    public synchronized int migratePasswords() {
+        EmbeddedStore.Batch batch = store.batch();
+        int count = 0;
+        for (Staff staff : loadAllStaff()) {
+            if (!PasswordHasher.isHashed(staff.getStfPassword())) {
+                batch.put(TABLE, staff.getId(), StaffRepository.formatStaff(StaffRepository.withStoredPassword(staff)));
+                count++;
+            }
+        }
+        try {
+            batch.commit();
+            return count;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error migrating staff passwords", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Replaces every staff member with the given list in one transaction (see StoreMigration).
+     * Plain-text passwords are hashed on the way in.
+     */
+    public synchronized void replaceAll(List<Staff> staffList) throws IOException {
+        EmbeddedStore.Batch batch = store.batch();
+        for (long key : store.keys(TABLE, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            batch.delete(TABLE, key);
+        }
+        for (Staff staff : staffList) {
+            batch.put(TABLE, staff.getId(), StaffRepository.formatStaff(StaffRepository.withStoredPassword(staff)));
+        }
+        batch.commit();
+    }
+
+    private boolean put(Staff stored) {
+        try {
+            store.batch().put(TABLE, stored.getId(), StaffRepository.formatStaff(stored)).commit();
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error writing staff record", e);
+            return false;
+        }
+    }
+
+    private boolean delete(long staffId) {
+        if (!store.contains(TABLE, staffId)) {
+            return false;
+        }
+        try {
+            store.batch().delete(TABLE, staffId).commit();
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error deleting staff", e);
+            return false;
+        }
+    }
+
+    private static Staff parse(FieldTokenizer fields, String row) {
+        if (row == null || fields.reset(row).fieldCount() < 6) {
+            return null;
+        }
+        try {
+            Staff staff = new Staff(fields.getString(2), fields.getString(1), fields.getInt(4),
+                    fields.getDouble(5), fields.getString(3));
+            staff.setId(fields.getInt(0));
+            return staff;
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Skipping malformed staff row: " + row);
+            return null;
+        }
+    }
+}
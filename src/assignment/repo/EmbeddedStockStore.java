@@ -0,0 +1,133 @@
+package assignment.repo;
+
+import assignment.model.Stock;
+import assignment.util.FieldTokenizer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Embedded stock store: one row per product in the "stock" table of the embedded database,
+ * keyed by stock ID and in the same format as stock.txt (see Stock.toFileString).
+ *
+ * Quantity changes are committed without forcing, like the in-place writes of
+ * BinaryStockStore, and reach the disk on the next force().
+ */
+public class EmbeddedStockStore implements StockStore {
+    public static final String TABLE = "stock";
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedStockStore.class.getName());
+
+    private final EmbeddedStore store;
+
+    public EmbeddedStockStore(EmbeddedStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public List<Stock> loadAll() {
+        List<Stock> stock = new ArrayList<>(store.count(TABLE));
+        FieldTokenizer fields = new FieldTokenizer();
+        try (Stream<String> rows = store.rows(TABLE)) {
+            rows.forEach(row -> {
+                Stock item = parse(fields, row);
+                if (item != null) {
+                    stock.add(item);
+                }
+            });
+        }
+        return stock;
+    }
+
+    @Override
+    public synchronized boolean writeQty(int stockId, int qty) {
+        Stock stock = parse(new FieldTokenizer(), store.get(TABLE, stockId));
+        if (stock == null) {
+            return false;
+        }
+        stock.setQty(qty);
+        return put(stock, false);
+    }
+
+    @Override
+    public synchronized boolean writeRecord(Stock stock) {
+        return store.contains(TABLE, stock.getStockID()) && put(stock, false);
+    }
+
+    @Override
+    public synchronized void append(Stock stock) throws IOException {
+        store.batch().put(TABLE, stock.getStockID(), stock.toFileString()).commit();
+    }
+
+    @Override
+    public synchronized boolean delete(int stockId) {
+        if (!store.contains(TABLE, stockId)) {
+            return false;
+        }
+        try {
+            store.batch().delete(TABLE, stockId).commit();
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error deleting stock " + stockId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public int maxStockId(int defaultId) {
+        return (int) Math.max(defaultId, store.lastKey(TABLE, defaultId));
+    }
+
+    @Override
+    public void force() {
+        try {
+            store.sync();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error syncing stock", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // The database is shared with the other repositories, so it is only forced here
+        force();
+    }
+
+    /**
+     * Replaces the whole table with the given stock in one transaction (see StoreMigration).
+     */
+    public void replaceAll(List<Stock> stock) throws IOException {
+        EmbeddedStore.Batch batch = store.batch();
+        for (long key : store.keys(TABLE, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            batch.delete(TABLE, key);
+        }
+        for (Stock item : stock) {
+            batch.put(TABLE, item.getStockID(), item.toFileString());
+        }
+        batch.commit();
+    }
+
+    private boolean put(Stock stock, boolean force) {
+        try {
+            store.batch().put(TABLE, stock.getStockID(), stock.toFileString()).commit(force);
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error writing stock " + stock.getStockID(), e);
+            return false;
+        }
+    }
+
+    private static Stock parse(FieldTokenizer fields, String row) {
+        if (row == null || fields.reset(row).fieldCount() < 4) {
+            return null;
+        }
+        try {
+            return new Stock(fields.getInt(0), fields.getString(1), fields.getInt(2), fields.getCents(3));
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Skipping malformed stock row: " + row);
+            return null;
+        }
+    }
+}
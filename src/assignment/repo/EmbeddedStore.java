@@ -0,0 +1,861 @@
+package assignment.repo;
+
+import assignment.util.FieldTokenizer;
+import assignment.util.IoStats;
+import assignment.util.StoreConfig;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded, in-process database kept in a single file (tarcafe.db), used by the embedded
+ * repository backend (see StoreConfig).
+ *
+ * Data is held in named tables. A row is a tab-separated line, in the same format as the
+ * matching .txt file, stored under a numeric primary key. Every table keeps its keys in
+ * memory in order, each with the position of its row in the file, so a lookup by key is one
+ * positional read and a key range is read in key order. Secondary indexes (createIndex) map
+ * a value taken from the row, such as an IC or a timestamp, to the keys of the rows holding it.
+ *
+ * All writes go through a Batch, which is applied all or nothing: its puts and deletes are
+ * appended to the end of the file as one checksummed record, and only then applied in memory.
+ * A batch whose write or force fails is cut off the file again before the error is thrown,
+ * so it is not replayed either. On open the file is replayed from the start; a batch cut
+ * short by a crash fails its checksum and is cut off, so the store always reopens as of the
+ * last complete batch.
+ * Overwritten and deleted rows stay in the file until it is compacted, which a background
+ * thread does once they make up StoreConfig.EMBEDDED_COMPACT_DEAD_RATIO of it. Commits carry
+ * on while the live rows are copied; they only wait while the batches committed meanwhile
+ * are copied after them and the new file is swapped in.
+ *
+ * File layout (big-endian):
+ *   header, 8 bytes:  magic  version
+ *   batch:            length  crc32  opCount  op...   (length and crc32 cover opCount and the ops)
+ *   op:               type  tableLength  table  key(long)  [rowLength  row]   (the row for puts only)
+ *
+ * Reads may run in parallel with each other; a commit or compaction holds them off briefly.
+ */
+public class EmbeddedStore {
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedStore.class.getName());
+    private static final int MAGIC = 0x54434442; // "TCDB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int BATCH_HEADER_SIZE = 8;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    // Rows copied per batch when compacting
+    private static final int COMPACT_BATCH_ROWS = 1024;
+    // A row's position and length share one long: the position above ROW_LENGTH_BITS, the length below
+    private static final int ROW_LENGTH_BITS = 24;
+    private static final long MAX_ROW_LENGTH = (1L << ROW_LENGTH_BITS) - 1;
+
+    private static EmbeddedStore instance;
+    private static volatile ExecutorService compactor;
+
+    private final String filePath;
+    private final String tempFilePath;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Table> tables = new HashMap<>();
+    private FileChannel channel;
+    private long end;
+    // Bytes taken by the puts of live rows; the rest of the file is batch headers and dead rows
+    private long liveBytes;
+    private volatile boolean compactionQueued;
+    private boolean closed;
+
+    private static class Table {
+        // Primary key -> position and length of the row (see ROW_LENGTH_BITS)
+        private final TreeMap<Long, Long> rows = new TreeMap<>();
+        private final List<Index<?>> indexes = new ArrayList<>();
+    }
+
+    /**
+     * A set of puts and deletes applied together by commit(). Not thread-safe: build and
+     * commit a batch on one thread.
+     */
+    public final class Batch {
+        private final List<Op> ops = new ArrayList<>();
+
+        private Batch() {
+        }
+
+        public Batch put(String table, long key, String row) {
+            ops.add(new Op(OP_PUT, table, key, Objects.requireNonNull(row)));
+            return this;
+        }
+
+        public Batch delete(String table, long key) {
+            ops.add(new Op(OP_DELETE, table, key, null));
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return ops.isEmpty();
+        }
+
+        /**
+         * Writes the batch and forces it to disk. When this returns every change is visible
+         * and survives a crash; if it throws, none of them is applied.
+         */
+        public void commit() throws IOException {
+            commit(true);
+        }
+
+        /**
+         * Writes the batch, forcing it to disk only if asked; an unforced batch may be lost
+         * in a crash (as a whole) until the next forced commit or sync().
+         */
+        public void commit(boolean force) throws IOException {
+            if (!ops.isEmpty()) {
+                apply(ops, force);
+                ops.clear();
+            }
+        }
+    }
+
+    private static class Op {
+        private final byte type;
+        private final String table;
+        private final long key;
+        private final String row;
+        // Where the row starts inside the encoded batch, for puts
+        private int rowOffset;
+        private int rowLength;
+
+        Op(byte type, String table, long key, String row) {
+            this.type = type;
+            this.table = table;
+            this.key = key;
+            this.row = row;
+        }
+    }
+
+    /**
+     * Secondary index of one table: the value keyOf takes from each row, mapped to the keys
+     * of the rows holding it. Rows for which keyOf returns null (or fails) are not indexed.
+     */
+    public final class Index<K extends Comparable<? super K>> {
+        private final Function<String, K> keyOf;
+        private final TreeMap<K, Set<Long>> keysByValue = new TreeMap<>();
+        private final Map<Long, K> valueByKey = new HashMap<>();
+
+        private Index(Function<String, K> keyOf) {
+            this.keyOf = keyOf;
+        }
+
+        // The keys of the rows holding the value, in the order they were indexed
+        public List<Long> find(K value) {
+            lock.readLock().lock();
+            try {
+                Set<Long> keys = keysByValue.get(value);
+                return keys == null ? new ArrayList<>() : new ArrayList<>(keys);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public boolean contains(K value) {
+            lock.readLock().lock();
+            try {
+                return keysByValue.containsKey(value);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // The keys of the rows whose value is between from and to (inclusive), in value order
+        public List<Long> range(K from, K to) {
+            lock.readLock().lock();
+            try {
+                List<Long> keys = new ArrayList<>();
+                if (from.compareTo(to) > 0) {
+                    return keys;
+                }
+                for (Set<Long> matching : keysByValue.subMap(from, true, to, true).values()) {
+                    keys.addAll(matching);
+                }
+                return keys;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // The largest value in the index, or null if it is empty
+        public K highest() {
+            lock.readLock().lock();
+            try {
+                return keysByValue.isEmpty() ? null : keysByValue.lastKey();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void add(long key, String row) {
+            K value;
+            try {
+                value = keyOf.apply(row);
+            } catch (RuntimeException e) {
+                value = null;
+            }
+            if (value != null) {
+                keysByValue.computeIfAbsent(value, v -> new LinkedHashSet<>()).add(key);
+                valueByKey.put(key, value);
+            }
+        }
+
+        private void remove(long key) {
+            K value = valueByKey.remove(key);
+            if (value != null) {
+                Set<Long> keys = keysByValue.get(value);
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByValue.remove(value);
+                }
+            }
+        }
+    }
+
+    public EmbeddedStore(String filePath) throws IOException {
+        this.filePath = filePath;
+        this.tempFilePath = filePath + ".tmp";
+        open();
+    }
+
+    /**
+     * The store shared by the whole program, backed by StoreConfig.EMBEDDED_FILE_PATH.
+     * @throws IllegalStateException if the file cannot be opened
+     */
+    public static synchronized EmbeddedStore getInstance() {
+        if (instance == null) {
+            try {
+                instance = new EmbeddedStore(StoreConfig.EMBEDDED_FILE_PATH);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open " + StoreConfig.EMBEDDED_FILE_PATH, e);
+            }
+        }
+        return instance;
+    }
+
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Returns the row stored under the key, or null if there is none.
+     */
+    public String get(String table, long key) {
+        lock.readLock().lock();
+        try {
+            Table t = tables.get(table);
+            Long pointer = t == null ? null : t.rows.get(key);
+            return pointer == null ? null : readRow(pointer);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading " + table + " row " + key, e);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the rows stored under the keys, in the same order, skipping keys with no row.
+     */
+    public List<String> getAll(String table, Collection<Long> keys) {
+        List<String> rows = new ArrayList<>(keys.size());
+        lock.readLock().lock();
+        try {
+            Table t = tables.get(table);
+            if (t == null) {
+                return rows;
+            }
+            for (Long key : keys) {
+                Long pointer = t.rows.get(key);
+                if (pointer != null) {
+                    rows.add(readRow(pointer));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading " + table + " rows", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return rows;
+    }
+
+    public boolean contains(String table, long key) {
+        lock.readLock().lock();
+        try {
+            Table t = tables.get(table);
+            return t != null && t.rows.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int count(String table) {
+        lock.readLock().lock();
+        try {
+            Table t = tables.get(table);
+            return t == null ? 0 : t.rows.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Returns the largest key in the table, or the given default if it is empty
+    public long lastKey(String table, long defaultKey) {
+        lock.readLock().lock();
+        try {
+            Table t = tables.get(table);
+            return t == null || t.rows.isEmpty() ? defaultKey : t.rows.lastKey();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the keys between from and to (inclusive), in order, as they are now.
+     */
+    public long[] keys(String table, long from, long to) {
+        lock.readLock().lock();
+        try {
+            Table t = tables.get(table);
+            if (t == null || from > to) {
+                return new long[0];
+            }
+            NavigableMap<Long, Long> range = t.rows.subMap(from, true, to, true);
+            long[] keys = new long[range.size()];
+            int i = 0;
+            for (Long key : range.keySet()) {
+                keys[i++] = key;
+            }
+            return keys;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams every row of the table in key order. The keys are taken when this is called and
+     * each row is read as the stream reaches it, so rows deleted meanwhile are skipped.
+     */
+    public Stream<String> rows(String table) {
+        return rows(table, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public Stream<String> rows(String table, long from, long to) {
+        return Arrays.stream(keys(table, from, to))
+                .mapToObj(key -> get(table, key))
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Opens a cursor over every row of the table in key order (see RecordCursor).
+     */
+    public RecordCursor openCursor(String table) {
+        return new RowCursor(table, keys(table, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * Creates a secondary index on a table, filled from the rows already in it and kept up
+     * to date by every later commit. Create each index once, when the table is first used.
+     */
+    public <K extends Comparable<? super K>> Index<K> createIndex(String table, Function<String, K> keyOf) {
+        lock.writeLock().lock();
+        try {
+            Table t = table(table);
+            Index<K> index = new Index<>(keyOf);
+            for (Map.Entry<Long, Long> row : t.rows.entrySet()) {
+                index.add(row.getKey(), readRow(row.getValue()));
+            }
+            t.indexes.add(index);
+            return index;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to index table " + table, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Forces every commit so far to disk
+    public void sync() throws IOException {
+        lock.readLock().lock();
+        try {
+            channel.force(false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error closing " + filePath, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        synchronized (EmbeddedStore.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+    }
+
+    // Appends one batch and, once it is written (and forced, if asked), applies it in memory
+    private void apply(List<Op> ops, boolean force) throws IOException {
+        ByteBuffer batch = encode(ops);
+        lock.writeLock().lock();
+        try {
+            long start = end;
+            try {
+                while (batch.hasRemaining()) {
+                    channel.write(batch, start + batch.position());
+                }
+                if (force) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                // Cut the batch off so it is not replayed on the next open. Should that fail
+                // too, the next batch is still written over it.
+                try {
+                    channel.truncate(start);
+                    channel.force(false);
+                } catch (IOException truncateError) {
+                    e.addSuppressed(truncateError);
+                }
+                throw e;
+            }
+            end = start + batch.limit();
+            for (Op op : ops) {
+                applyOp(op, start + op.rowOffset);
+            }
+            if (!compactionQueued && shouldCompact()) {
+                compactionQueued = true;
+                compactor().execute(this::compact);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static ExecutorService compactor() {
+        ExecutorService executor = compactor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (EmbeddedStore.class) {
+            if (compactor == null) {
+                compactor = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "embedded-store-compactor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return compactor;
+        }
+    }
+
+    private ByteBuffer encode(List<Op> ops) {
+        List<byte[]> tableNames = new ArrayList<>(ops.size());
+        List<byte[]> rows = new ArrayList<>(ops.size());
+        int size = BATCH_HEADER_SIZE + 4;
+        for (Op op : ops) {
+            byte[] name = op.table.getBytes(StandardCharsets.UTF_8);
+            byte[] row = op.row == null ? null : op.row.getBytes(StandardCharsets.UTF_8);
+            if (row != null && row.length > MAX_ROW_LENGTH) {
+                throw new IllegalArgumentException("Row too long for table " + op.table);
+            }
+            tableNames.add(name);
+            rows.add(row);
+            size += 1 + 2 + name.length + 8 + (row == null ? 0 : 4 + row.length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.position(BATCH_HEADER_SIZE);
+        buffer.putInt(ops.size());
+        for (int i = 0; i < ops.size(); i++) {
+            Op op = ops.get(i);
+            buffer.put(op.type);
+            buffer.putShort((short) tableNames.get(i).length);
+            buffer.put(tableNames.get(i));
+            buffer.putLong(op.key);
+            if (op.type == OP_PUT) {
+                buffer.putInt(rows.get(i).length);
+                op.rowOffset = buffer.position();
+                op.rowLength = rows.get(i).length;
+                buffer.put(rows.get(i));
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), BATCH_HEADER_SIZE, size - BATCH_HEADER_SIZE);
+        buffer.putInt(0, size - BATCH_HEADER_SIZE);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    // Applies one put or delete in memory; rowPosition is where a put's row is in the file
+    private void applyOp(Op op, long rowPosition) {
+        Table t = table(op.table);
+        Long previous = op.type == OP_PUT
+                ? t.rows.put(op.key, (rowPosition << ROW_LENGTH_BITS) | op.rowLength)
+                : t.rows.remove(op.key);
+        if (previous != null) {
+            liveBytes -= putSize(op.table, previous & MAX_ROW_LENGTH);
+        }
+        for (Index<?> index : t.indexes) {
+            index.remove(op.key);
+            if (op.type == OP_PUT) {
+                index.add(op.key, op.row);
+            }
+        }
+        if (op.type == OP_PUT) {
+            liveBytes += putSize(op.table, op.rowLength);
+        }
+    }
+
+    // Bytes a put of a row of this length takes in the file
+    private static long putSize(String table, long rowLength) {
+        return 1 + 2 + table.length() + 8 + 4 + rowLength;
+    }
+
+    private Table table(String name) {
+        return tables.computeIfAbsent(name, n -> new Table());
+    }
+
+    private String readRow(long pointer) throws IOException {
+        ByteBuffer row = ByteBuffer.allocate((int) (pointer & MAX_ROW_LENGTH));
+        long position = pointer >>> ROW_LENGTH_BITS;
+        while (row.hasRemaining()) {
+            if (channel.read(row, position + row.position()) < 0) {
+                throw new IOException("Row past the end of " + filePath);
+            }
+        }
+        return new String(row.array(), StandardCharsets.UTF_8);
+    }
+
+    private boolean shouldCompact() {
+        return end >= StoreConfig.EMBEDDED_COMPACT_MIN_BYTES
+                && end - liveBytes > end * StoreConfig.EMBEDDED_COMPACT_DEAD_RATIO;
+    }
+
+    // Opens the file, creating it if needed, and replays every complete batch
+    private void open() throws IOException {
+        channel = FileChannel.open(Paths.get(filePath),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        IoStats.recordOpen(filePath);
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.truncate(0);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+            end = HEADER_SIZE;
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException(filePath + " is not a database file");
+        }
+
+        long position = HEADER_SIZE;
+        ByteBuffer batchHeader = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+        while (position + BATCH_HEADER_SIZE <= size) {
+            batchHeader.clear();
+            readFully(batchHeader, position);
+            int length = batchHeader.getInt(0);
+            int checksum = batchHeader.getInt(4);
+            if (length < 4 || position + BATCH_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(body, position + BATCH_HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            replay(body, position + BATCH_HEADER_SIZE);
+            position += BATCH_HEADER_SIZE + length;
+        }
+
+        end = position;
+        if (end < size) {
+            // A batch that never finished reaching disk: drop it so the next one follows the last good one
+            LOGGER.warning("Discarding " + (size - end) + " bytes of an incomplete batch at the end of " + filePath);
+            channel.truncate(end);
+        }
+    }
+
+    private void replay(ByteBuffer body, long bodyPosition) {
+        body.position(0);
+        int opCount = body.getInt();
+        for (int i = 0; i < opCount; i++) {
+            byte type = body.get();
+            byte[] name = new byte[body.getShort()];
+            body.get(name);
+            long key = body.getLong();
+            Op op;
+            if (type == OP_PUT) {
+                int rowLength = body.getInt();
+                op = new Op(OP_PUT, new String(name, StandardCharsets.UTF_8), key, null);
+                op.rowOffset = body.position();
+                op.rowLength = rowLength;
+                body.position(body.position() + rowLength);
+            } else {
+                op = new Op(OP_DELETE, new String(name, StandardCharsets.UTF_8), key, null);
+            }
+            // Indexes are created after the replay, so the row text is not needed here
+            applyOp(op, bodyPosition + op.rowOffset);
+        }
+    }
+
+    /**
+     * Rewrites the file with only the live rows, then swaps it in. Runs on the compactor
+     * thread, queued by a commit once enough of the file is dead. The rows live when it starts
+     * are copied without holding the lock; the batches committed since are then copied after
+     * them, as they are, under the write lock, and the new file is swapped in.
+     */
+    private void compact() {
+        try {
+            compactFile();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Error compacting " + filePath, e);
+        } finally {
+            compactionQueued = false;
+        }
+    }
+
+    private void compactFile() {
+        // The rows to copy, as of copiedEnd
+        Map<String, Map<Long, Long>> copied = new HashMap<>();
+        long copiedEnd;
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            for (Map.Entry<String, Table> table : tables.entrySet()) {
+                copied.put(table.getKey(), new HashMap<>(table.getValue().rows));
+            }
+            copiedEnd = end;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Path temp = Paths.get(tempFilePath);
+        Map<String, Map<Long, Long>> moved = new HashMap<>();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            IoStats.recordOpen(tempFilePath);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            while (header.hasRemaining()) {
+                out.write(header, header.position());
+            }
+
+            // Rows below copiedEnd are never rewritten in place, so they can be read unlocked
+            long position = HEADER_SIZE;
+            for (Map.Entry<String, Map<Long, Long>> table : copied.entrySet()) {
+                Map<Long, Long> pointers = new HashMap<>();
+                moved.put(table.getKey(), pointers);
+                List<Op> ops = new ArrayList<>(COMPACT_BATCH_ROWS);
+                for (Map.Entry<Long, Long> row : table.getValue().entrySet()) {
+                    ops.add(new Op(OP_PUT, table.getKey(), row.getKey(), readRow(row.getValue())));
+                    if (ops.size() == COMPACT_BATCH_ROWS) {
+                        position = writeCompacted(out, position, ops, pointers);
+                    }
+                }
+                position = writeCompacted(out, position, ops, pointers);
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                // Batches committed while copying go after the copied rows, byte for byte
+                long tailStart = position;
+                out.position(tailStart);
+                for (long copiedTo = copiedEnd; copiedTo < end; ) {
+                    copiedTo += channel.transferTo(copiedTo, end - copiedTo, out);
+                }
+                out.force(false);
+                swapIn(temp, copied, moved, copiedEnd, tailStart, tailStart + end - copiedEnd);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            // The old file is untouched and still in use
+            LOGGER.log(Level.WARNING, "Error compacting " + filePath, e);
+        }
+    }
+
+    // Moves the compacted copy over the file and points every row at its new position. Rows
+    // unchanged since the copy moved as recorded; rows written since sit in the copied tail.
+    // The caller holds the write lock.
+    private void swapIn(Path temp, Map<String, Map<Long, Long>> copied, Map<String, Map<Long, Long>> moved,
+                        long copiedEnd, long tailStart, long compactedEnd) {
+        boolean replaced = false;
+        try {
+            channel.close();
+            Files.move(temp, Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            replaced = true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error replacing " + filePath + " with its compacted copy", e);
+        }
+        try {
+            channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            IoStats.recordOpen(filePath);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to reopen " + filePath, e);
+        }
+        if (!replaced) {
+            // The old file is still in place, so its row positions stay valid
+            return;
+        }
+
+        for (Map.Entry<String, Table> table : tables.entrySet()) {
+            Map<Long, Long> copiedRows = copied.getOrDefault(table.getKey(), Map.of());
+            Map<Long, Long> movedRows = moved.getOrDefault(table.getKey(), Map.of());
+            for (Map.Entry<Long, Long> row : table.getValue().rows.entrySet()) {
+                long pointer = row.getValue();
+                if (Objects.equals(copiedRows.get(row.getKey()), pointer)) {
+                    row.setValue(movedRows.get(row.getKey()));
+                } else {
+                    long rowPosition = pointer >>> ROW_LENGTH_BITS;
+                    row.setValue(((rowPosition - copiedEnd + tailStart) << ROW_LENGTH_BITS) | (pointer & MAX_ROW_LENGTH));
+                }
+            }
+        }
+        end = compactedEnd;
+        LOGGER.info("Compacted " + filePath + " to " + end + " bytes");
+    }
+
+    // Writes the rows as one batch, records where each now lives and returns the new end
+    private long writeCompacted(FileChannel out, long position, List<Op> ops, Map<Long, Long> pointers)
+            throws IOException {
+        if (ops.isEmpty()) {
+            return position;
+        }
+        ByteBuffer batch = encode(ops);
+        while (batch.hasRemaining()) {
+            out.write(batch, position + batch.position());
+        }
+        for (Op op : ops) {
+            pointers.put(op.key, ((position + op.rowOffset) << ROW_LENGTH_BITS) | op.rowLength);
+        }
+        ops.clear();
+        return position + batch.limit();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + filePath);
+            }
+        }
+    }
+
+    // Reads the rows of one table through the RecordCursor interface
+    private class RowCursor implements RecordCursor {
+        private final String table;
+        private final long[] keys;
+        private final FieldTokenizer fields = new FieldTokenizer();
+        private int next = 0;
+        private String row = "";
+
+        RowCursor(String table, long[] keys) {
+            this.table = table;
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean next() {
+            while (next < keys.length) {
+                String candidate = get(table, keys[next++]);
+                if (candidate != null && fields.reset(candidate).fieldCount() > 0) {
+                    row = candidate;
+                    return true;
+                }
+            }
+            row = "";
+            fields.reset(row);
+            return false;
+        }
+
+        @Override
+        public int fieldCount() {
+            return fields.fieldCount();
+        }
+
+        @Override
+        public int getInt(int field) {
+            return fields.getInt(field);
+        }
+
+        @Override
+        public long getLong(int field) {
+            return fields.getLong(field);
+        }
+
+        @Override
+        public long getCents(int field) {
+            return fields.getCents(field);
+        }
+
+        @Override
+        public String getString(int field) {
+            return fields.getString(field);
+        }
+
+        @Override
+        public String lineToString() {
+            return row;
+        }
+
+        @Override
+        public void close() {
+            // Rows are read one at a time from the shared file; nothing to release
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package assignment.repo;
+
+import assignment.repo.TransactionRepository.Transaction;
+import assignment.util.FieldTokenizer;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Transaction storage in the "transaction" table of the embedded database: one row per
+ * transaction, in the same format as Transaction.txt, keyed by the order in which they were
+ * appended. Indexes on the order ID, the timestamp and the staff ID answer findLastOrderId
+ * and the time range and staff queries by reading only the matching rows.
+ */
+public class EmbeddedTransactionStore implements TransactionStore {
+    public static final String TABLE = "transaction";
+
+    private final EmbeddedStore store;
+    private final EmbeddedStore.Index<Long> byOrderId;
+    private final EmbeddedStore.Index<Long> byTimestamp;
+    private final EmbeddedStore.Index<Integer> byStaff;
+    private final AtomicLong nextKey;
+
+    public EmbeddedTransactionStore(EmbeddedStore store) {
+        this.store = store;
+        // Rows in the older format carry no order ID, timestamp or staff, so only the amounts are kept
+        this.byOrderId = store.createIndex(TABLE, EmbeddedTransactionStore.<Long>indexed(Transaction::getOrderId));
+        this.byTimestamp = store.createIndex(TABLE, EmbeddedTransactionStore.<Long>indexed(Transaction::getTimestamp));
+        this.byStaff = store.createIndex(TABLE, EmbeddedTransactionStore.<Integer>indexed(Transaction::getStaffId));
+        this.nextKey = new AtomicLong(store.lastKey(TABLE, 0) + 1);
+    }
+
+    @Override
+    public void appendFormatted(String line) throws IOException {
+        EmbeddedStore.Batch batch = store.batch();
+        stage(batch, line);
+        batch.commit();
+    }
+
+    // Adds the rows of lines produced by formatTransaction to a batch (see EmbeddedCheckoutWriter)
+    void stage(EmbeddedStore.Batch batch, String lines) {
+        for (String line : lines.split("\n")) {
+            if (!line.trim().isEmpty()) {
+                batch.put(TABLE, nextKey.getAndIncrement(), line.trim());
+            }
+        }
+    }
+
+    /**
+     * Returns the highest order ID stored, or 0 if there is none.
+     */
+    @Override
+    public long findLastOrderId() {
+        Long last = byOrderId.highest();
+        return last == null ? 0 : last;
+    }
+
+    @Override
+    public List<Transaction> loadAllTransactions() {
+        try (Stream<Transaction> transactions = streamAllTransactions()) {
+            return transactions.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Stream<Transaction> streamAllTransactions() {
+        FieldTokenizer fields = new FieldTokenizer();
+        return store.rows(TABLE)
+                .map(row -> TransactionRepository.parse(fields, row))
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Streams the matching transactions. With a staff member the staff index picks the rows,
+     * otherwise the timestamp index does; either way only those rows are read.
+     */
+    @Override
+    public Stream<Transaction> streamTransactions(long fromMillis, long toMillis, Integer staffId) {
+        List<Long> keys = staffId != null ? byStaff.find(staffId) : byTimestamp.range(fromMillis, toMillis);
+        FieldTokenizer fields = new FieldTokenizer();
+        return keys.stream()
+                .map(key -> store.get(TABLE, key))
+                .filter(Objects::nonNull)
+                .map(row -> TransactionRepository.parse(fields, row))
+                .filter(t -> t != null && t.getTimestamp() >= fromMillis && t.getTimestamp() <= toMillis
+                        && (staffId == null || t.getStaffId() == staffId));
+    }
+
+    @Override
+    public List<Transaction> query(long fromMillis, long toMillis, Integer staffId) {
+        try (Stream<Transaction> transactions = streamTransactions(fromMillis, toMillis, staffId)) {
+            return transactions.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public RecordCursor openReader() {
+        return store.openCursor(TABLE);
+    }
+
+    /**
+     * Replaces the whole table with the given lines in one transaction (see StoreMigration).
+     */
+    public synchronized void replaceAll(List<String> lines) throws IOException {
+        EmbeddedStore.Batch batch = store.batch();
+        for (long key : store.keys(TABLE, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            batch.delete(TABLE, key);
+        }
+        nextKey.set(1);
+        for (String line : lines) {
+            stage(batch, line);
+        }
+        batch.commit();
+    }
+
+    // Index key taken from a row in the current format; older rows are left out of the index
+    private static <K extends Comparable<? super K>> Function<String, K> indexed(Function<Transaction, K> keyOf) {
+        FieldTokenizer fields = new FieldTokenizer();
+        return row -> {
+            if (fields.reset(row).fieldCount() < TransactionRepository.FIELD_COUNT) {
+                return null;
+            }
+            Transaction transaction = TransactionRepository.parse(fields, row);
+            return transaction == null ? null : keyOf.apply(transaction);
+        };
+    }
+}
@@ -0,0 +1,231 @@
+package assignment.repo;
+
+import assignment.util.Money;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Forward-only reader for the tab-separated append-only logs (PaidItem.txt, Transaction.txt)
+ * that parses fields straight from a memory-mapped view of the file.
+ *
+ * The reader is a cursor: next() moves to the following line and the getters read one of
+ * its fields. Numbers and amounts are parsed from the mapped bytes into primitives, so a
+ * scan builds no Strings per line; one is only built when getString() is called.
+ * The flat-file repositories hand one out from openReader():
+ *
+ *   PaidItemRepository paidItemRepo = new PaidItemRepository();
+ *   try (MappedLogReader reader = paidItemRepo.openReader()) {
+ *       while (reader.next()) {
+ *           revenue += reader.getCents(PaidItemRepository.FIELD_PRICE) * reader.getInt(PaidItemRepository.FIELD_QTY);
+ *       }
+ *   }
+ *
+ * The file is read up to the size it had when the reader was opened. It is mapped in
+ * windows that end on a line boundary, so files larger than one mapping can be read.
+ * Fields follow String.split("\t") rules: trailing empty fields are not counted.
+ */
+public class MappedLogReader implements RecordCursor {
+    private static final int DEFAULT_WINDOW_BYTES = 64 * 1024 * 1024;
+    private static final int INITIAL_FIELDS = 8;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private int windowBytes;
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+    private int windowLimit = 0; // end of the last complete line in the window
+    private int position = 0;
+
+    // Field boundaries of the current line, relative to the window
+    private int[] fieldStart = new int[INITIAL_FIELDS];
+    private int[] fieldEnd = new int[INITIAL_FIELDS];
+    private int fieldCount = 0;
+    private byte[] stringBuffer = new byte[64];
+
+    public MappedLogReader(String filePath) throws IOException {
+        this(filePath, DEFAULT_WINDOW_BYTES);
+    }
+
+    public MappedLogReader(String filePath, int windowBytes) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowBytes = windowBytes;
+    }
+
+    /**
+     * Moves to the next non-blank line. Returns false at the end of the file.
+     */
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            if (position >= windowLimit) {
+                long nextStart = windowStart + windowLimit;
+                if (nextStart >= fileSize) {
+                    fieldCount = 0;
+                    return false;
+                }
+                mapWindow(nextStart);
+            }
+
+            int lineEnd = position;
+            while (lineEnd < windowLimit && window.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int lineStart = position;
+            position = lineEnd + 1;
+            if (lineEnd > lineStart && window.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd > lineStart) {
+                splitFields(lineStart, lineEnd);
+                if (fieldCount > 0) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    // Number of fields on the current line
+    @Override
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    @Override
+    public int getInt(int field) {
+        long value = getLong(field);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Not an int: \"" + getString(field) + "\"");
+        }
+        return (int) value;
+    }
+
+    @Override
+    public long getLong(int field) {
+        int i = fieldStart[checkField(field)];
+        int end = fieldEnd[field];
+        boolean negative = false;
+        if (i < end && (window.get(i) == '-' || window.get(i) == '+')) {
+            negative = window.get(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("Not a number: \"" + getString(field) + "\"");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            value = Math.addExact(Math.multiplyExact(value, 10), digit(field, i));
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses an amount field into sen, with the same rules as Money.parse
+     * (half-up rounding on the third decimal, surrounding spaces ignored).
+     */
+    @Override
+    public long getCents(int field) {
+        return Money.parse(window, fieldStart[checkField(field)], fieldEnd[field]);
+    }
+
+    // Decodes a field as UTF-8; the only getter that allocates
+    @Override
+    public String getString(int field) {
+        int start = fieldStart[checkField(field)];
+        int length = fieldEnd[field] - start;
+        if (stringBuffer.length < length) {
+            stringBuffer = new byte[Math.max(length, stringBuffer.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            stringBuffer[i] = window.get(start + i);
+        }
+        return new String(stringBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Returns the current line as text, for error messages
+    @Override
+    public String lineToString() {
+        if (fieldCount == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fieldCount; i++) {
+            if (i > 0) {
+                sb.append('\t');
+            }
+            sb.append(getString(i));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping itself is released by the garbage collector
+        window = null;
+        channel.close();
+    }
+
+    private void mapWindow(long start) throws IOException {
+        while (true) {
+            long size = Math.min(windowBytes, fileSize - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            windowStart = start;
+            position = 0;
+            if (start + size >= fileSize) {
+                windowLimit = (int) size;
+                return;
+            }
+            int last = (int) size - 1;
+            while (last >= 0 && window.get(last) != '\n') {
+                last--;
+            }
+            if (last >= 0) {
+                windowLimit = last + 1;
+                return;
+            }
+            // A single line longer than the window: map a bigger one
+            windowBytes = (int) Math.min(Integer.MAX_VALUE, (long) windowBytes * 2);
+        }
+    }
+
+    private void splitFields(int lineStart, int lineEnd) {
+        fieldCount = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || window.get(i) == '\t') {
+                if (fieldCount == fieldStart.length) {
+                    fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+                    fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+                }
+                fieldStart[fieldCount] = start;
+                fieldEnd[fieldCount] = i;
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+        // Like String.split, drop trailing empty fields (lines end with a tab)
+        while (fieldCount > 0 && fieldStart[fieldCount - 1] == fieldEnd[fieldCount - 1]) {
+            fieldCount--;
+        }
+    }
+
+    private int checkField(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + field + " of a line with " + fieldCount + " fields");
+        }
+        return field;
+    }
+
+    private int digit(int field, int index) {
+        byte b = window.get(index);
+        if (b < '0' || b > '9') {
+            throw new NumberFormatException("Not a number: \"" + getString(field) + "\"");
+        }
+        return b - '0';
+    }
+}
@@ -4,27 +4,58 @@ import assignment.model.GoldMember;
 import assignment.model.Membership;
 import assignment.model.NormalMember;
 import assignment.model.PremiumMember;
+import assignment.util.FieldTokenizer;
+import assignment.util.LatencyHistogram;
 import assignment.util.MemberConfig;
+import assignment.util.Metrics;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Repository responsible for all file I/O for member data (members.txt).
+ * Repository responsible for all file I/O for member data (members.txt); the flat-file
+ * MemberStore (see Repositories).
+ *
+ * Members are parsed once and kept in memory, indexed by member ID and by IC, and shared by
+ * every MemberRepository instance. The cache is updated in place by appendMember,
+ * saveAllMembers and deleteById. Before each read the file's modification time and length
+ * are compared with those seen last, so edits made outside this class are picked up.
+ * Callers always receive copies, so editing a returned member has no effect until it is saved.
+ *
+ * The file is a TombstoneFile keyed by member ID: a delete marks the member's line as dead
+ * in place instead of copying the file, and the dead lines are compacted away later.
  */
-public class MemberRepository {
+public class MemberRepository implements MemberStore {
 
 
     private static final Logger LOGGER = Logger.getLogger(MemberRepository.class.getName());
 
+    // Shared member cache, guarded by CACHE_LOCK
+    private static final Object CACHE_LOCK = new Object();
+    private static final List<Membership> cachedMembers = new ArrayList<>();
+    private static final Map<Integer, Membership> membersById = new HashMap<>();
+    private static final Map<String, Membership> membersByIc = new HashMap<>();
+    private static long cachedLastModified = -1;
+    private static long cachedLength = -1;
+    // Highest member ID in the cache, the floor for the member ID sequence
+    private static int maxMemberId = 0;
+    private static SequenceAllocator.Sequence memberIds;
+    private static final TombstoneFile memberFile = new TombstoneFile(MemberConfig.MEMBER_FILE_PATH,
+            MemberConfig.TEMP_DELETE_FILE_PATH, MemberRepository::keyOf);
+    // Reads of members.txt into the cache, and writes of one member or the whole file (see Metrics)
+    private static final LatencyHistogram LOAD_LATENCY = Metrics.histogram("member.load");
+    private static final LatencyHistogram WRITE_LATENCY = Metrics.histogram("member.write");
+    private static final LatencyHistogram SAVE_ALL_LATENCY = Metrics.histogram("member.saveAll");
+    static {
+        Metrics.gauge("member.cached", cachedMembers::size);
+    }
+
     /**
      * Checks if the file exists.
      * Creates a new file if it does not exist.
@@ -45,57 +76,182 @@ public class MemberRepository {
      * Returns a list of Membership objects.
      */
     public List<Membership> loadAllMembers() {
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            List<Membership> members = new ArrayList<>(cachedMembers.size());
+            for (Membership member : cachedMembers) {
+                members.add(copyOf(member));
+            }
+            return members;
+        }
+    }
+
+    /**
+     * Finds a member by their ID.
+     * Returns the member, or null if there is no such member.
+     */
+    public Membership findById(int memberId) {
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            Membership member = membersById.get(memberId);
+            return member == null ? null : copyOf(member);
+        }
+    }
+
+    /**
+     * Finds a member by their IC number.
+     * Returns the member, or null if there is no such member.
+     */
+    public Membership findByIc(String ic) {
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            Membership member = membersByIc.get(ic);
+            return member == null ? null : copyOf(member);
+        }
+    }
+
+    /**
+     * Checks if a member ID is in the file.
+     */
+    public boolean existsById(int memberId) {
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            return membersById.containsKey(memberId);
+        }
+    }
+
+    // Re-reads the file if it is not the version last read or written by this class
+    private void ensureCacheFresh() {
         ensureFileExists();
-        List<Membership> members = new ArrayList<>();
+        File file = new File(MemberConfig.MEMBER_FILE_PATH);
+        if (file.lastModified() == cachedLastModified && file.length() == cachedLength) {
+            return;
+        }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(MemberConfig.MEMBER_FILE_PATH))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("\t");
+        long start = System.nanoTime();
+        cachedMembers.clear();
+        membersById.clear();
+        membersByIc.clear();
+        maxMemberId = 0;
+        try {
+            FieldTokenizer fields = new FieldTokenizer();
+            for (String line : memberFile.load()) {
+                fields.reset(line);
 
-                if (parts.length >= 5) {
+                if (fields.fieldCount() >= 5) {
                     // memberName and memberIC wrong position
-                    String memberName = parts[0];
-                    String memberIC = parts[1];
-                    String memberHP = parts[2];
-                    int memberId = Integer.parseInt(parts[3]);
-                    String membershipType = parts[4];
-
-                    Membership member = switch (membershipType) {
-                        case MemberConfig.MEMBER_TYPE_NORMAL -> new NormalMember(memberName, memberIC, memberId, memberHP, membershipType);
-                        case MemberConfig.MEMBER_TYPE_GOLD -> new GoldMember(memberName, memberIC, memberId, memberHP, membershipType);
-                        case MemberConfig.MEMBER_TYPE_PREMIUM -> new PremiumMember(memberName, memberIC, memberId, memberHP, membershipType);
-                        default -> null;
-                    };
+                    String memberName = fields.getString(0);
+                    String memberIC = fields.getString(1);
+                    String memberHP = fields.getString(2);
+                    int memberId = fields.getInt(3);
+                    String membershipType = fields.getString(4);
 
+                    Membership member = create(memberName, memberIC, memberId, memberHP, membershipType);
                     if (member != null) {
-                        members.add(member);
+                        addToCache(member);
                     }
                 }
             }
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, MemberConfig.ErrorMessage.FILE_READ_ERROR, e);
         }
+        recordFileState();
+        LOAD_LATENCY.recordSince(start);
+    }
+
+    // Remembers the file's current state after it was read or written by this class
+    private static void recordFileState() {
+        File file = new File(MemberConfig.MEMBER_FILE_PATH);
+        cachedLastModified = file.lastModified();
+        cachedLength = file.length();
+    }
 
-        return members;
+    // The member ID of a line, or null if the line is not a member
+    private static Integer keyOf(String line) {
+        FieldTokenizer fields = new FieldTokenizer().reset(line);
+        return fields.fieldCount() >= 5 ? fields.getInt(3) : null;
+    }
+
+    private static void addToCache(Membership member) {
+        cachedMembers.add(member);
+        membersById.put(member.getId(), member);
+        membersByIc.put(member.getIc(), member);
+        maxMemberId = Math.max(maxMemberId, member.getId());
+    }
+
+    /**
+     * Issues the ID for a new member from the member sequence (see SequenceAllocator).
+     * The sequence starts after the highest ID in the file, so existing members keep their
+     * IDs, including the random three-digit ones issued before, and a new ID is never one
+     * already in use. The index is checked as well, in case members.txt was edited by hand.
+     */
+    public int nextMemberId() {
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            long floor = Math.max(MemberConfig.FIRST_MEMBER_ID, maxMemberId + 1L);
+            if (memberIds == null || memberIds.peek() < floor) {
+                memberIds = SequenceAllocator.getInstance().sequence(SequenceAllocator.MEMBER, floor);
+            }
+            int id;
+            do {
+                id = Math.toIntExact(memberIds.next());
+            } while (membersById.containsKey(id));
+            return id;
+        }
+    }
+
+    // Builds the member subclass for the membership type, or returns null for an unknown type
+    static Membership create(String name, String ic, int id, String hp, String type) {
+        return switch (type) {
+            case MemberConfig.MEMBER_TYPE_NORMAL -> new NormalMember(name, ic, id, hp, type);
+            case MemberConfig.MEMBER_TYPE_GOLD -> new GoldMember(name, ic, id, hp, type);
+            case MemberConfig.MEMBER_TYPE_PREMIUM -> new PremiumMember(name, ic, id, hp, type);
+            default -> null;
+        };
+    }
+
+    // Formats a member exactly as it is stored, without the line end
+    static String formatMember(Membership member) {
+        //Deleted discount rate, take it by reading its type
+        return member.getName() + "\t" +
+                member.getIc() + "\t" +
+                member.getMemberHp() + "\t" +
+                member.getId() + "\t" +
+                member.getMemberType() + "\t";
+    }
+
+    static Membership copyOf(Membership member) {
+        return create(member.getName(), member.getIc(), member.getId(), member.getMemberHp(), member.getMemberType());
     }
 
     /**
      * Adds a new member to the end of the file.
      */
     public void appendMember(Membership member) {
-        ensureFileExists();
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            if (writeMember(member)) {
+                Membership cached = copyOf(member);
+                removeFromCache(member.getId());
+                if (cached != null) {
+                    addToCache(cached);
+                }
+                recordFileState();
+            }
+        }
+    }
 
-        try (FileWriter writer = new FileWriter(MemberConfig.MEMBER_FILE_PATH, true)) {
-            writer.write(member.getName() + "\t");
-            writer.write(member.getIc() + "\t");
-            writer.write(member.getMemberHp() + "\t");
-            writer.write(member.getId() + "\t");
-            writer.write(member.getMemberType() + "\t");
-            //Deleted discount rate, take it by reading its type
-            writer.write("\n");
+    // Appends the member; a member already in the file is replaced by the new version
+    private boolean writeMember(Membership member) {
+        long start = System.nanoTime();
+        try {
+            memberFile.write(member.getId(), formatMember(member));
+            return true;
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, MemberConfig.ErrorMessage.FILE_WRITE_ERROR, e);
+            return false;
+        } finally {
+            WRITE_LATENCY.recordSince(start);
         }
     }
 
@@ -105,22 +261,40 @@ public class MemberRepository {
      */
 
     public void saveAllMembers(List<Membership> members) {
-        ensureFileExists();
-
-        try (FileWriter fw = new FileWriter(MemberConfig.MEMBER_FILE_PATH, false)) { // overwrite file
-            for (Membership member : members) {
-                String line =
-                        member.getName() + "\t" +
-                                member.getIc() + "\t" +
-                                member.getMemberHp() + "\t" +
-                                member.getId() + "\t" +
-                                member.getMemberType() + "\t" +
-                                System.lineSeparator();
-
-                fw.write(line);
+        synchronized (CACHE_LOCK) {
+            if (writeAllMembers(members)) {
+                cachedMembers.clear();
+                membersById.clear();
+                membersByIc.clear();
+                maxMemberId = 0;
+                for (Membership member : members) {
+                    Membership cached = copyOf(member);
+                    if (cached != null) {
+                        addToCache(cached);
+                    }
+                }
+                recordFileState();
+            } else {
+                // Unknown what reached the file, so read it again next time
+                cachedLastModified = -1;
             }
+        }
+    }
+
+    private boolean writeAllMembers(List<Membership> members) {
+        long start = System.nanoTime();
+        List<String> lines = new ArrayList<>(members.size());
+        for (Membership member : members) {
+            lines.add(formatMember(member));
+        }
+        try {
+            memberFile.replaceAll(lines); // overwrite file
+            return true;
         } catch (IOException e) {
             System.out.println(MemberConfig.ErrorMessage.SAVE_MEMBERS_FAILED_TEMPLATE + e.getMessage());
+            return false;
+        } finally {
+            SAVE_ALL_LATENCY.recordSince(start);
         }
     }
 
@@ -130,42 +304,34 @@ public class MemberRepository {
      * Returns true if the member was deleted.
      */
     public boolean deleteById(int memberIdToDelete) {
-        ensureFileExists();
-        File inputFile = new File(MemberConfig.MEMBER_FILE_PATH);
-        File tempFile = new File(MemberConfig.TEMP_DELETE_FILE_PATH);
-
-        boolean found = false;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split("\t");
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            boolean deleted = deleteFromFile(memberIdToDelete);
+            if (deleted) {
+                removeFromCache(memberIdToDelete);
+                recordFileState();
+            }
+            return deleted;
+        }
+    }
 
-                if (data.length >= 4) {
-                    int dltMemberId = Integer.parseInt(data[3]);
-                    if (dltMemberId == memberIdToDelete) {
-                        found = true;
-                        continue; // skip this record
-                    }
-                }
+    private static void removeFromCache(int memberId) {
+        Membership removed = membersById.remove(memberId);
+        if (removed != null) {
+            cachedMembers.remove(removed);
+            membersByIc.remove(removed.getIc());
+        }
+    }
 
-                writer.write(line + System.lineSeparator());
-            }
+    // Tombstones the member's line in place
+    private boolean deleteFromFile(int memberIdToDelete) {
+        try {
+            return memberFile.delete(memberIdToDelete);
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, MemberConfig.ErrorMessage.FILE_DELETE_ERROR, e);
+            cachedLastModified = -1;
             return false;
         }
-
-        if (found) {
-            if (!inputFile.delete() || !tempFile.renameTo(inputFile)) {
-                LOGGER.severe(MemberConfig.ErrorMessage.FILE_DELETE_ERROR);
-            }
-        } else {
-            tempFile.delete();
-        }
-        return found;
     }
 
     /**
@@ -173,20 +339,10 @@ public class MemberRepository {
      * Returns true if found, false otherwise.
      */
     public boolean existsByIc(String targetIC) {
-        ensureFileExists();
-
-        try (BufferedReader br = new BufferedReader(new FileReader(MemberConfig.MEMBER_FILE_PATH))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("\t");
-                if (parts[1].equals(targetIC)) {
-                    return true;
-                }
-            }
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, MemberConfig.ErrorMessage.FILE_READ_ERROR, e);
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            return membersByIc.containsKey(targetIC);
         }
-        return false;
     }
 }
 
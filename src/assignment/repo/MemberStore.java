@@ -0,0 +1,56 @@
+package assignment.repo;
+
+import assignment.model.Membership;
+import java.util.List;
+
+/**
+ * Storage for member data. MemberRepository keeps members in members.txt and
+ * EmbeddedMemberStore keeps them in the embedded database; Repositories.members()
+ * returns the one selected by StoreConfig.
+ * Callers always receive copies, so editing a returned member has no effect until it is saved.
+ */
+public interface MemberStore {
+
+    /**
+     * Reads all members.
+     */
+    List<Membership> loadAllMembers();
+
+    /**
+     * Finds a member by their ID.
+     * Returns the member, or null if there is no such member.
+     */
+    Membership findById(int memberId);
+
+    /**
+     * Finds a member by their IC number.
+     * Returns the member, or null if there is no such member.
+     */
+    Membership findByIc(String ic);
+
+    boolean existsById(int memberId);
+
+    boolean existsByIc(String ic);
+
+    /**
+     * Issues the ID for a new member from the member sequence (see SequenceAllocator).
+     * The ID is never one already in use.
+     */
+    int nextMemberId();
+
+    /**
+     * Adds a new member.
+     */
+    void appendMember(Membership member);
+
+    /**
+     * Replaces every member with the given list.
+     */
+    void saveAllMembers(List<Membership> members);
+
+    /**
+     * Deletes a member by their ID.
+     * Returns true if the member was deleted.
+     */
+    boolean deleteById(int memberId);
+}
@@ -1,53 +1,214 @@
 package assignment.repo;
 
 import assignment.model.Stock;
+import assignment.util.FieldTokenizer;
+import assignment.util.IoStats;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 /**
- * Repository responsible for writing paid items to PaidItem.txt.
+ * Repository responsible for writing paid items to PaidItem.txt; the flat-file PaidItemStore
+ * (see Repositories).
+ * Format: stockId, stockName, qty, price (tab-separated, price with two decimals)
  */
-public class PaidItemRepository {
+public class PaidItemRepository implements PaidItemStore {
     private static final String PAID_ITEM_FILE_PATH = "PaidItem.txt";
+    // Column positions, for reading the file with a MappedLogReader
+    public static final int FIELD_STOCK_ID = 0;
+    public static final int FIELD_STOCK_NAME = 1;
+    public static final int FIELD_QTY = 2;
+    public static final int FIELD_PRICE = 3;
+    public static final int FIELD_COUNT = 4;
     private static final Logger LOGGER = Logger.getLogger(PaidItemRepository.class.getName());
 
     /**
-     * Appends a paid item to the file.
+     * When the written paid items are forced to disk.
+     * NONE leaves it to the OS, PER_BATCH syncs after every checkout, and PER_INTERVAL
+     * syncs at most once per interval (a crash may lose the checkouts written since).
      */
-    public void appendPaidItem(Stock item) {
-        ensureFileExists();
-        try (FileWriter writer = new FileWriter(PAID_ITEM_FILE_PATH, true)) {
-            writer.write(item.getStockID() + "\t");
-            writer.write(item.getStockName() + "\t");
-            writer.write(item.getQty() + "\t");
-            writer.write(item.getPrice() + "\t");
-            writer.write("\n");
+    public enum FsyncPolicy {
+        NONE, PER_BATCH, PER_INTERVAL
+    }
+
+    private final String filePath;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private long lastSyncMillis = 0;
+
+    public PaidItemRepository() {
+        this(PAID_ITEM_FILE_PATH,
+                FsyncPolicy.valueOf(System.getProperty("paidItem.fsync", FsyncPolicy.PER_BATCH.name())),
+                Long.getLong("paidItem.fsync.intervalMs", 1000L));
+    }
+
+    public PaidItemRepository(String filePath, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) {
+        this.filePath = filePath;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    /**
+     * Appends lines produced by formatPaidItems in a single write call.
+     */
+    public void appendFormatted(String lines) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            IoStats.recordOpen(filePath);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (shouldSync()) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Forces everything written to the file so far to disk, whatever the fsync policy
+     * (see CheckoutLog.commit).
+     */
+    public void force() throws IOException {
+        forceFile(filePath);
+    }
+
+    // Syncs a file's written data through a fresh handle; the OS syncs the file, not the handle
+    static void forceFile(String path) throws IOException {
+        if (!new File(path).exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.WRITE)) {
+            IoStats.recordOpen(path);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Streams every paid item in the file, reading it lazily line by line.
+     * The stream must be closed after use.
+     */
+    public Stream<Stock> streamPaidItems() {
+        if (!new File(filePath).exists()) {
+            return Stream.empty();
+        }
+
+        BufferedReader reader;
+        try {
+            reader = new BufferedReader(new FileReader(filePath));
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Error writing paid item", e);
+            throw new UncheckedIOException("Error reading paid item file", e);
         }
+        FieldTokenizer fields = new FieldTokenizer();
+        return reader.lines()
+                .map(line -> parse(fields, line))
+                .filter(Objects::nonNull)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Error closing paid item file", e);
+                    }
+                });
     }
 
     /**
-     * Appends multiple paid items to the file.
+     * Opens a reader that parses the file straight from a memory mapping without building
+     * Strings, for scans over the whole history (see MappedLogReader and the FIELD_ constants).
+     * Returns null if the file does not exist yet. The reader must be closed after use.
      */
-    public void appendPaidItems(java.util.List<Stock> items) {
-        for (Stock item : items) {
-            appendPaidItem(item);
+    @Override
+    public MappedLogReader openReader() throws IOException {
+        if (!new File(filePath).exists()) {
+            return null;
         }
+        return new MappedLogReader(filePath);
     }
 
-    private void ensureFileExists() {
-        File file = new File(PAID_ITEM_FILE_PATH);
-        if (!file.exists()) {
-            try {
-                file.createNewFile();
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Error creating paid item file", e);
+    // Parses one line written by formatPaidItems, or returns null if it is malformed
+    static Stock parse(FieldTokenizer fields, String line) {
+        if (fields.reset(line).fieldCount() < FIELD_COUNT) {
+            return null;
+        }
+        try {
+            return new Stock(fields.getInt(FIELD_STOCK_ID), fields.getString(FIELD_STOCK_NAME),
+                    fields.getInt(FIELD_QTY), fields.getCents(FIELD_PRICE));
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Skipping malformed paid item line: " + line);
+            return null;
+        }
+    }
+
+    /**
+     * Rewrites the whole file with two-decimal prices.
+     * Used to migrate files written by older versions, which stored prices as doubles.
+     * Returns the number of paid items written.
+     */
+    public synchronized long rewriteInCurrentFormat() throws IOException {
+        File tempFile = new File(filePath + ".tmp");
+        long count = 0;
+        try (Stream<Stock> items = streamPaidItems();
+             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+            IoStats.recordOpen(tempFile.getPath());
+            Iterator<Stock> it = items.iterator();
+            while (it.hasNext()) {
+                writer.write(formatPaidItems(Collections.singletonList(it.next())));
+                count++;
             }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+
+        Files.move(tempFile.toPath(), Paths.get(filePath),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    // Returns the current size of the file in bytes (0 if it does not exist yet)
+    public long length() {
+        return new File(filePath).length();
     }
-}
 
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    private synchronized boolean shouldSync() {
+        switch (fsyncPolicy) {
+            case PER_BATCH:
+                return true;
+            case PER_INTERVAL:
+                long now = System.currentTimeMillis();
+                if (now - lastSyncMillis >= fsyncIntervalMillis) {
+                    lastSyncMillis = now;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+}
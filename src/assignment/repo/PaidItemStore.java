@@ -0,0 +1,66 @@
+package assignment.repo;
+
+import assignment.model.Stock;
+import assignment.util.Money;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Storage for paid items. PaidItemRepository keeps them in PaidItem.txt and
+ * EmbeddedPaidItemStore keeps them in the embedded database; Repositories.paidItems()
+ * returns the one selected by StoreConfig. Both hold each item in the format written by
+ * formatPaidItems, so the PaidItemRepository.FIELD_ constants apply to either.
+ */
+public interface PaidItemStore {
+
+    /**
+     * Formats paid items exactly as they are stored, one line per item.
+     */
+    default String formatPaidItems(List<Stock> items) {
+        StringBuilder batch = new StringBuilder(items.size() * 32);
+        for (Stock item : items) {
+            batch.append(item.getStockID()).append('\t')
+                    .append(item.getStockName()).append('\t')
+                    .append(item.getQty()).append('\t')
+                    .append(Money.format(item.getPriceCents())).append('\t')
+                    .append('\n');
+        }
+        return batch.toString();
+    }
+
+    /**
+     * Appends a paid item.
+     */
+    default void appendPaidItem(Stock item) throws IOException {
+        appendPaidItems(Collections.singletonList(item));
+    }
+
+    /**
+     * Appends multiple paid items as one write.
+     */
+    default void appendPaidItems(List<Stock> items) throws IOException {
+        if (items.isEmpty()) {
+            return;
+        }
+        appendFormatted(formatPaidItems(items));
+    }
+
+    /**
+     * Appends lines produced by formatPaidItems as one write.
+     * Throws if they could not be written; part of them may have reached the store.
+     */
+    void appendFormatted(String lines) throws IOException;
+
+    /**
+     * Streams every paid item, reading them lazily. The stream must be closed after use.
+     */
+    Stream<Stock> streamPaidItems();
+
+    /**
+     * Opens a cursor over every paid item, for scans over the whole history.
+     * Returns null if there are none yet. The cursor must be closed after use.
+     */
+    RecordCursor openReader() throws IOException;
+}
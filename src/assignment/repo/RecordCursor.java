@@ -0,0 +1,33 @@
+package assignment.repo;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Forward-only cursor over tab-separated records, for scans over the whole sales history
+ * (see RollupRepository.rebuild). MappedLogReader reads the flat files this way and
+ * EmbeddedStore reads a table this way, so a scan does not depend on the backend.
+ *
+ * next() moves to the following record and the getters read one of its fields; fields follow
+ * String.split("\t") rules, so trailing empty fields are not counted.
+ */
+public interface RecordCursor extends Closeable {
+
+    // Moves to the next non-blank record. Returns false at the end.
+    boolean next() throws IOException;
+
+    // Number of fields in the current record
+    int fieldCount();
+
+    int getInt(int field);
+
+    long getLong(int field);
+
+    // Parses an amount field into sen, with the same rules as Money.parse
+    long getCents(int field);
+
+    String getString(int field);
+
+    // Returns the current record as text, for error messages
+    String lineToString();
+}
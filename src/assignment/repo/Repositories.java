@@ -0,0 +1,79 @@
+package assignment.repo;
+
+import assignment.util.StoreConfig;
+
+/**
+ * Hands out the stores selected by StoreConfig.REPOSITORY_BACKEND: the flat-file
+ * repositories by default, or the embedded database stores with -Drepo.backend=embedded.
+ * Each store is created on first use and shared from then on, so every part of the program
+ * sees the same indexes and ID sequences. Stock is chosen separately (see StockConfig).
+ */
+public final class Repositories {
+    private static MemberStore members;
+    private static StaffStore staff;
+    private static TransactionStore transactions;
+    private static PaidItemStore paidItems;
+
+    private Repositories() {
+        // prevent instantiation
+    }
+
+    public static synchronized MemberStore members() {
+        if (members == null) {
+            members = StoreConfig.isEmbedded()
+                    ? new EmbeddedMemberStore(EmbeddedStore.getInstance())
+                    : new MemberRepository();
+        }
+        return members;
+    }
+
+    public static synchronized StaffStore staff() {
+        if (staff == null) {
+            staff = StoreConfig.isEmbedded()
+                    ? new EmbeddedStaffStore(EmbeddedStore.getInstance())
+                    : new StaffRepository();
+        }
+        return staff;
+    }
+
+    public static synchronized TransactionStore transactions() {
+        if (transactions == null) {
+            transactions = StoreConfig.isEmbedded()
+                    ? new EmbeddedTransactionStore(EmbeddedStore.getInstance())
+                    : new TransactionRepository();
+        }
+        return transactions;
+    }
+
+    public static synchronized PaidItemStore paidItems() {
+        if (paidItems == null) {
+            paidItems = StoreConfig.isEmbedded()
+                    ? new EmbeddedPaidItemStore(EmbeddedStore.getInstance())
+                    : new PaidItemRepository();
+        }
+        return paidItems;
+    }
+
+    /**
+     * Returns the checkout writer for the shared paid item and transaction stores.
+     */
+    public static CheckoutWriter checkoutWriter() {
+        return checkoutWriter(paidItems(), transactions());
+    }
+
+    /**
+     * Returns a checkout writer that commits to the given stores as one unit.
+     * Both must use the same backend.
+     */
+    public static CheckoutWriter checkoutWriter(PaidItemStore paidItemStore, TransactionStore transactionStore) {
+        if (paidItemStore instanceof EmbeddedPaidItemStore embeddedPaidItems
+                && transactionStore instanceof EmbeddedTransactionStore embeddedTransactions) {
+            return new EmbeddedCheckoutWriter(EmbeddedStore.getInstance(), embeddedPaidItems, embeddedTransactions);
+        }
+        if (paidItemStore instanceof PaidItemRepository paidItemRepo
+                && transactionStore instanceof TransactionRepository transactionRepo) {
+            return new CheckoutLog(paidItemRepo, transactionRepo);
+        }
+        throw new IllegalArgumentException("Paid items and transactions must use the same backend");
+    }
+}
@@ -0,0 +1,425 @@
+package assignment.repo;
+
+import assignment.model.Membership;
+import assignment.model.Stock;
+import assignment.util.FieldTokenizer;
+import assignment.util.IoStats;
+import assignment.util.Money;
+import assignment.util.StoreConfig;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Repository for the sales rollups (rollups.txt): running totals per hour, day, staff member,
+ * member tier and SKU, updated as each checkout is committed so reports read a handful of
+ * buckets instead of re-summing every historical transaction.
+ *
+ * The file starts with "#lastOrder\t<orderId>", the last checkout counted, followed by one
+ * bucket per line:
+ *   dimension  key  count  quantity  subtotal  discount  tax  total   (tab-separated)
+ * Amounts are written with two decimals and kept in memory as sen (see Money), so the
+ * totals are exact. For SKU buckets, count is the number of paid lines, quantity the units
+ * sold and subtotal the revenue; discount, tax and total only apply to the other dimensions.
+ *
+ * A bucket line may appear more than once; its values are added up on load. Each checkout
+ * appends only the buckets it changed, as a block between "#checkout\t<orderId>" and
+ * "#lastOrder\t<orderId>", so committing a checkout is one small append. A block without its
+ * closing line (a crash mid-append) is ignored on load. Every StoreConfig.ROLLUP_COMPACT_EVERY
+ * checkouts the file is rewritten with the summed buckets, dropping hour buckets older than
+ * StoreConfig.ROLLUP_HOUR_RETENTION_DAYS days.
+ *
+ * The rollups can always be rebuilt from the transactions and paid items with rebuild()
+ * (see RollupBackfill).
+ */
+public class RollupRepository {
+    private static final String ROLLUP_FILE_PATH = "rollups.txt";
+    private static final String TEMP_ROLLUP_FILE_PATH = "rollupsTemp.txt";
+    private static final String LAST_ORDER_HEADER = "#lastOrder";
+    private static final String CHECKOUT_HEADER = "#checkout";
+    // Bucket key for transactions written before timestamps were recorded
+    private static final String UNKNOWN_TIME_KEY = "-";
+    private static final String NO_MEMBER_TIER = "None";
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH");
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final Logger LOGGER = Logger.getLogger(RollupRepository.class.getName());
+
+    public enum Dimension {
+        HOUR, DAY, STAFF, TIER, SKU
+    }
+
+    /**
+     * Running totals for one bucket.
+     */
+    public static class Bucket {
+        private long count;
+        private long quantity;
+        private long subtotal;
+        private long discount;
+        private long tax;
+        private long total;
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+
+        public long getSubtotal() {
+            return subtotal;
+        }
+
+        public long getDiscount() {
+            return discount;
+        }
+
+        public long getTax() {
+            return tax;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        void add(long count, long quantity, long subtotal, long discount, long tax, long total) {
+            this.count += count;
+            this.quantity += quantity;
+            this.subtotal += subtotal;
+            this.discount += discount;
+            this.tax += tax;
+            this.total += total;
+        }
+    }
+
+    private final String filePath;
+    private final String tempFilePath;
+    private final Map<Dimension, TreeMap<String, Bucket>> buckets = new EnumMap<>(Dimension.class);
+    private long lastOrderId = 0;
+    // Checkout blocks appended since the file was last rewritten
+    private int appendedCheckouts = 0;
+
+    public RollupRepository() {
+        this(ROLLUP_FILE_PATH, TEMP_ROLLUP_FILE_PATH);
+    }
+
+    public RollupRepository(String filePath, String tempFilePath) {
+        this.filePath = filePath;
+        this.tempFilePath = tempFilePath;
+        clearBuckets();
+        if (!load()) {
+            // Drop the unfinished block so later appends do not follow it
+            save();
+        }
+    }
+
+    /**
+     * Adds one committed checkout to every rollup and appends its changes to the file.
+     * Checkouts already counted (orderId not above the last counted order) are ignored,
+     * so a checkout replayed after a crash is never counted twice.
+     */
+    public synchronized void recordCheckout(long orderId, long timestamp, int staffId, String memberTier,
+                                            long subtotal, long discount, long tax, long total,
+                                            List<Stock> items) {
+        if (orderId <= lastOrderId) {
+            return;
+        }
+        Map<Dimension, TreeMap<String, Bucket>> changes = newBuckets();
+        addTransaction(changes, timestamp, staffId, memberTier, subtotal, discount, tax, total);
+        for (Stock item : items) {
+            addPaidItem(changes, item.getStockID(), item.getQty(), item.getPriceCents());
+        }
+        addAll(changes);
+        lastOrderId = orderId;
+
+        if (appendedCheckouts >= StoreConfig.ROLLUP_COMPACT_EVERY || !append(orderId, changes)) {
+            save();
+        }
+    }
+
+    /**
+     * Returns the buckets of one dimension, sorted by key.
+     */
+    public synchronized SortedMap<String, Bucket> getBuckets(Dimension dimension) {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(buckets.get(dimension)));
+    }
+
+    /**
+     * Returns the totals over every checkout, summed from the day buckets.
+     */
+    public synchronized Bucket getGrandTotal() {
+        Bucket grandTotal = new Bucket();
+        for (Bucket day : buckets.get(Dimension.DAY).values()) {
+            grandTotal.add(day.count, day.quantity, day.subtotal, day.discount, day.tax, day.total);
+        }
+        return grandTotal;
+    }
+
+    // The last checkout included in the rollups
+    public synchronized long getLastOrderId() {
+        return lastOrderId;
+    }
+
+    /**
+     * Recomputes every rollup from the transactions and paid items and saves the result.
+     * Member tiers are taken from the current member list; transactions of members that no
+     * longer exist are counted under tier "None".
+     * Both are scanned with a RecordCursor (for the flat files a MappedLogReader, so no
+     * Strings are built per record).
+     */
+    public synchronized void rebuild(TransactionStore transactionRepo, PaidItemStore paidItemRepo,
+                                     List<Membership> members) {
+        Map<Integer, String> tierByMember = new HashMap<>();
+        for (Membership member : members) {
+            tierByMember.put(member.getId(), member.getMemberType());
+        }
+
+        clearBuckets();
+        long maxOrderId = 0;
+        try (RecordCursor reader = transactionRepo.openReader()) {
+            while (reader.next()) {
+                try {
+                    if (reader.fieldCount() >= TransactionRepository.FIELD_COUNT) {
+                        long orderId = reader.getLong(TransactionRepository.FIELD_ORDER_ID);
+                        int memberId = reader.getInt(TransactionRepository.FIELD_MEMBER_ID);
+                        addTransaction(buckets, reader.getLong(TransactionRepository.FIELD_TIMESTAMP),
+                                reader.getInt(TransactionRepository.FIELD_STAFF_ID), tierByMember.get(memberId),
+                                reader.getCents(TransactionRepository.FIELD_SUBTOTAL),
+                                reader.getCents(TransactionRepository.FIELD_DISCOUNT),
+                                reader.getCents(TransactionRepository.FIELD_TAX),
+                                reader.getCents(TransactionRepository.FIELD_TOTAL));
+                        maxOrderId = Math.max(maxOrderId, orderId);
+                    } else if (reader.fieldCount() >= TransactionRepository.LEGACY_FIELD_COUNT) {
+                        // Older rows hold only the amounts
+                        addTransaction(buckets, 0, 0, null, reader.getCents(0), reader.getCents(1),
+                                reader.getCents(2), reader.getCents(3));
+                    }
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Skipping malformed transaction line: " + reader.lineToString());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading transaction file", e);
+        }
+
+        try (RecordCursor reader = paidItemRepo.openReader()) {
+            while (reader != null && reader.next()) {
+                if (reader.fieldCount() < PaidItemRepository.FIELD_COUNT) {
+                    continue;
+                }
+                try {
+                    addPaidItem(buckets, reader.getInt(PaidItemRepository.FIELD_STOCK_ID),
+                            reader.getInt(PaidItemRepository.FIELD_QTY),
+                            reader.getCents(PaidItemRepository.FIELD_PRICE));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Skipping malformed paid item line: " + reader.lineToString());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading paid item file", e);
+        }
+        lastOrderId = maxOrderId;
+        save();
+    }
+
+    private static void addTransaction(Map<Dimension, TreeMap<String, Bucket>> buckets, long timestamp,
+                                       int staffId, String memberTier,
+                                       long subtotal, long discount, long tax, long total) {
+        String hourKey = UNKNOWN_TIME_KEY;
+        String dayKey = UNKNOWN_TIME_KEY;
+        if (timestamp > 0) {
+            Instant instant = Instant.ofEpochMilli(timestamp);
+            hourKey = HOUR_FORMAT.format(instant.atZone(ZoneId.systemDefault()));
+            dayKey = DAY_FORMAT.format(instant.atZone(ZoneId.systemDefault()));
+        }
+        String tierKey = memberTier == null ? NO_MEMBER_TIER : memberTier;
+
+        bucket(buckets, Dimension.HOUR, hourKey).add(1, 0, subtotal, discount, tax, total);
+        bucket(buckets, Dimension.DAY, dayKey).add(1, 0, subtotal, discount, tax, total);
+        bucket(buckets, Dimension.STAFF, String.valueOf(staffId)).add(1, 0, subtotal, discount, tax, total);
+        bucket(buckets, Dimension.TIER, tierKey).add(1, 0, subtotal, discount, tax, total);
+    }
+
+    private static void addPaidItem(Map<Dimension, TreeMap<String, Bucket>> buckets,
+                                    int stockId, int qty, long priceCents) {
+        bucket(buckets, Dimension.SKU, String.valueOf(stockId))
+                .add(1, qty, Money.multiply(priceCents, qty), 0, 0, 0);
+    }
+
+    private static Bucket bucket(Map<Dimension, TreeMap<String, Bucket>> buckets, Dimension dimension, String key) {
+        return buckets.get(dimension).computeIfAbsent(key, k -> new Bucket());
+    }
+
+    private static Map<Dimension, TreeMap<String, Bucket>> newBuckets() {
+        Map<Dimension, TreeMap<String, Bucket>> buckets = new EnumMap<>(Dimension.class);
+        for (Dimension dimension : Dimension.values()) {
+            buckets.put(dimension, new TreeMap<>());
+        }
+        return buckets;
+    }
+
+    private void clearBuckets() {
+        buckets.putAll(newBuckets());
+    }
+
+    // Reads the file, adding up repeated buckets. Returns false if it ends in an unfinished
+    // checkout block.
+    private boolean load() {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            return true;
+        }
+
+        // Lines of the checkout block being read, counted only once its closing line is read
+        Map<Dimension, TreeMap<String, Bucket>> block = null;
+        long blockOrderId = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            FieldTokenizer fields = new FieldTokenizer();
+            String line;
+            while ((line = br.readLine()) != null) {
+                fields.reset(line);
+                try {
+                    if (fields.fieldCount() >= 2 && fields.fieldEquals(0, CHECKOUT_HEADER)) {
+                        block = newBuckets();
+                        blockOrderId = fields.getLong(1);
+                    } else if (fields.fieldCount() >= 2 && fields.fieldEquals(0, LAST_ORDER_HEADER)) {
+                        long orderId = fields.getLong(1);
+                        if (block != null) {
+                            if (orderId == blockOrderId) {
+                                addAll(block);
+                                appendedCheckouts++;
+                            }
+                            block = null;
+                        }
+                        lastOrderId = Math.max(lastOrderId, orderId);
+                    } else if (fields.fieldCount() >= 8) {
+                        bucket(block != null ? block : buckets, Dimension.valueOf(fields.getString(0)),
+                                fields.getString(1)).add(
+                                fields.getLong(2), fields.getLong(3),
+                                fields.getCents(4), fields.getCents(5),
+                                fields.getCents(6), fields.getCents(7));
+                    }
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warning("Skipping malformed rollup line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading rollup file", e);
+        }
+        if (block != null) {
+            LOGGER.warning("Ignoring unfinished rollup block for order " + blockOrderId);
+            return false;
+        }
+        return true;
+    }
+
+    // Adds a checkout's changes to the rollups
+    private void addAll(Map<Dimension, TreeMap<String, Bucket>> changes) {
+        for (Map.Entry<Dimension, TreeMap<String, Bucket>> dimension : changes.entrySet()) {
+            for (Map.Entry<String, Bucket> entry : dimension.getValue().entrySet()) {
+                Bucket change = entry.getValue();
+                bucket(buckets, dimension.getKey(), entry.getKey()).add(change.count, change.quantity,
+                        change.subtotal, change.discount, change.tax, change.total);
+            }
+        }
+    }
+
+    // Appends one checkout's changes as a block; returns false if it could not be written
+    private boolean append(long orderId, Map<Dimension, TreeMap<String, Bucket>> changes) {
+        StringBuilder content = new StringBuilder();
+        content.append(CHECKOUT_HEADER).append('\t').append(orderId).append('\n');
+        formatBuckets(content, changes);
+        content.append(LAST_ORDER_HEADER).append('\t').append(orderId).append('\n');
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            IoStats.recordOpen(filePath);
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error appending to rollup file, rewriting it", e);
+            return false;
+        }
+        appendedCheckouts++;
+        return true;
+    }
+
+    private static void formatBuckets(StringBuilder content, Map<Dimension, TreeMap<String, Bucket>> buckets) {
+        for (Map.Entry<Dimension, TreeMap<String, Bucket>> dimension : buckets.entrySet()) {
+            for (Map.Entry<String, Bucket> entry : dimension.getValue().entrySet()) {
+                Bucket b = entry.getValue();
+                content.append(dimension.getKey()).append('\t')
+                        .append(entry.getKey()).append('\t')
+                        .append(b.count).append('\t')
+                        .append(b.quantity).append('\t')
+                        .append(Money.format(b.subtotal)).append('\t')
+                        .append(Money.format(b.discount)).append('\t')
+                        .append(Money.format(b.tax)).append('\t')
+                        .append(Money.format(b.total)).append('\t')
+                        .append('\n');
+            }
+        }
+    }
+
+    // Drops hour buckets older than the retention; their checkouts stay in the day buckets
+    private void pruneHours() {
+        String oldestKept = HOUR_FORMAT.format(LocalDateTime.now().minusDays(StoreConfig.ROLLUP_HOUR_RETENTION_DAYS));
+        // The unknown-time key sorts before every hour and is kept
+        buckets.get(Dimension.HOUR).subMap(UNKNOWN_TIME_KEY, false, oldestKept, false).clear();
+    }
+
+    // Writes the summed rollups to a temporary file and moves it over the old one
+    private void save() {
+        pruneHours();
+        StringBuilder content = new StringBuilder();
+        content.append(LAST_ORDER_HEADER).append('\t').append(lastOrderId).append('\n');
+        formatBuckets(content, buckets);
+
+        Path temp = Paths.get(tempFilePath);
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            IoStats.recordOpen(tempFilePath);
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error writing rollup file", e);
+            return;
+        }
+
+        try {
+            Files.move(temp, Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            appendedCheckouts = 0;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error replacing rollup file", e);
+        }
+    }
+}
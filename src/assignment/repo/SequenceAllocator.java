@@ -0,0 +1,202 @@
+package assignment.repo;
+
+import assignment.util.FieldTokenizer;
+import assignment.util.IoStats;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands out increasing IDs (order IDs, stock IDs, member IDs) that are never reused, even
+ * across restarts and crashes (sequences.txt).
+ * Format: name, reservedUpTo (tab-separated), one line per sequence
+ *
+ * IDs are reserved in blocks. Before the first ID of a block is issued, the end of the block
+ * is written to the sequence file and synced; IDs inside the block are then issued from
+ * memory with a single atomic increment and no locking. After a restart every sequence
+ * resumes after its last reserved block, so the unused rest of a block is skipped rather
+ * than issued twice. IDs are unique and increase over time, but may have gaps.
+ *
+ *   SequenceAllocator.Sequence stockIds = SequenceAllocator.getInstance()
+ *           .sequence(SequenceAllocator.STOCK, stockRepo.findLastStockID() + 1);
+ *   int id = (int) stockIds.next();
+ */
+public class SequenceAllocator {
+    private static final Logger LOGGER = Logger.getLogger(SequenceAllocator.class.getName());
+    private static final String SEQUENCE_FILE_PATH = "sequences.txt";
+    // IDs reserved per file write; can be overridden with -Dsequence.blockSize at startup
+    private static final int DEFAULT_BLOCK_SIZE = Integer.getInteger("sequence.blockSize", 100);
+
+    // Sequence names
+    public static final String ORDER = "order";
+    public static final String STOCK = "stock";
+    public static final String MEMBER = "member";
+
+    private static SequenceAllocator instance;
+
+    private final String filePath;
+    private final String tempFilePath;
+    private final int blockSize;
+    private final Map<String, Sequence> sequences = new TreeMap<>();
+    // Reserved block ends read from the file, by sequence name
+    private final Map<String, Long> persisted = new TreeMap<>();
+
+    /**
+     * One named sequence. next() is safe to call from any thread.
+     */
+    public final class Sequence {
+        private final String name;
+        private final AtomicLong counter;
+        // Every ID below this has been reserved in the file; written only under the allocator's lock
+        private volatile long reservedUpTo;
+
+        private Sequence(String name, long first) {
+            this.name = name;
+            this.counter = new AtomicLong(first);
+            this.reservedUpTo = first;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the next ID. Only the call that runs past the reserved block takes a lock,
+         * to reserve the next block on disk before its ID is handed out.
+         * @throws IllegalStateException if the block could not be reserved on disk
+         */
+        public long next() {
+            long id = counter.getAndIncrement();
+            if (id < reservedUpTo) {
+                return id;
+            }
+            reserveThrough(this, id);
+            return id;
+        }
+
+        // The ID the next call to next() is expected to return
+        public long peek() {
+            return counter.get();
+        }
+    }
+
+    public SequenceAllocator(String filePath) {
+        this(filePath, DEFAULT_BLOCK_SIZE);
+    }
+
+    public SequenceAllocator(String filePath, int blockSize) {
+        this.filePath = filePath;
+        this.tempFilePath = filePath + ".tmp";
+        this.blockSize = Math.max(1, blockSize);
+        load();
+    }
+
+    // The allocator shared by the whole program, backed by sequences.txt
+    public static synchronized SequenceAllocator getInstance() {
+        if (instance == null) {
+            instance = new SequenceAllocator(SEQUENCE_FILE_PATH);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the named sequence, creating it on first use. The sequence never issues an ID
+     * below floor, so IDs that already exist in the data files (pass the highest one plus
+     * one) are never handed out again, even if the sequence file is new or was lost.
+     */
+    public synchronized Sequence sequence(String name, long floor) {
+        Sequence sequence = sequences.get(name);
+        if (sequence == null) {
+            sequence = new Sequence(name, Math.max(floor, persisted.getOrDefault(name, floor)));
+            sequences.put(name, sequence);
+        } else if (sequence.peek() < floor) {
+            // Called again with a higher floor: skip ahead, reserving from there on the next call
+            long current;
+            while ((current = sequence.counter.get()) < floor) {
+                if (sequence.counter.compareAndSet(current, floor)) {
+                    break;
+                }
+            }
+        }
+        return sequence;
+    }
+
+    // Reserves blocks until id is covered, writing the new end to disk first
+    private synchronized void reserveThrough(Sequence sequence, long id) {
+        if (id < sequence.reservedUpTo) {
+            return; // another thread reserved it meanwhile
+        }
+        long newEnd = Math.max(sequence.reservedUpTo, id + 1) + blockSize - 1;
+        persisted.put(sequence.name, newEnd);
+        if (!save()) {
+            throw new IllegalStateException("Unable to reserve IDs for sequence " + sequence.name);
+        }
+        sequence.reservedUpTo = newEnd;
+    }
+
+    private void load() {
+        if (!Files.exists(Paths.get(filePath))) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            IoStats.recordOpen(filePath);
+            FieldTokenizer fields = new FieldTokenizer();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (fields.reset(line).fieldCount() < 2) {
+                    continue;
+                }
+                try {
+                    persisted.put(fields.getString(0), fields.getLong(1));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Skipping malformed sequence line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading sequence file", e);
+        }
+    }
+
+    // Writes every sequence to a temporary file, syncs it and moves it over the old one
+    private boolean save() {
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, Long> entry : persisted.entrySet()) {
+            content.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        }
+
+        Path temp = Paths.get(tempFilePath);
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            IoStats.recordOpen(tempFilePath);
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error writing sequence file", e);
+            return false;
+        }
+
+        try {
+            Files.move(temp, Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error replacing sequence file", e);
+            return false;
+        }
+    }
+}
@@ -1,26 +1,60 @@
 package assignment.repo;
 
 import assignment.model.Staff;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import assignment.util.FieldTokenizer;
+import assignment.util.LatencyHistogram;
+import assignment.util.Metrics;
+import assignment.util.PasswordHasher;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Repository responsible for all file I/O for staff data (staff.txt).
+ * Repository responsible for all file I/O for staff data (staff.txt); the flat-file
+ * StaffStore (see Repositories).
+ *
+ * Staff records are parsed once and kept in memory, shared by every StaffRepository instance:
+ * indexed by staff ID and by IC (so a login is a single hash lookup), and by name trigrams
+ * for findByName. appendStaff, updateStaff, deleteById and deleteByIc update the cache in
+ * place; before each read the file's modification time and length are compared with those
+ * seen last, so edits made outside this class are picked up. Callers always receive copies.
+ *
+ * Passwords are written as salted hashes (see PasswordHasher); callers pass plain passwords
+ * and get back staff carrying the stored hash. Records from older files that still hold a
+ * plain password are upgraded on their next successful login (see
+ * StaffStore.findByCredentials), or all at once by migratePasswords().
+ *
+ * The file is a TombstoneFile keyed by staff ID: a delete marks the line as dead in place and
+ * an update appends the new version and marks the old one, instead of copying the file.
  */
-public class StaffRepository {
+public class StaffRepository implements StaffStore {
 
     private static final String STAFF_FILE_PATH = "staff.txt";
+    private static final String TEMP_STAFF_FILE_PATH = "staffTemp.txt";
     private static final Logger LOGGER = Logger.getLogger(StaffRepository.class.getName());
+    private static final int NAME_GRAM_LENGTH = 3;
+
+    // Shared staff cache, guarded by CACHE_LOCK
+    private static final Object CACHE_LOCK = new Object();
+    private static final List<Staff> cachedStaff = new ArrayList<>();
+    private static final Map<Integer, Staff> staffById = new HashMap<>();
+    private static final Map<String, Staff> staffByIc = new HashMap<>();
+    // Upper-cased name trigram -> IDs of the staff whose name contains it
+    private static final Map<String, Set<Integer>> staffIdsByNameGram = new HashMap<>();
+    private static long cachedLastModified = -1;
+    private static long cachedLength = -1;
+    private static final TombstoneFile staffFile = new TombstoneFile(STAFF_FILE_PATH, TEMP_STAFF_FILE_PATH,
+            StaffRepository::keyOf);
+    // Reads of staff.txt into the cache, and writes of one staff record (see Metrics)
+    private static final LatencyHistogram LOAD_LATENCY = Metrics.histogram("staff.load");
+    private static final LatencyHistogram WRITE_LATENCY = Metrics.histogram("staff.write");
 
     private void ensureFileExists() {
         File file = new File(STAFF_FILE_PATH);
@@ -37,52 +71,156 @@ public class StaffRepository {
      * Loads all staff records from the file into a list.
      */
     public List<Staff> loadAllStaff() {
-        ensureFileExists();
-        List<Staff> staffList = new ArrayList<>();
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            List<Staff> staffList = new ArrayList<>(cachedStaff.size());
+            for (Staff staff : cachedStaff) {
+                staffList.add(copyOf(staff));
+            }
+            return staffList;
+        }
+    }
 
-        try (Scanner scanner = new Scanner(new File(STAFF_FILE_PATH))) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String[] parts = line.split("\t");
+    // Re-reads the file if it is not the version last read or written by this class
+    private void ensureCacheFresh() {
+        ensureFileExists();
+        File file = new File(STAFF_FILE_PATH);
+        if (file.lastModified() == cachedLastModified && file.length() == cachedLength) {
+            return;
+        }
 
-                if (parts.length >= 6) {
-                    int id = Integer.parseInt(parts[0]); // staff ID
-                    String ic = parts[1];
-                    String name = parts[2];
-                    String password = parts[3];
-                    int age = Integer.parseInt(parts[4]);
-                    double salary = Double.parseDouble(parts[5]);
+        long start = System.nanoTime();
+        clearCache();
+        try {
+            FieldTokenizer fields = new FieldTokenizer();
+            for (String line : staffFile.load()) {
+                fields.reset(line);
+
+                if (fields.fieldCount() >= 6) {
+                    int id = fields.getInt(0); // staff ID
+                    String ic = fields.getString(1);
+                    String name = fields.getString(2);
+                    String password = fields.getString(3);
+                    int age = fields.getInt(4);
+                    double salary = fields.getDouble(5);
 
                     Staff staff = new Staff(name, ic, age, salary, password);
                     staff.setId(id);
-                    staffList.add(staff);
+                    addToCache(staff);
                 }
             }
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Error reading staff file", e);
         } catch (NumberFormatException e) {
             LOGGER.log(Level.SEVERE, "Error parsing staff data", e);
         }
+        recordFileState();
+        LOAD_LATENCY.recordSince(start);
+    }
+
+    // Remembers the file's current state after it was read or written by this class
+    private static void recordFileState() {
+        File file = new File(STAFF_FILE_PATH);
+        cachedLastModified = file.lastModified();
+        cachedLength = file.length();
+    }
+
+    // The staff ID of a line, or null if the line is not a staff record
+    private static Integer keyOf(String line) {
+        FieldTokenizer fields = new FieldTokenizer().reset(line);
+        return fields.fieldCount() >= 6 ? fields.getInt(0) : null;
+    }
+
+    private static void clearCache() {
+        cachedStaff.clear();
+        staffById.clear();
+        staffByIc.clear();
+        staffIdsByNameGram.clear();
+    }
+
+    private static void addToCache(Staff staff) {
+        cachedStaff.add(staff);
+        staffById.put(staff.getId(), staff);
+        staffByIc.put(staff.getIc(), staff);
+        for (String gram : nameGrams(staff.getName())) {
+            staffIdsByNameGram.computeIfAbsent(gram, k -> new LinkedHashSet<>()).add(staff.getId());
+        }
+    }
+
+    private static void removeFromCache(Staff staff) {
+        cachedStaff.remove(staff);
+        staffById.remove(staff.getId());
+        staffByIc.remove(staff.getIc());
+        for (String gram : nameGrams(staff.getName())) {
+            Set<Integer> ids = staffIdsByNameGram.get(gram);
+            if (ids != null) {
+                ids.remove(staff.getId());
+                if (ids.isEmpty()) {
+                    staffIdsByNameGram.remove(gram);
+                }
+            }
+        }
+    }
+
+    // The distinct upper-cased substrings of NAME_GRAM_LENGTH characters in a name
+    private static Set<String> nameGrams(String name) {
+        String upper = name == null ? "" : name.toUpperCase();
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + NAME_GRAM_LENGTH <= upper.length(); i++) {
+            grams.add(upper.substring(i, i + NAME_GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    // Formats a staff record exactly as it is stored, without the line end
+    static String formatStaff(Staff staff) {
+        return staff.getId() + "\t" + staff.getIc() + "\t" + staff.getName() + "\t"
+                + staff.getStfPassword() + "\t" + staff.getStfAge() + "\t" + staff.getStfSalary() + "\t";
+    }
+
+    // A copy of the staff whose password is in stored (hashed) form
+    static Staff withStoredPassword(Staff staff) {
+        Staff stored = copyOf(staff);
+        stored.setStfPassword(PasswordHasher.toStored(staff.getStfPassword()));
+        return stored;
+    }
 
-        return staffList;
+    static Staff copyOf(Staff staff) {
+        Staff copy = new Staff(staff.getName(), staff.getIc(), staff.getStfAge(), staff.getStfSalary(),
+                staff.getStfPassword());
+        copy.setId(staff.getId());
+        return copy;
     }
 
     /**
      * Appends a new staff record to the file.
      */
     public void appendStaff(Staff staff) {
-        ensureFileExists();
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            Staff stored = withStoredPassword(staff);
+            if (writeStaff(stored)) {
+                Staff previous = staffById.get(stored.getId());
+                if (previous != null) {
+                    removeFromCache(previous);
+                }
+                addToCache(stored);
+                recordFileState();
+            }
+        }
+    }
 
-        try (FileWriter writer = new FileWriter(STAFF_FILE_PATH, true)) {
-            writer.write(staff.getId() + "\t");
-            writer.write(staff.getIc() + "\t");
-            writer.write(staff.getName() + "\t");
-            writer.write(staff.getStfPassword() + "\t");
-            writer.write(staff.getStfAge() + "\t");
-            writer.write(staff.getStfSalary() + "\t");
-            writer.write("\n");
+    // Appends the record; a record with the same ID is replaced by the new version
+    private boolean writeStaff(Staff staff) {
+        long start = System.nanoTime();
+        try {
+            staffFile.write(staff.getId(), formatStaff(staff));
+            return true;
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Error writing staff record", e);
+            return false;
+        } finally {
+            WRITE_LATENCY.recordSince(start);
         }
     }
 
@@ -90,96 +228,84 @@ public class StaffRepository {
      * Deletes a staff record by IC, returns true if a record was removed.
      */
     public boolean deleteByIc(String targetIc) {
-        ensureFileExists();
-        File inputFile = new File(STAFF_FILE_PATH);
-        File tempFile = new File("dltStaffTemp.txt");
-
-        boolean found = false;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] staffDetails = line.split("\t");
-                if (staffDetails.length >= 2) {
-                    String staffIC = staffDetails[1];
-                    if (staffIC.equals(targetIc)) {
-                        found = true;
-                        continue; // skip this record
-                    }
-                }
-                writer.write(line + System.lineSeparator());
-            }
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Error deleting staff", e);
-            return false;
-        }
-
-        if (found) {
-            if (!inputFile.delete() || !tempFile.renameTo(inputFile)) {
-                LOGGER.severe("Error finalizing staff deletion.");
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            Staff removed = staffByIc.get(targetIc);
+            boolean deleted = removed != null && deleteFromFile(removed.getId());
+            if (deleted) {
+                removeFromCache(removed);
             }
-        } else {
-            tempFile.delete();
+            afterWrite(deleted);
+            return deleted;
         }
-        return found;
     }
 
     /**
      * Checks whether a staff IC already exists in the file.
      */
     public boolean existsByIc(String targetIc) {
-        ensureFileExists();
-
-        try (BufferedReader br = new BufferedReader(new FileReader(STAFF_FILE_PATH))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("\t");
-                if (parts.length >= 2 && parts[1].equals(targetIc)) {
-                    return true;
-                }
-            }
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Error reading staff file", e);
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            return staffByIc.containsKey(targetIc);
         }
-        return false;
     }
 
     /**
      * Finds a staff member by ID.
      */
     public Staff findById(int staffId) {
-        for (Staff staff : loadAllStaff()) {
-            if (staff.getId() == staffId) {
-                return staff;
-            }
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            Staff staff = staffById.get(staffId);
+            return staff == null ? null : copyOf(staff);
         }
-        return null;
     }
 
     /**
-<<<<<<< HEAD
      * Finds a staff member by IC.
      */
     public Staff findByIc(String ic) {
-        for (Staff staff : loadAllStaff()) {
-            if (staff.getIc().equals(ic)) {
-                return staff;
-            }
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            Staff staff = staffByIc.get(ic);
+            return staff == null ? null : copyOf(staff);
         }
-        return null;
     }
 
     /**
      * Finds staff members by name (case-insensitive partial match).
+     * For searches of three or more characters only the staff sharing the search's rarest
+     * trigram are checked; shorter searches check every cached name.
      */
     public List<Staff> findByName(String name) {
         List<Staff> results = new ArrayList<>();
         String searchName = name.toUpperCase().trim();
-        for (Staff staff : loadAllStaff()) {
-            if (staff.getName().toUpperCase().contains(searchName)) {
-                results.add(staff);
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            if (searchName.length() < NAME_GRAM_LENGTH) {
+                for (Staff staff : cachedStaff) {
+                    if (staff.getName().toUpperCase().contains(searchName)) {
+                        results.add(copyOf(staff));
+                    }
+                }
+                return results;
+            }
+
+            Set<Integer> candidates = null;
+            for (String gram : nameGrams(searchName)) {
+                Set<Integer> ids = staffIdsByNameGram.get(gram);
+                if (ids == null) {
+                    return results;
+                }
+                if (candidates == null || ids.size() < candidates.size()) {
+                    candidates = ids;
+                }
+            }
+            for (Integer id : candidates) {
+                Staff staff = staffById.get(id);
+                if (staff != null && staff.getName().toUpperCase().contains(searchName)) {
+                    results.add(copyOf(staff));
+                }
             }
         }
         return results;
@@ -189,130 +315,93 @@ public class StaffRepository {
      * Updates a staff record. Returns true if updated successfully.
      */
     public boolean updateStaff(Staff updatedStaff) {
-        ensureFileExists();
-        File inputFile = new File(STAFF_FILE_PATH);
-        File tempFile = new File("updateStaffTemp.txt");
-
-        boolean found = false;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] staffDetails = line.split("\t");
-                if (staffDetails.length >= 1) {
-                    try {
-                        int id = Integer.parseInt(staffDetails[0]);
-                        if (id == updatedStaff.getId()) {
-                            // Write updated staff record
-                            writer.write(updatedStaff.getId() + "\t");
-                            writer.write(updatedStaff.getIc() + "\t");
-                            writer.write(updatedStaff.getName() + "\t");
-                            writer.write(updatedStaff.getStfPassword() + "\t");
-                            writer.write(updatedStaff.getStfAge() + "\t");
-                            writer.write(updatedStaff.getStfSalary() + "\t");
-                            writer.write("\n");
-                            found = true;
-                            continue;
-                        }
-                    } catch (NumberFormatException e) {
-                        // Invalid ID format, keep original line
-                    }
-                }
-                writer.write(line + System.lineSeparator());
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            Staff stored = withStoredPassword(updatedStaff);
+            Staff previous = staffById.get(stored.getId());
+            boolean updated = previous != null && writeStaff(stored);
+            if (updated) {
+                removeFromCache(previous);
+                addToCache(stored);
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Error updating staff", e);
-            return false;
-        }
-
-        if (found) {
-            if (!inputFile.delete() || !tempFile.renameTo(inputFile)) {
-                LOGGER.severe("Error finalizing staff update.");
-                return false;
-            }
-        } else {
-            tempFile.delete();
+            afterWrite(updated);
+            return updated;
         }
-        return found;
     }
 
     /**
      * Deletes a staff record by ID, returns true if a record was removed.
      */
     public boolean deleteById(int staffId) {
-        ensureFileExists();
-        File inputFile = new File(STAFF_FILE_PATH);
-        File tempFile = new File("dltStaffTemp.txt");
-
-        boolean found = false;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] staffDetails = line.split("\t");
-                if (staffDetails.length >= 1) {
-                    try {
-                        int id = Integer.parseInt(staffDetails[0]);
-                        if (id == staffId) {
-                            found = true;
-                            continue; // skip this record
-                        }
-                    } catch (NumberFormatException e) {
-                        // Invalid ID format, skip this line
-                    }
-                }
-                writer.write(line + System.lineSeparator());
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            Staff removed = staffById.get(staffId);
+            boolean deleted = removed != null && deleteFromFile(staffId);
+            if (deleted) {
+                removeFromCache(removed);
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Error deleting staff by ID", e);
-            return false;
+            afterWrite(deleted);
+            return deleted;
         }
+    }
 
-        if (found) {
-            if (!inputFile.delete() || !tempFile.renameTo(inputFile)) {
-                LOGGER.severe("Error finalizing staff deletion by ID.");
-            }
+    // After a write the cache matches the file only if it succeeded; otherwise re-read next time
+    private static void afterWrite(boolean succeeded) {
+        if (succeeded) {
+            recordFileState();
         } else {
-            tempFile.delete();
+            cachedLastModified = -1;
+        }
+    }
+
+    // Tombstones the staff member's line in place
+    private boolean deleteFromFile(int staffId) {
+        try {
+            return staffFile.delete(staffId);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error deleting staff", e);
+            return false;
         }
-        return found;
     }
 
     /**
-=======
->>>>>>> 93b2678c1e7167896ea46aa3955f0958e6d6ea66
-     * Finds a staff by IC and password (for login).
+     * Hashes every password still stored as plain text, rewriting the file once.
+     * Returns the number of passwords that were hashed.
      */
-    public Staff findByCredentials(String stfIc, String stfPassword) {
-        ensureFileExists();
-
-        try (Scanner sc = new Scanner(new File(STAFF_FILE_PATH))) {
-            while (sc.hasNextLine()) {
-                String stfLine = sc.nextLine();
-                String[] stfDtls = stfLine.split("\t");
-                if (stfDtls.length >= 4) {
-                    String staffIC = stfDtls[1];
-                    String staffPassword = stfDtls[3];
-
-                    if (stfIc.equals(staffIC) && stfPassword.equals(staffPassword)) {
-                        int id = Integer.parseInt(stfDtls[0]);
-                        String name = stfDtls[2];
-                        int age = Integer.parseInt(stfDtls[4]);
-                        double salary = Double.parseDouble(stfDtls[5]);
-                        Staff staff = new Staff(name, staffIC, age, salary, staffPassword);
-                        staff.setId(id);
-                        return staff;
-                    }
+    public int migratePasswords() {
+        synchronized (CACHE_LOCK) {
+            ensureCacheFresh();
+            List<Staff> migrated = new ArrayList<>(cachedStaff.size());
+            int count = 0;
+            for (Staff staff : cachedStaff) {
+                if (!PasswordHasher.isHashed(staff.getStfPassword())) {
+                    count++;
                 }
+                migrated.add(withStoredPassword(staff));
+            }
+            if (count == 0) {
+                return 0;
+            }
+
+            List<String> lines = new ArrayList<>(migrated.size());
+            for (Staff staff : migrated) {
+                lines.add(formatStaff(staff));
+            }
+            try {
+                staffFile.replaceAll(lines);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error migrating staff passwords", e);
+                afterWrite(false);
+                return 0;
+            }
+
+            clearCache();
+            for (Staff staff : migrated) {
+                addToCache(staff);
             }
-        } catch (FileNotFoundException | NumberFormatException e) {
-            LOGGER.log(Level.SEVERE, "Error reading staff credentials", e);
+            afterWrite(true);
+            return count;
         }
-        return null;
     }
 }
 
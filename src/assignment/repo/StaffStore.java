@@ -0,0 +1,78 @@
+package assignment.repo;
+
+import assignment.model.Staff;
+import assignment.util.PasswordHasher;
+import java.util.List;
+
+/**
+ * Storage for staff data. StaffRepository keeps staff in staff.txt and EmbeddedStaffStore
+ * keeps them in the embedded database; Repositories.staff() returns the one selected by
+ * StoreConfig. Callers always receive copies.
+ *
+ * Passwords are stored as salted hashes (see PasswordHasher); callers pass plain passwords
+ * and get back staff carrying the stored hash.
+ */
+public interface StaffStore {
+
+    List<Staff> loadAllStaff();
+
+    Staff findById(int staffId);
+
+    Staff findByIc(String ic);
+
+    /**
+     * Finds staff members by name (case-insensitive partial match).
+     */
+    List<Staff> findByName(String name);
+
+    boolean existsByIc(String ic);
+
+    void appendStaff(Staff staff);
+
+    /**
+     * Updates a staff record. Returns true if updated successfully.
+     */
+    boolean updateStaff(Staff updatedStaff);
+
+    /**
+     * Deletes a staff record by ID, returns true if a record was removed.
+     */
+    boolean deleteById(int staffId);
+
+    /**
+     * Deletes a staff record by IC, returns true if a record was removed.
+     */
+    boolean deleteByIc(String ic);
+
+    /**
+     * Hashes every password still stored as plain text.
+     * Returns the number of passwords that were hashed.
+     */
+    int migratePasswords();
+
+    /**
+     * Finds a staff by IC and password (for login).
+     * A password stored as plain text or with a weaker hash is re-hashed with the current
+     * settings once it has been verified. An unknown IC costs as much as a wrong password.
+     */
+    default Staff findByCredentials(String stfIc, String stfPassword) {
+        Staff staff = findByIc(stfIc);
+        if (staff == null) {
+            PasswordHasher.verifyNothing(stfPassword);
+            return null;
+        }
+        if (!PasswordHasher.verify(stfPassword, staff.getStfPassword())) {
+            return null;
+        }
+        if (PasswordHasher.needsRehash(staff.getStfPassword())) {
+            // Plain-text or weaker hash from an older file: store it with the current settings
+            Staff upgraded = new Staff(staff.getName(), staff.getIc(), staff.getStfAge(), staff.getStfSalary(),
+                    PasswordHasher.hash(stfPassword));
+            upgraded.setId(staff.getId());
+            if (updateStaff(upgraded)) {
+                staff = upgraded;
+            }
+        }
+        return staff;
+    }
+}
@@ -0,0 +1,353 @@
+package assignment.repo;
+
+import assignment.util.FieldTokenizer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of stock quantity movements (stock.journal).
+ * Format: seq, stockId, delta, reason, timestamp [, checkoutId] (tab-separated)
+ *
+ * The deductions of a sale and any units given back when its payment fails carry the
+ * checkout's order ID, so after a crash the sales that never reached Transaction.txt can
+ * be found and reversed (see StockRepository.getUnsettledSales).
+ * Every quantity change is appended as one small record, so a change costs a single
+ * append instead of a rewrite of stock.txt. When the stock snapshot is compacted the
+ * current journal is rotated into a segment, and once the snapshot is safely on disk
+ * the segment is moved into the audit log (stock_audit.txt).
+ * A crash in the middle of an append can leave a torn record with no newline at the end of
+ * the file. Readers ignore it, and it is cut off before the journal is appended to again, so
+ * a new record never runs on from it.
+ */
+public class StockJournal {
+    private static final Logger LOGGER = Logger.getLogger(StockJournal.class.getName());
+
+    // Carts only reserve stock, so the journal sees a sale once it is paid for. Older audit
+    // records also carry CART_ADD, CART_REMOVE and CART_REDUCE from when carts deducted directly.
+    public static final String REASON_SALE = "SALE";
+    public static final String REASON_PAYMENT_ROLLBACK = "PAYMENT_ROLLBACK";
+
+    private final File journalFile;
+    private final File auditFile;
+    private FileChannel channel;
+    private long lastSeq = 0;
+    private int entriesSinceRotate = 0;
+
+    /**
+     * Represents one journal record.
+     */
+    public static class Entry {
+        private final long seq;
+        private final int stockId;
+        private final int delta;
+        private final String reason;
+        private final long timestamp;
+        private final long checkoutId;
+
+        public Entry(long seq, int stockId, int delta, String reason, long timestamp) {
+            this(seq, stockId, delta, reason, timestamp, 0);
+        }
+
+        public Entry(long seq, int stockId, int delta, String reason, long timestamp, long checkoutId) {
+            this.seq = seq;
+            this.stockId = stockId;
+            this.delta = delta;
+            this.reason = reason;
+            this.timestamp = timestamp;
+            this.checkoutId = checkoutId;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public int getStockId() {
+            return stockId;
+        }
+
+        public int getDelta() {
+            return delta;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        // The checkout the movement belongs to, or 0 if it is not part of a sale
+        public long getCheckoutId() {
+            return checkoutId;
+        }
+
+        public String toFileString() {
+            String line = seq + "\t" + stockId + "\t" + delta + "\t" + reason + "\t" + timestamp;
+            return checkoutId == 0 ? line : line + "\t" + checkoutId;
+        }
+    }
+
+    public StockJournal(String journalPath, String auditPath) {
+        this.journalFile = new File(journalPath);
+        this.auditFile = new File(auditPath);
+    }
+
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    public synchronized void setLastSeq(long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    // Returns the number of records appended since the journal was last rotated
+    public synchronized int getEntriesSinceRotate() {
+        return entriesSinceRotate;
+    }
+
+    /**
+     * Appends a movement record and returns its sequence number.
+     * The write goes to the OS straight away; call sync() to force it to disk.
+     */
+    public synchronized long append(int stockId, int delta, String reason) throws IOException {
+        return appendAll(new int[] {stockId}, new int[] {delta}, reason, 0);
+    }
+
+    /**
+     * Appends one movement record per stock ID, with the matching delta, in a single write
+     * and returns the sequence number of the last. If the write fails none of the records is
+     * kept: the journal is cut back to where it was and the error is thrown.
+     * @param checkoutId The checkout the records belong to, or 0 if they are not part of a sale.
+     */
+    public synchronized long appendAll(int[] stockIds, int[] deltas, String reason, long checkoutId)
+            throws IOException {
+        long timestamp = System.currentTimeMillis();
+        StringBuilder records = new StringBuilder();
+        for (int i = 0; i < stockIds.length; i++) {
+            records.append(new Entry(lastSeq + 1 + i, stockIds[i], deltas[i], reason, timestamp, checkoutId)
+                    .toFileString()).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+        FileChannel out = openChannel();
+        long sizeBefore = out.size();
+        try {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } catch (IOException e) {
+            try {
+                out.truncate(sizeBefore);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+                // Reopening cuts off what was written (see dropTornTail)
+                close();
+            }
+            throw e;
+        }
+        lastSeq += stockIds.length;
+        entriesSinceRotate += stockIds.length;
+        return lastSeq;
+    }
+
+    // Forces every appended record to disk
+    public synchronized void sync() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Closes the current journal and renames it to a segment named after its last
+     * sequence number. Returns the segment, or null if the journal was empty.
+     */
+    public synchronized File rotate() throws IOException {
+        close();
+        entriesSinceRotate = 0;
+        if (!journalFile.exists() || journalFile.length() == 0) {
+            return null;
+        }
+        File segment = new File(journalFile.getPath() + "." + lastSeq);
+        if (!journalFile.renameTo(segment)) {
+            throw new IOException("Unable to rotate stock journal to " + segment.getName());
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the rotated segments that have not been archived yet, oldest first.
+     */
+    public List<File> listSegments() {
+        List<File> segments = new ArrayList<>();
+        File dir = journalFile.getAbsoluteFile().getParentFile();
+        String prefix = journalFile.getName() + ".";
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix));
+        if (files != null) {
+            for (File file : files) {
+                if (segmentSeq(file) >= 0) {
+                    segments.add(file);
+                }
+            }
+        }
+        segments.sort((a, b) -> Long.compare(segmentSeq(a), segmentSeq(b)));
+        return segments;
+    }
+
+    // Returns the last sequence number held by a segment, or -1 if the name is not a segment
+    public long segmentSeq(File segment) {
+        try {
+            return Long.parseLong(segment.getName().substring(journalFile.getName().length() + 1));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Moves a compacted segment into the audit log and deletes it.
+     * A crash between the two steps can leave a segment to be archived again on the next
+     * start; duplicated audit records can be recognised by their sequence number.
+     */
+    public void archive(File segment) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(segment));
+             FileWriter writer = new FileWriter(auditFile, true)) {
+            boolean tornTail = !endsWithNewline(segment);
+            String pending = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (pending != null) {
+                    writer.write(pending + "\n");
+                }
+                pending = line;
+            }
+            // A torn last record was never applied, so it does not belong in the audit log
+            if (pending != null && !tornTail) {
+                writer.write(pending + "\n");
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error archiving stock journal segment " + segment.getName(), e);
+            return;
+        }
+        if (!segment.delete()) {
+            LOGGER.warning("Unable to delete archived stock journal segment " + segment.getName());
+        }
+    }
+
+    /**
+     * Reads every record from a journal file or segment.
+     */
+    public static List<Entry> read(File file) {
+        List<Entry> entries = new ArrayList<>();
+        if (!file.exists()) {
+            return entries;
+        }
+
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            boolean tornTail = !endsWithNewline(file);
+            FieldTokenizer fields = new FieldTokenizer();
+            // Each line is parsed once the next has been read, so a torn last one can be left out
+            String pending = null;
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (pending != null) {
+                    addEntry(entries, fields, pending);
+                }
+                pending = line;
+            }
+            if (pending != null && !tornTail) {
+                addEntry(entries, fields, pending);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading stock journal " + file.getName(), e);
+        }
+        return entries;
+    }
+
+    private static void addEntry(List<Entry> entries, FieldTokenizer fields, String line) {
+        if (fields.reset(line).fieldCount() >= 5) {
+            try {
+                entries.add(new Entry(fields.getLong(0), fields.getInt(1),
+                        fields.getInt(2), fields.getString(3), fields.getLong(4),
+                        fields.fieldCount() >= 6 ? fields.getLong(5) : 0));
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING, "Skipping unreadable stock journal line: " + line, e);
+            }
+        }
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() == 0) {
+                return true;
+            }
+            in.seek(in.length() - 1);
+            return in.read() == '\n';
+        }
+    }
+
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error closing stock journal", e);
+            }
+            channel = null;
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(journalFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            dropTornTail(channel);
+            // Only this object writes the journal, so appending at the end is enough
+            channel.position(channel.size());
+        }
+        return channel;
+    }
+
+    // Cuts the journal back to the end of its last complete record, so the next append starts on a new line
+    private void dropTornTail(FileChannel journalChannel) throws IOException {
+        long end = journalChannel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long complete = end;
+        while (complete > 0) {
+            long from = Math.max(0, complete - buffer.capacity());
+            buffer.clear().limit((int) (complete - from));
+            while (buffer.hasRemaining() && journalChannel.read(buffer, from + buffer.position()) >= 0) {
+                // Keep reading until the chunk is full
+            }
+            int i = buffer.position() - 1;
+            while (i >= 0 && buffer.get(i) != '\n') {
+                i--;
+            }
+            if (i >= 0) {
+                complete = from + i + 1;
+                break;
+            }
+            complete = from;
+        }
+        if (complete < end) {
+            LOGGER.warning("Dropping " + (end - complete) + " bytes of a torn record from " + journalFile.getName());
+            journalChannel.truncate(complete);
+            journalChannel.force(false);
+        }
+    }
+}
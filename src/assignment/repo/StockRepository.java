@@ -1,31 +1,143 @@
 package assignment.repo;
 
+import assignment.model.Reservation;
 import assignment.model.Stock;
+import assignment.util.FieldTokenizer;
+import assignment.util.LatencyHistogram;
+import assignment.util.Metrics;
+import assignment.util.StockConfig;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Shared stock pool for every till in the process.
+ *
+ * Concurrency: open orders are kept in carts (see CartSessionManager); only the stock quantities
+ * are shared. A quantity is changed under the lock of its stripe (one of LOCK_STRIPES
+ * locks chosen by stock ID), so tills selling different products do not wait on each other
+ * and two tills can never both take the last unit of the same product (see reserve()).
+ *
+ * Reservations: carts hold stock with time-limited reservations instead of deducting it.
+ * A reservation lowers the available quantity straight away but changes nothing on disk;
+ * the units leave stock only when the reservation is committed at payment. Reservations
+ * live in memory, so they vanish on a crash, and a background reaper releases the ones
+ * that have not been used within StockConfig.RESERVATION_TTL_MS.
+ * Compaction takes every stripe at once to snapshot a consistent state. Structural changes
+ * (load, add, delete) take STATE_LOCK; lookups go through concurrent maps without locking.
+ */
 public class StockRepository {
     private static final Logger LOGGER = Logger.getLogger(StockRepository.class.getName());
-    private static final String STOCK_FILE_PATH = "stock.txt";
-    // In-memory data structures for fast lookups (Sales logic needs this)
-    private static List<Stock> stocklist = new ArrayList<>();
-    private static List<Stock> cart = new ArrayList<>();
-    private static boolean stockLoaded = false; // Flag to prevent repeated loading
+    private static final String STOCK_FILE_PATH = StockConfig.STOCK_FILE_PATH;
+    // In-memory data structures for fast lookups (Sales logic needs this).
+    // Copy-on-write, so tills can list the stock while a product is added or deleted.
+    private static final List<Stock> stocklist = new CopyOnWriteArrayList<>();
+    // Primary index by stock ID and secondary index by upper-cased name.
+    // Both point at the same Stock objects held in stocklist, so quantity changes made
+    // through a Stock reference are visible through every lookup without re-indexing.
+    private static final Map<Integer, Stock> stockById = new ConcurrentHashMap<>();
+    private static final Map<String, Stock> stockByName = new ConcurrentHashMap<>();
+    private static volatile boolean stockLoaded = false; // Flag to prevent repeated loading
+
+    // Per-SKU locking: quantity changes hold the stripe of their stock ID
+    private static final int LOCK_STRIPES = 64;
+    private static final ReentrantLock[] stockLocks = new ReentrantLock[LOCK_STRIPES];
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stockLocks[i] = new ReentrantLock();
+        }
+    }
+
+    // Write-behind state: IDs of rows changed in memory but not yet written to stock.txt.
+    // STATE_LOCK guards structural changes to stocklist (kept short so the till never waits
+    // on disk); FILE_LOCK serialises every write to stock.txt.
+    private static final Object STATE_LOCK = new Object();
+    private static final Object FILE_LOCK = new Object();
+    private static final Set<Integer> dirtyIds = ConcurrentHashMap.newKeySet();
+    private static volatile ScheduledExecutorService writeBehindExecutor;
+
+    // Journal of quantity movements. stock.txt is a snapshot that includes every journal
+    // record up to snapshotSeq (stored in its "#seq" header line); the stock state is the
+    // snapshot plus the journal records after it.
+    private static final String SNAPSHOT_SEQ_HEADER = "#seq";
+    private static final StockJournal journal =
+            new StockJournal(StockConfig.STOCK_JOURNAL_FILE_PATH, StockConfig.STOCK_AUDIT_FILE_PATH);
+    private static long snapshotSeq = 0;
+    // stock.txt itself: deleting a product tombstones its line in place (see TombstoneFile)
+    private static final TombstoneFile stockFile =
+            new TombstoneFile(STOCK_FILE_PATH, StockConfig.TEMP_UPDATE_FILE_PATH, StockRepository::keyOf);
+
+    // Binary and embedded backends (stock.backend=binary or embedded): the record store is
+    // opened on first load and replaces stock.txt and the journal (see StockStore)
+    private static final boolean RECORD_BACKEND = !StockConfig.BACKEND_TEXT.equals(StockConfig.STOCK_BACKEND);
+    private static StockStore recordStore;
+
+    // Reservations that are still holding units, by reservation ID
+    private static final Map<Long, Reservation> activeReservations = new ConcurrentHashMap<>();
+    private static final AtomicLong nextReservationId = new AtomicLong(1);
+    private static volatile ScheduledExecutorService reservationReaper;
+    // Counters for the reservation hit and expiry rates (see getReservationStats())
+    private static final AtomicLong reservationsMade = new AtomicLong();
+    private static final AtomicLong reservationsRefused = new AtomicLong();
+    private static final AtomicLong reservationsCommitted = new AtomicLong();
+    private static final AtomicLong reservationsReleased = new AtomicLong();
+    private static final AtomicLong reservationsExpired = new AtomicLong();
+
+    // Sales whose stock is deducted but which are not yet recorded in Transaction.txt, by checkout
+    // ID. Compaction leaves the journal alone while any is pending, so that a crash in between
+    // leaves the sale's records behind to be reversed on the next start.
+    private static final Set<Long> pendingSales = ConcurrentHashMap.newKeySet();
+    // Sales left pending by the last run, found in the journal at load: checkout ID to the
+    // net quantity each stock item lost to it (see getUnsettledSales())
+    private static final Map<Long, Map<Integer, Integer>> unsettledSales = new ConcurrentHashMap<>();
+
+    // Loads that read the file or record store, and compactions that wrote something (see Metrics)
+    private static final LatencyHistogram LOAD_LATENCY = Metrics.histogram("stock.load");
+    private static final LatencyHistogram SAVE_LATENCY = Metrics.histogram("stock.save");
+    static {
+        Metrics.gauge("stock.items", stocklist::size);
+        Metrics.gauge("stock.dirtyRows", dirtyIds::size);
+        Metrics.gauge("stock.activeReservations", activeReservations::size);
+    }
 
     public List<Stock> getStocklist() {
         return stocklist;
     }
 
-    public List<Stock> getCart() {
-        return cart;
+    // Returns the stock item with the given ID, or null if it does not exist
+    public Stock findById(int stockId) {
+        loadStockFromFile();
+        return stockById.get(stockId);
+    }
+
+    // Returns the stock item with the given name (case-insensitive), or null if it does not exist
+    public Stock findByName(String name) {
+        loadStockFromFile();
+        return stockByName.get(name.toUpperCase());
+    }
+
+    private void index(Stock stock) {
+        stockById.put(stock.getStockID(), stock);
+        stockByName.put(stock.getStockName(), stock);
     }
 
-    public void clearCart() {
-        cart.clear();
+    private void unindex(Stock stock) {
+        stockById.remove(stock.getStockID());
+        stockByName.remove(stock.getStockName());
     }
 
     // Loads stock data from the file into the in-memory stocklist
@@ -35,19 +147,52 @@ public class StockRepository {
             return stocklist;
         }
 
-        stocklist.clear();
-        try (BufferedReader br = new BufferedReader(new FileReader(STOCK_FILE_PATH))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("\t");
-                if (parts.length >= 4) {
-                    int stockId = Integer.parseInt(parts[0]);
-                    String stockName = parts[1];
-                    int stockQty = Integer.parseInt(parts[2]);
-                    double stockPrice = Double.parseDouble(parts[3]);
-                    stocklist.add(new Stock(stockId, stockName, stockQty, stockPrice));
+        long start = System.nanoTime();
+        try {
+            if (RECORD_BACKEND) {
+                return loadStockFromRecordStore();
+            }
+            synchronized (FILE_LOCK) {
+                // Another till may have finished loading while this one waited
+                if (!stockLoaded) {
+                    loadStockFromTextFile();
+                }
+            }
+            return stocklist;
+        } finally {
+            LOAD_LATENCY.recordSince(start);
+        }
+    }
+
+    private void loadStockFromTextFile() {
+        List<Stock> loaded = new ArrayList<>();
+        long loadedSeq = 0;
+        try {
+            FieldTokenizer fields = new FieldTokenizer();
+            for (String line : stockFile.load()) {
+                fields.reset(line);
+                if (fields.fieldCount() >= 2 && fields.fieldEquals(0, SNAPSHOT_SEQ_HEADER)) {
+                    loadedSeq = fields.getLong(1);
+                } else if (fields.fieldCount() >= 4) {
+                    int stockId = fields.getInt(0);
+                    String stockName = fields.getString(1);
+                    int stockQty = fields.getInt(2);
+                    long stockPriceCents = fields.getCents(3);
+                    loaded.add(new Stock(stockId, stockName, stockQty, stockPriceCents));
+                }
+            }
+            synchronized (STATE_LOCK) {
+                stocklist.clear();
+                stockById.clear();
+                stockByName.clear();
+                for (Stock stock : loaded) {
+                    stocklist.add(stock);
+                    index(stock);
                 }
+                snapshotSeq = loadedSeq;
             }
+            replayJournal();
+            // Only now can other tills see the stock, with the journal applied
             stockLoaded = true;
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Error reading stock file. Creating new file if necessary", e);
@@ -60,19 +205,185 @@ public class StockRepository {
         } catch (NumberFormatException e) {
             LOGGER.log(Level.SEVERE, "Error parsing stock data in file", e);
         }
+    }
+
+    // The stock ID of a line of stock.txt, or null for the header and anything else that is not a product
+    private static Integer keyOf(String line) {
+        FieldTokenizer fields = new FieldTokenizer().reset(line);
+        if (fields.fieldCount() < 4 || fields.fieldEquals(0, SNAPSHOT_SEQ_HEADER)) {
+            return null;
+        }
+        return fields.getInt(0);
+    }
+
+    private List<Stock> loadStockFromRecordStore() {
+        synchronized (FILE_LOCK) {
+            if (stockLoaded) {
+                return stocklist;
+            }
+            try {
+                if (recordStore == null) {
+                    recordStore = openRecordStore();
+                }
+                List<Stock> loaded = recordStore.loadAll();
+                synchronized (STATE_LOCK) {
+                    stocklist.clear();
+                    stockById.clear();
+                    stockByName.clear();
+                    for (Stock stock : loaded) {
+                        stocklist.add(stock);
+                        index(stock);
+                    }
+                    // The store already holds every quantity; the journal only keeps the sales
+                    List<File> sources = new ArrayList<>(journal.listSegments());
+                    sources.add(journal.getJournalFile());
+                    journal.setLastSeq(findUnsettledSales(sources));
+                    stockLoaded = true;
+                }
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.log(Level.SEVERE, "Error opening " + StockConfig.STOCK_BACKEND + " stock store", e);
+            }
+        }
         return stocklist;
     }
 
+    private static StockStore openRecordStore() throws IOException {
+        if (StockConfig.BACKEND_EMBEDDED.equals(StockConfig.STOCK_BACKEND)) {
+            return new EmbeddedStockStore(EmbeddedStore.getInstance());
+        }
+        return new BinaryStockStore(StockConfig.STOCK_BINARY_FILE_PATH, StockConfig.STOCK_NAMES_FILE_PATH);
+    }
+
+    /**
+     * Applies the journal records newer than the snapshot to the loaded stock.
+     * Rotated segments are replayed oldest first, then the live journal. If anything was
+     * replayed the result is compacted straight away so the next start begins clean.
+     */
+    private void replayJournal() {
+        List<File> sources = new ArrayList<>();
+        for (File segment : journal.listSegments()) {
+            if (journal.segmentSeq(segment) <= snapshotSeq) {
+                // Already folded into the snapshot but not archived before the last exit
+                journal.archive(segment);
+            } else {
+                sources.add(segment);
+            }
+        }
+        sources.add(journal.getJournalFile());
+
+        long lastSeq = snapshotSeq;
+        int replayed = 0;
+        synchronized (STATE_LOCK) {
+            for (File source : sources) {
+                for (StockJournal.Entry entry : StockJournal.read(source)) {
+                    if (entry.getSeq() <= snapshotSeq) {
+                        continue;
+                    }
+                    Stock stock = stockById.get(entry.getStockId());
+                    if (stock != null) {
+                        stock.setQty(stock.getQty() + entry.getDelta());
+                        dirtyIds.add(stock.getStockID());
+                    }
+                    lastSeq = Math.max(lastSeq, entry.getSeq());
+                    replayed++;
+                }
+            }
+            journal.setLastSeq(lastSeq);
+            findUnsettledSales(sources);
+        }
+
+        if (replayed > 0) {
+            LOGGER.info("Replayed " + replayed + " stock journal records");
+            compact();
+        }
+    }
+
+    /**
+     * Collects the sales in the journal that the last run left pending and keeps them pending,
+     * so their records survive compaction until getUnsettledSales() has been dealt with.
+     * A sale whose units were all given back is already undone and is not collected.
+     * Must be called while holding STATE_LOCK. Returns the highest sequence number read.
+     */
+    private static long findUnsettledSales(List<File> sources) {
+        long lastSeq = 0;
+        unsettledSales.clear();
+        for (File source : sources) {
+            for (StockJournal.Entry entry : StockJournal.read(source)) {
+                lastSeq = Math.max(lastSeq, entry.getSeq());
+                if (entry.getCheckoutId() != 0) {
+                    unsettledSales.computeIfAbsent(entry.getCheckoutId(), id -> new HashMap<>())
+                            .merge(entry.getStockId(), entry.getDelta(), Integer::sum);
+                }
+            }
+        }
+        unsettledSales.values().removeIf(deltas -> deltas.values().stream().allMatch(delta -> delta == 0));
+        pendingSales.addAll(unsettledSales.keySet());
+        return lastSeq;
+    }
+
+    /**
+     * The checkout IDs of the sales that had their stock deducted in the last run but may not
+     * have been recorded before it stopped. Each must be passed to resolveUnsettledSale() once
+     * Transaction.txt has been checked for it; until then the stock journal is not compacted.
+     */
+    public Set<Long> getUnsettledSales() {
+        loadStockFromFile();
+        return new TreeSet<>(unsettledSales.keySet());
+    }
+
+    /**
+     * Settles a sale returned by getUnsettledSales(). A recorded sale keeps its deductions;
+     * one that was never recorded has its units given back, journaled against the same
+     * checkout ID. If that fails the sale stays unsettled and is tried again on the next start.
+     */
+    public void resolveUnsettledSale(long checkoutId, boolean recorded) {
+        Map<Integer, Integer> deducted = unsettledSales.get(checkoutId);
+        if (deducted == null) {
+            return;
+        }
+        if (!recorded) {
+            for (Map.Entry<Integer, Integer> line : deducted.entrySet()) {
+                Stock stock = findById(line.getKey());
+                if (stock == null || line.getValue() == 0) {
+                    continue;
+                }
+                try {
+                    adjustQuantity(stock, -line.getValue(), StockJournal.REASON_PAYMENT_ROLLBACK, checkoutId);
+                    line.setValue(0);
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "ERROR giving back the stock of unrecorded sale " + checkoutId, e);
+                    return;
+                }
+            }
+            LOGGER.warning("Gave back the stock of sale " + checkoutId + ", which was never recorded");
+        }
+        unsettledSales.remove(checkoutId);
+        endSale(checkoutId);
+    }
+
+    /**
+     * Marks a sale started by commitReservations() with a checkout ID as settled: it has been
+     * recorded, or its units have been given back. Once no sale is pending the journal can be
+     * compacted again.
+     */
+    public void endSale(long checkoutId) {
+        pendingSales.remove(checkoutId);
+    }
+
     // Finds the largest Stock ID currently in the file
     public int findLastStockID() {
         int lastStockID = 10000;
+        if (RECORD_BACKEND) {
+            loadStockFromFile();
+            return recordStore == null ? lastStockID : recordStore.maxStockId(lastStockID);
+        }
         try (BufferedReader reader = new BufferedReader(new FileReader(STOCK_FILE_PATH))) {
+            FieldTokenizer fields = new FieldTokenizer();
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\t");
-                if (parts.length > 0) {
+                if (fields.reset(line).fieldCount() > 0) {
                     try {
-                        int stockID = Integer.parseInt(parts[0]);
+                        int stockID = fields.getInt(0);
                         if (stockID > lastStockID) {
                             lastStockID = stockID;
                         }
@@ -87,100 +398,721 @@ public class StockRepository {
         return lastStockID;
     }
 
-    // Checks if a product name already exists in the file (reads directly from file for safety)
+    // Checks if a product name already exists, using the in-memory name index
     public boolean checkNameExists(String name) {
-        String upperName = name.toUpperCase();
-        try (Scanner fileScanner = new Scanner(new File(STOCK_FILE_PATH))) {
-            while (fileScanner.hasNextLine()) {
-                String stockLine = fileScanner.nextLine();
-                String[] stockDetails = stockLine.split("\t");
-                if (stockDetails.length >= 2) {
-                    String searchStockName = stockDetails[1];
-                    if (searchStockName.equals(upperName)) {
-                        return true;
+        return findByName(name) != null;
+    }
+
+    // Writes a new stock item to the file
+    public void addStockToFile(Stock newStock) throws IOException {
+        if (RECORD_BACKEND) {
+            loadStockFromFile();
+            synchronized (FILE_LOCK) {
+                if (recordStore == null) {
+                    throw new IOException("The " + StockConfig.STOCK_BACKEND + " stock store is not open");
+                }
+                recordStore.append(newStock);
+                recordStore.force();
+                synchronized (STATE_LOCK) {
+                    stocklist.add(newStock);
+                    index(newStock);
+                }
+            }
+            return;
+        }
+
+        synchronized (FILE_LOCK) {
+            stockFile.write(newStock.getStockID(), newStock.toFileString());
+
+            // Update the in-memory list and indexes as well
+            if (stockLoaded) {
+                synchronized (STATE_LOCK) {
+                    stocklist.add(newStock);
+                    index(newStock);
+                }
+            } else {
+                loadStockFromFile();
+            }
+        }
+    }
+
+    // Deletes a product by ID by tombstoning its line in stock.txt
+    public void deleteProductFromFile(int productIDToDelete) {
+        if (RECORD_BACKEND) {
+            loadStockFromFile();
+            synchronized (FILE_LOCK) {
+                if (recordStore != null && recordStore.delete(productIDToDelete)) {
+                    recordStore.force();
+                }
+                synchronized (STATE_LOCK) {
+                    Stock removed = stockById.get(productIDToDelete);
+                    if (removed != null) {
+                        stocklist.remove(removed);
+                        unindex(removed);
                     }
+                    dirtyIds.remove(productIDToDelete);
                 }
             }
-        } catch (FileNotFoundException e) {
+            return;
+        }
+
+        // The line offsets are indexed when stock.txt is loaded
+        loadStockFromFile();
+        synchronized (FILE_LOCK) {
+            try {
+                stockFile.delete(productIDToDelete);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "ERROR during file deletion process", e);
+            }
+
+            // Update the in-memory list and indexes
+            synchronized (STATE_LOCK) {
+                Stock removed = stockById.get(productIDToDelete);
+                if (removed != null) {
+                    stocklist.remove(removed);
+                    unindex(removed);
+                }
+                dirtyIds.remove(productIDToDelete);
+            }
+        }
+    }
+
+    // Saves the current state of the in-memory stocklist back to the file
+    public void saveStockToFile() {
+        compact();
+    }
+
+    /**
+     * Holds quantity units of a stock item for a cart, atomically with respect to every
+     * other till. Nothing is deducted or written; the units are only unavailable to others
+     * until the reservation is committed, released or expires.
+     * @return The reservation, or null (holding nothing) if fewer units are available.
+     */
+    public Reservation reserve(Stock stock, int quantity) {
+        if (quantity <= 0) {
+            return null;
+        }
+        Reservation reservation;
+        ReentrantLock lock = lockFor(stock.getStockID());
+        lock.lock();
+        try {
+            if (stock.getAvailableQty() < quantity) {
+                reservationsRefused.incrementAndGet();
+                return null;
+            }
+            stock.setReservedQty(stock.getReservedQty() + quantity);
+            reservation = new Reservation(nextReservationId.getAndIncrement(), stock.getStockID(), quantity,
+                    System.currentTimeMillis() + StockConfig.RESERVATION_TTL_MS);
+            activeReservations.put(reservation.getId(), reservation);
+        } finally {
+            lock.unlock();
+        }
+        reservationsMade.incrementAndGet();
+        startReservationReaper();
+        return reservation;
+    }
+
+    /**
+     * Changes the number of units a reservation holds and restarts its time limit.
+     * A reservation that has lapsed (expired, released or rolled back) is taken out again
+     * for the new quantity if enough units are available. A quantity of 0 releases it.
+     * @return false, changing nothing, if there are not enough units available.
+     */
+    public boolean resizeReservation(Reservation reservation, int quantity) {
+        if (quantity <= 0) {
+            releaseReservation(reservation);
+            return true;
+        }
+        Stock stock = stockById.get(reservation.getStockID());
+        if (stock == null) {
             return false;
         }
-        return false;
+        boolean renewed;
+        ReentrantLock lock = lockFor(stock.getStockID());
+        lock.lock();
+        try {
+            renewed = !reservation.isActive();
+            int extra = renewed ? quantity : quantity - reservation.getQty();
+            if (extra > 0 && stock.getAvailableQty() < extra) {
+                reservationsRefused.incrementAndGet();
+                return false;
+            }
+            stock.setReservedQty(stock.getReservedQty() + extra);
+            reservation.setQty(quantity);
+            reservation.setExpiresAt(System.currentTimeMillis() + StockConfig.RESERVATION_TTL_MS);
+            if (renewed) {
+                reservation.setState(Reservation.State.ACTIVE);
+                activeReservations.put(reservation.getId(), reservation);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (renewed) {
+            reservationsMade.incrementAndGet();
+            startReservationReaper();
+        }
+        return true;
     }
 
-    // Writes a new stock item to the file
-    public void addStockToFile(Stock newStock) throws IOException {
-        File stockFile = new File(STOCK_FILE_PATH);
-        if (!stockFile.exists()) {
-            stockFile.createNewFile();
+    /**
+     * Gives the units held by a reservation back; its quantity becomes 0, so it takes
+     * nothing if it is committed later. Does nothing if it is no longer active.
+     */
+    public void releaseReservation(Reservation reservation) {
+        if (settle(reservation, Reservation.State.RELEASED, Long.MAX_VALUE)) {
+            reservationsReleased.incrementAndGet();
         }
+    }
 
-        try (FileWriter writer = new FileWriter(STOCK_FILE_PATH, true)) {
-            writer.write(newStock.toFileString() + "\n");
+    /**
+     * Restarts the time limit of every active reservation, e.g. when a cart is used.
+     * Done without locking: a reservation the reaper expires at the same moment stays
+     * expired and is taken out again when it is resized or committed.
+     */
+    public void extendReservations(Collection<Reservation> reservations) {
+        long expiresAt = System.currentTimeMillis() + StockConfig.RESERVATION_TTL_MS;
+        for (Reservation reservation : reservations) {
+            if (reservation.isActive()) {
+                reservation.setExpiresAt(expiresAt);
+            }
         }
+    }
 
-        // Update the in-memory list as well
-        // We reload the stock list to ensure ID consistency after file write
-        loadStockFromFile();
+    /**
+     * Turns a cart's reservations into sales: the held units are deducted from stock and
+     * journaled. Reservations that expired, or whose payment was rolled back, are taken out
+     * again if the units are still available; released ones were given back by the cart and
+     * take nothing. Either every reservation is committed or, returning false, none is.
+     * @param reason Why the quantity changed, kept in the journal for auditing.
+     */
+    public boolean commitReservations(Collection<Reservation> reservations, String reason) {
+        return commitReservations(reservations, reason, 0);
     }
 
-    // Deletes a product by ID by rewriting the file
-    public void deleteProductFromFile(int productIDToDelete) {
-        File inputFile = new File(STOCK_FILE_PATH);
-        File tempFile = new File("dltStkTemp.txt");
+    /**
+     * Commits the reservations as above for the sale with the given checkout ID. The deductions
+     * are journaled against the ID with every backend, and the sale stays pending until
+     * endSale() is called once it has been recorded or its units given back.
+     * @param checkoutId The order ID the sale will be recorded under, or 0 if it is not a sale.
+     */
+    public boolean commitReservations(Collection<Reservation> reservations, String reason, long checkoutId) {
+        // Lock the stripes involved in index order, as compaction does, so commits cannot deadlock
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Reservation reservation : reservations) {
+            stripes.add(Math.floorMod(reservation.getStockID(), LOCK_STRIPES));
+        }
+        List<Stock> changed = new ArrayList<>();
+        int committed = 0;
+        for (Integer stripe : stripes) {
+            stockLocks[stripe].lock();
+        }
+        try {
+            // Check every line before changing any, so a failure leaves the stock untouched.
+            // Expired and rolled-back reservations need their units from what is available; active
+            // ones already hold theirs, unless the quantity on hand was lowered below what is
+            // reserved, and released ones take nothing.
+            Map<Integer, Integer> needed = new HashMap<>();
+            for (Reservation reservation : reservations) {
+                if (stockById.get(reservation.getStockID()) == null) {
+                    return false;
+                }
+                needed.merge(reservation.getStockID(), mustRetake(reservation) ? reservation.getQty() : 0, Integer::sum);
+            }
+            for (Map.Entry<Integer, Integer> entry : needed.entrySet()) {
+                Stock stock = stockById.get(entry.getKey());
+                if (stock.getQty() - stock.getReservedQty() < entry.getValue()) {
+                    return false;
+                }
+            }
 
-        try (
-                BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-                BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))
-        ) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split("\t");
-                if (data.length > 0) {
-                    try {
-                        int productID = Integer.parseInt(data[0]);
-                        if (productID == productIDToDelete) {
-                            continue;
-                        }
-                        writer.write(line + System.getProperty("line.separator"));
-                    } catch (NumberFormatException ignored) {
-                        writer.write(line + System.getProperty("line.separator"));
+            // Journal every deduction before changing anything, so a failed append refuses the sale
+            if (!RECORD_BACKEND || checkoutId != 0) {
+                List<Reservation> deducted = new ArrayList<>();
+                for (Reservation reservation : reservations) {
+                    if (reservation.getState() != Reservation.State.RELEASED && reservation.getQty() > 0) {
+                        deducted.add(reservation);
                     }
                 }
+                int[] stockIds = new int[deducted.size()];
+                int[] deltas = new int[deducted.size()];
+                for (int i = 0; i < deducted.size(); i++) {
+                    stockIds[i] = deducted.get(i).getStockID();
+                    deltas[i] = -deducted.get(i).getQty();
+                }
+                if (checkoutId != 0) {
+                    // Before the append, so a compaction cannot fold the records away meanwhile
+                    pendingSales.add(checkoutId);
+                }
+                try {
+                    journal.appendAll(stockIds, deltas, reason, checkoutId);
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "ERROR appending to stock journal, sale refused", e);
+                    pendingSales.remove(checkoutId);
+                    return false;
+                }
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "ERROR during file deletion process", e);
+
+            for (Reservation reservation : reservations) {
+                if (reservation.getState() == Reservation.State.RELEASED) {
+                    continue;
+                }
+                Stock stock = stockById.get(reservation.getStockID());
+                if (reservation.isActive()) {
+                    stock.setReservedQty(stock.getReservedQty() - reservation.getQty());
+                    activeReservations.remove(reservation.getId());
+                }
+                reservation.setState(Reservation.State.COMMITTED);
+                committed++;
+                if (reservation.getQty() > 0) {
+                    setQty(stock, stock.getQty() - reservation.getQty());
+                    changed.add(stock);
+                }
+            }
+        } finally {
+            for (Integer stripe : stripes.descendingSet()) {
+                stockLocks[stripe].unlock();
+            }
+        }
+        for (Stock stock : changed) {
+            markDirty(stock);
         }
+        // Released reservations were skipped; they are already counted as released
+        reservationsCommitted.addAndGet(committed);
+        return true;
+    }
 
-        // Rename the temp file
-        if (inputFile.delete()) {
-            if (!tempFile.renameTo(inputFile)) {
-                LOGGER.severe("Error renaming the temp file.");
+    /**
+     * Releases every reservation whose time limit has passed. The expired reservations are
+     * grouped by stock item so each item's lock is taken once per sweep.
+     * Returns the number of reservations expired.
+     */
+    public int reapExpiredReservations() {
+        long now = System.currentTimeMillis();
+        Map<Integer, List<Reservation>> expiredByStock = new HashMap<>();
+        for (Reservation reservation : activeReservations.values()) {
+            if (reservation.getExpiresAt() <= now) {
+                expiredByStock.computeIfAbsent(reservation.getStockID(), id -> new ArrayList<>()).add(reservation);
             }
         }
 
-        // Update the in-memory list
-        loadStockFromFile();
+        int expired = 0;
+        for (Map.Entry<Integer, List<Reservation>> entry : expiredByStock.entrySet()) {
+            ReentrantLock lock = lockFor(entry.getKey());
+            lock.lock();
+            try {
+                for (Reservation reservation : entry.getValue()) {
+                    // settle() re-checks under the lock: the cart may have used or paid for it meanwhile
+                    if (settle(reservation, Reservation.State.EXPIRED, now)) {
+                        expired++;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        reservationsExpired.addAndGet(expired);
+        return expired;
     }
 
-    // Saves the current state of the in-memory stocklist back to the file
-    public void saveStockToFile() {
-        File inputFile = new File(STOCK_FILE_PATH);
-        File tempFile = new File("stkUpdateTemp.txt");
+    // Number of reservations currently holding units
+    public int getActiveReservationCount() {
+        return activeReservations.size();
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
-            for (Stock stock : stocklist) {
-                writer.write(stock.toFileString() + System.getProperty("line.separator"));
+    public ReservationStats getReservationStats() {
+        return new ReservationStats(reservationsMade.get(), reservationsRefused.get(),
+                reservationsCommitted.get(), reservationsReleased.get(), reservationsExpired.get(),
+                activeReservations.size());
+    }
+
+    // True if the reservation lapsed without being given back, so its units must be taken again
+    private static boolean mustRetake(Reservation reservation) {
+        return reservation.getState() == Reservation.State.EXPIRED
+                || reservation.getState() == Reservation.State.COMMITTED;
+    }
+
+    // Ends an active reservation if it expires no later than the deadline; returns true if it did.
+    // Takes the stock item's stripe lock, which the reaper may already hold (the lock is reentrant).
+    private boolean settle(Reservation reservation, Reservation.State outcome, long deadline) {
+        ReentrantLock lock = lockFor(reservation.getStockID());
+        lock.lock();
+        try {
+            if (!reservation.isActive() || reservation.getExpiresAt() > deadline) {
+                return false;
+            }
+            Stock stock = stockById.get(reservation.getStockID());
+            if (stock != null) {
+                stock.setReservedQty(stock.getReservedQty() - reservation.getQty());
             }
+            reservation.setState(outcome);
+            if (outcome == Reservation.State.RELEASED) {
+                // Given back on purpose, so there is nothing to take again at payment
+                reservation.setQty(0);
+            }
+            activeReservations.remove(reservation.getId());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies a quantity change to a stock item and records it in the journal.
+     * The journal append is the only disk work on this path; the snapshot in stock.txt
+     * catches up later when the background thread compacts the journal.
+     * With the binary backend the new quantity is instead written in place in stock.bin
+     * (a single 4-byte write), and with the embedded backend the row is rewritten in the
+     * database; either way it is forced to disk by the next flush or compaction.
+     * Use reserve() to deduct stock that must not go below zero.
+     * @param delta The quantity to add (negative to deduct).
+     * @param reason Why the quantity changed, kept in the journal for auditing.
+     * @throws IOException if the journal could not be appended to; the quantity is unchanged.
+     */
+    public void adjustQuantity(Stock stock, int delta, String reason) throws IOException {
+        adjustQuantity(stock, delta, reason, 0);
+    }
+
+    /**
+     * Applies a quantity change as above that belongs to the sale with the given checkout ID,
+     * such as units given back when its payment fails. It is journaled against the ID with
+     * every backend so that recovery can tell how much of the sale is still deducted.
+     */
+    public void adjustQuantity(Stock stock, int delta, String reason, long checkoutId) throws IOException {
+        ReentrantLock lock = lockFor(stock.getStockID());
+        lock.lock();
+        try {
+            applyDelta(stock, delta, reason, checkoutId);
+        } finally {
+            lock.unlock();
+        }
+        markDirty(stock);
+    }
+
+    // Must be called while holding the stock item's stripe lock. The journal is appended to
+    // first, so if that fails the quantity is left as it was.
+    private void applyDelta(Stock stock, int delta, String reason, long checkoutId) throws IOException {
+        if (!RECORD_BACKEND || checkoutId != 0) {
+            journal.appendAll(new int[] {stock.getStockID()}, new int[] {delta}, reason, checkoutId);
+        }
+        setQty(stock, stock.getQty() + delta);
+    }
+
+    // Changes the quantity in memory and, with a record backend, in the store; the journal
+    // entry must already be written. Must be called while holding the stripe lock.
+    private void setQty(Stock stock, int qty) {
+        stock.setQty(qty);
+        if (RECORD_BACKEND && recordStore != null) {
+            recordStore.writeQty(stock.getStockID(), qty);
+        }
+    }
+
+    private static ReentrantLock lockFor(int stockId) {
+        return stockLocks[Math.floorMod(stockId, LOCK_STRIPES)];
+    }
+
+    // Takes every stripe, in order, so no quantity can change until unlockAllStripes()
+    private static void lockAllStripes() {
+        for (ReentrantLock lock : stockLocks) {
+            lock.lock();
+        }
+    }
+
+    private static void unlockAllStripes() {
+        for (int i = LOCK_STRIPES - 1; i >= 0; i--) {
+            stockLocks[i].unlock();
+        }
+    }
+
+    /**
+     * Records that a stock row changed in memory. With write-behind enabled the row is only
+     * marked dirty and the journal is compacted into stock.txt later by the background thread,
+     * either on the configured interval or as soon as the number of dirty rows reaches the
+     * configured threshold. With write-behind disabled the snapshot is rewritten immediately.
+     */
+    public void markDirty(Stock stock) {
+        dirtyIds.add(stock.getStockID());
+        if (!StockConfig.WRITE_BEHIND_ENABLED) {
+            compact();
+            return;
+        }
+
+        ScheduledExecutorService executor = startWriteBehind();
+        if (dirtyIds.size() >= StockConfig.WRITE_BEHIND_MAX_DIRTY) {
+            executor.execute(this::compactQuietly);
+        }
+    }
+
+    /**
+     * Makes every stock change so far durable by forcing the journal to disk.
+     * Called before a payment is recorded.
+     */
+    public void flush() {
+        // The journal first: with a record backend it holds the sale records that recovery
+        // needs to undo whatever deductions reach the store
+        try {
+            journal.sync();
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "ERROR saving stock updates to file", e);
+            LOGGER.log(Level.SEVERE, "ERROR syncing stock journal", e);
+        }
+        if (RECORD_BACKEND) {
+            synchronized (FILE_LOCK) {
+                if (recordStore != null) {
+                    recordStore.force();
+                }
+            }
+        }
+    }
+
+    /**
+     * Folds the journal into a fresh snapshot of stock.txt.
+     * The snapshot and the journal rotation are taken together while holding every stripe
+     * lock, so no record is lost or counted twice; the file writing itself happens outside.
+     * With the binary or embedded backend the dirty rows are written to the record store
+     * and it is forced. While a sale is pending (see endSale()) the journal is left as it is.
+     */
+    public void compact() {
+        if (RECORD_BACKEND) {
+            compactRecordStore();
             return;
         }
+        long start = System.nanoTime();
+        synchronized (FILE_LOCK) {
+            List<String> lines;
+            long seq;
+            File segment;
+            lockAllStripes();
+            try {
+                if (!pendingSales.isEmpty()
+                        || (dirtyIds.isEmpty() && journal.getEntriesSinceRotate() == 0)) {
+                    return;
+                }
+                seq = journal.getLastSeq();
+                lines = snapshotLines(seq);
+                try {
+                    segment = journal.rotate();
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "ERROR rotating stock journal", e);
+                    return;
+                }
+                dirtyIds.clear();
+            } finally {
+                unlockAllStripes();
+            }
+            if (writeSnapshot(lines)) {
+                snapshotSeq = seq;
+                if (segment != null) {
+                    journal.archive(segment);
+                }
+            }
+            SAVE_LATENCY.recordSince(start);
+        }
+    }
 
-        // Rename the temp file
-        if (inputFile.delete()) {
-            if (!tempFile.renameTo(inputFile)) {
-                LOGGER.severe("Error renaming the stock update file.");
+    private void compactRecordStore() {
+        long start = System.nanoTime();
+        synchronized (FILE_LOCK) {
+            if (recordStore == null) {
+                return;
             }
+            boolean wrote = !dirtyIds.isEmpty();
+            boolean settled;
+            lockAllStripes();
+            try {
+                for (Integer stockId : dirtyIds) {
+                    Stock stock = stockById.get(stockId);
+                    if (stock != null) {
+                        recordStore.writeRecord(stock);
+                    }
+                }
+                dirtyIds.clear();
+                // The journal only holds sale records here; once none is pending they are done with
+                settled = pendingSales.isEmpty();
+                if (settled) {
+                    journal.rotate();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "ERROR rotating stock journal", e);
+                settled = false;
+            } finally {
+                unlockAllStripes();
+            }
+            recordStore.force();
+            if (settled) {
+                for (File segment : journal.listSegments()) {
+                    journal.archive(segment);
+                }
+            }
+            if (wrote) {
+                SAVE_LATENCY.recordSince(start);
+            }
+        }
+    }
+
+    // Returns the number of rows waiting to be written
+    public int getDirtyCount() {
+        return dirtyIds.size();
+    }
+
+    // Stops the background threads after compacting any remaining changes into stock.txt.
+    // The next call to loadStockFromFile reads the stock again.
+    // Reservations are not written anywhere; the units they held are simply on sale after a restart.
+    public void shutdown() {
+        ScheduledExecutorService executor;
+        ScheduledExecutorService reaper;
+        synchronized (STATE_LOCK) {
+            executor = writeBehindExecutor;
+            writeBehindExecutor = null;
+            reaper = reservationReaper;
+            reservationReaper = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+        compact();
+        journal.close();
+        synchronized (FILE_LOCK) {
+            if (recordStore != null) {
+                recordStore.close();
+                recordStore = null;
+            }
+            // Anything that uses the stock after this reads it again from what was just written
+            stockLoaded = false;
+        }
+    }
+
+    private ScheduledExecutorService startWriteBehind() {
+        ScheduledExecutorService executor = writeBehindExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (STATE_LOCK) {
+            if (writeBehindExecutor == null) {
+                writeBehindExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "stock-write-behind");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                long interval = StockConfig.WRITE_BEHIND_INTERVAL_MS;
+                writeBehindExecutor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+                // Make sure nothing is left in memory when the program exits
+                Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "stock-write-behind-shutdown"));
+            }
+            return writeBehindExecutor;
+        }
+    }
+
+    private void startReservationReaper() {
+        if (reservationReaper != null) {
+            return;
+        }
+        synchronized (STATE_LOCK) {
+            if (reservationReaper == null) {
+                reservationReaper = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "stock-reservation-reaper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                long interval = StockConfig.RESERVATION_REAP_INTERVAL_MS;
+                reservationReaper.scheduleWithFixedDelay(this::reapQuietly, interval, interval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void reapQuietly() {
+        try {
+            reapExpiredReservations();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "ERROR releasing expired stock reservations", e);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "ERROR compacting stock journal in background", e);
+        }
+    }
+
+    // Must be called while holding every stripe lock
+    private List<String> snapshotLines(long seq) {
+        List<String> lines = new ArrayList<>(stocklist.size() + 1);
+        lines.add(SNAPSHOT_SEQ_HEADER + "\t" + seq);
+        for (Stock stock : stocklist) {
+            lines.add(stock.toFileString());
+        }
+        return lines;
+    }
+
+    // Writes the lines to a temp file, syncs it to disk and swaps it in place of stock.txt
+    private boolean writeSnapshot(List<String> lines) {
+        try {
+            stockFile.replaceAll(lines);
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "ERROR saving stock updates to file", e);
+            return false;
+        }
+    }
+
+    /**
+     * Snapshot of the reservation counters since the program started.
+     * The hit rate is the share of settled reservations that ended in a sale; the expiry rate
+     * is the share the reaper had to release because the cart was left alone.
+     */
+    public static class ReservationStats {
+        private final long made;
+        private final long refused;
+        private final long committed;
+        private final long released;
+        private final long expired;
+        private final int active;
+
+        public ReservationStats(long made, long refused, long committed, long released, long expired, int active) {
+            this.made = made;
+            this.refused = refused;
+            this.committed = committed;
+            this.released = released;
+            this.expired = expired;
+            this.active = active;
+        }
+
+        public long getMade() {
+            return made;
+        }
+
+        // Requests turned down because not enough units were available
+        public long getRefused() {
+            return refused;
+        }
+
+        public long getCommitted() {
+            return committed;
+        }
+
+        public long getReleased() {
+            return released;
+        }
+
+        public long getExpired() {
+            return expired;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public double getHitRate() {
+            long settled = committed + released + expired;
+            return settled == 0 ? 0.0 : (double) committed / settled;
+        }
+
+        public double getExpiryRate() {
+            long settled = committed + released + expired;
+            return settled == 0 ? 0.0 : (double) expired / settled;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,49 @@
+package assignment.repo;
+
+import assignment.model.Stock;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Record storage behind StockRepository for the backends that write each product on its own
+ * (see StockConfig.STOCK_BACKEND): BinaryStockStore for "binary" and EmbeddedStockStore for
+ * "embedded". The "text" backend keeps stock.txt with its journal inside StockRepository.
+ * StockRepository calls these under its own locks, so an implementation only has to keep
+ * its own state consistent.
+ */
+public interface StockStore {
+
+    /**
+     * Reads every live record.
+     */
+    List<Stock> loadAll() throws IOException;
+
+    /**
+     * Writes a new quantity. Returns false if the stock ID is not in the store.
+     */
+    boolean writeQty(int stockId, int qty);
+
+    /**
+     * Writes the quantity and price of an existing record.
+     * Returns false if the stock ID is not in the store.
+     */
+    boolean writeRecord(Stock stock);
+
+    /**
+     * Adds a new stock record.
+     */
+    void append(Stock stock) throws IOException;
+
+    /**
+     * Deletes a record. Returns false if the stock ID is not in the store.
+     */
+    boolean delete(int stockId);
+
+    // Returns the largest stock ID in the store, or the given default if it is empty
+    int maxStockId(int defaultId);
+
+    // Forces every write so far to disk
+    void force();
+
+    void close();
+}
@@ -0,0 +1,325 @@
+package assignment.repo;
+
+import assignment.util.IoStats;
+import assignment.util.StoreConfig;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A text file of one record per line whose records can be deleted and updated in place
+ * (members.txt, staff.txt and stock.txt).
+ *
+ * The byte offset and length of every record are indexed by its key whenever the file is
+ * loaded or written. A delete overwrites the record where it lies with a tombstone: the
+ * TOMBSTONE marker byte followed by spaces, a single positional write instead of copying
+ * the whole file. An update appends the new version, syncs it to disk, and only then
+ * tombstones the old one, so a crash in between leaves both and the later one wins on the
+ * next load; a crash can never leave the old version tombstoned without the new one. Each
+ * tombstone is synced before the write returns. A tombstone has only one field, so every
+ * reader of these files already skips it.
+ *
+ * Once tombstones make up StoreConfig.TOMBSTONE_COMPACT_DEAD_RATIO of the file, a
+ * background thread rewrites it with the live lines only. Every write to the file must go
+ * through the same TombstoneFile, or the offsets no longer match; load() again after the
+ * file was changed any other way.
+ *
+ *   TombstoneFile file = new TombstoneFile("members.txt", "dltTemp.txt", line -> ...id...);
+ *   List<String> lines = file.load();
+ *   file.delete(memberId);
+ */
+public class TombstoneFile {
+    public static final byte TOMBSTONE = 0x7F;
+    private static final Logger LOGGER = Logger.getLogger(TombstoneFile.class.getName());
+    // A pointer holds the record's offset in its high bits and its length in the low ones
+    private static final int LENGTH_BITS = 24;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+
+    // One daemon thread compacts every file, so at most one rewrite runs at a time
+    private static volatile ExecutorService compactor;
+
+    private final String filePath;
+    private final String tempFilePath;
+    private final Function<String, Integer> keyOf;
+    // Record key -> offset << LENGTH_BITS | length in bytes, without the line end
+    private final Map<Integer, Long> pointers = new HashMap<>();
+    private long fileLength;
+    private long deadBytes;
+    private boolean compactionQueued;
+
+    /**
+     * @param keyOf Returns the key of the record on a line, or null (or throws) if the line
+     *              is not a record; such lines are kept as they are but cannot be deleted.
+     */
+    public TombstoneFile(String filePath, String tempFilePath, Function<String, Integer> keyOf) {
+        this.filePath = filePath;
+        this.tempFilePath = tempFilePath;
+        this.keyOf = keyOf;
+    }
+
+    /**
+     * Reads the file and indexes every record. Returns the live lines in file order, lines
+     * that are not records included. If a record appears more than once, only its last
+     * version is returned and the earlier ones are tombstoned.
+     */
+    public synchronized List<String> load() throws IOException {
+        pointers.clear();
+        deadBytes = 0;
+        File file = new File(filePath);
+        if (!file.exists()) {
+            fileLength = 0;
+            return new ArrayList<>();
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        IoStats.recordOpen(filePath);
+        fileLength = bytes.length;
+
+        List<String> lines = new ArrayList<>();
+        List<Long> linePointers = new ArrayList<>();
+        List<Long> stale = new ArrayList<>();
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            int nextStart = Math.min(end + 1, bytes.length);
+            int contentEnd = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+            if (contentEnd > start && bytes[start] == TOMBSTONE) {
+                deadBytes += nextStart - start;
+            } else {
+                String line = new String(bytes, start, contentEnd - start, StandardCharsets.UTF_8);
+                Integer key = keyOrNull(line);
+                Long pointer = null;
+                if (key != null) {
+                    pointer = pointer(start, contentEnd - start);
+                    Long previous = pointers.put(key, pointer);
+                    if (previous != null) {
+                        stale.add(previous);
+                    }
+                }
+                lines.add(line);
+                linePointers.add(pointer);
+            }
+            start = nextStart;
+        }
+
+        if (stale.isEmpty()) {
+            return lines;
+        }
+        // An update was cut short before its old version was tombstoned; finish it now
+        List<String> live = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            if (!stale.contains(linePointers.get(i))) {
+                live.add(lines.get(i));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            for (long pointer : stale) {
+                tombstone(channel, pointer);
+            }
+        }
+        return live;
+    }
+
+    public synchronized boolean contains(int key) {
+        return pointers.containsKey(key);
+    }
+
+    /**
+     * Writes a record: the line is appended to the file and synced and, if the record was
+     * already there, its old version is tombstoned and synced afterwards.
+     */
+    public synchronized void write(int key, String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        int length = buffer.remaining() - 1;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            IoStats.recordOpen(filePath);
+            long offset = channel.size();
+            // A file edited by hand may not end with a line end; start a new line first
+            ByteBuffer last = ByteBuffer.allocate(1);
+            if (offset > 0 && channel.read(last, offset - 1) == 1 && last.get(0) != '\n') {
+                writeFully(channel, ByteBuffer.wrap(new byte[] {'\n'}), offset);
+                offset++;
+            }
+            writeFully(channel, buffer, offset);
+            // The new version must be on disk before the old one is tombstoned
+            channel.force(false);
+            fileLength = offset + buffer.limit();
+            Long previous = pointers.put(key, pointer(offset, length));
+            if (previous != null) {
+                tombstone(channel, previous);
+                channel.force(false);
+            }
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Deletes a record by tombstoning it in place and syncing the file.
+     * Returns false if there is no record with the key.
+     */
+    public synchronized boolean delete(int key) throws IOException {
+        Long pointer = pointers.get(key);
+        if (pointer == null) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.WRITE)) {
+            IoStats.recordOpen(filePath);
+            tombstone(channel, pointer);
+            channel.force(false);
+        }
+        pointers.remove(key);
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Replaces the whole file with the given lines. They are written to the temp file, synced
+     * and moved over the file in one step, so a crash leaves either the old file or the new one.
+     */
+    public synchronized void replaceAll(List<String> lines) throws IOException {
+        Map<Integer, Long> written = new HashMap<>();
+        long dead = 0;
+        long offset = 0;
+        File tempFile = new File(tempFilePath);
+        try (FileOutputStream out = new FileOutputStream(tempFile);
+             BufferedOutputStream writer = new BufferedOutputStream(out)) {
+            IoStats.recordOpen(tempFilePath);
+            for (String line : lines) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                Integer key = keyOrNull(line);
+                if (key != null) {
+                    Long previous = written.put(key, pointer(offset, bytes.length));
+                    if (previous != null) {
+                        dead += lengthOf(previous) + 1;
+                    }
+                }
+                writer.write(bytes);
+                writer.write('\n');
+                offset += bytes.length + 1;
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), Paths.get(filePath),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        pointers.clear();
+        pointers.putAll(written);
+        fileLength = offset;
+        deadBytes = dead;
+    }
+
+    /**
+     * Rewrites the file with only its live lines.
+     */
+    public synchronized void compact() throws IOException {
+        compactionQueued = false;
+        long before = new File(filePath).length();
+        replaceAll(load());
+        LOGGER.info("Compacted " + filePath + " from " + before + " to " + fileLength + " bytes");
+    }
+
+    // Share of the file taken up by tombstones and replaced versions
+    public synchronized double getDeadRatio() {
+        return fileLength == 0 ? 0 : (double) deadBytes / fileLength;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    private void compactIfNeeded() {
+        if (compactionQueued || fileLength < StoreConfig.TOMBSTONE_COMPACT_MIN_BYTES
+                || getDeadRatio() < StoreConfig.TOMBSTONE_COMPACT_DEAD_RATIO) {
+            return;
+        }
+        compactionQueued = true;
+        compactor().execute(this::compactQuietly);
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Error compacting " + filePath, e);
+        }
+    }
+
+    private static ExecutorService compactor() {
+        ExecutorService executor = compactor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (TombstoneFile.class) {
+            if (compactor == null) {
+                compactor = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "file-compactor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return compactor;
+        }
+    }
+
+    // Overwrites a record with the marker byte and spaces, leaving its line end in place
+    private void tombstone(FileChannel channel, long pointer) throws IOException {
+        byte[] tombstone = new byte[lengthOf(pointer)];
+        Arrays.fill(tombstone, (byte) ' ');
+        if (tombstone.length > 0) {
+            tombstone[0] = TOMBSTONE;
+        }
+        writeFully(channel, ByteBuffer.wrap(tombstone), offsetOf(pointer));
+        deadBytes += tombstone.length + 1;
+    }
+
+    private Integer keyOrNull(String line) {
+        try {
+            return keyOf.apply(line);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static long pointer(long offset, int length) {
+        if (length > LENGTH_MASK) {
+            throw new IllegalArgumentException("Line too long: " + length + " bytes");
+        }
+        return offset << LENGTH_BITS | length;
+    }
+
+    private static long offsetOf(long pointer) {
+        return pointer >>> LENGTH_BITS;
+    }
+
+    private static int lengthOf(long pointer) {
+        return (int) (pointer & LENGTH_MASK);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -1,70 +1,278 @@
 package assignment.repo;
 
+import assignment.util.FieldTokenizer;
+import assignment.util.IoStats;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Repository responsible for reading/writing transactions to Transaction.txt.
- * Format: subtotal, discount, tax, total (tab-separated)
+ * Repository responsible for reading/writing transactions to Transaction.txt; the flat-file
+ * TransactionStore (see Repositories).
+ * Format: orderId, timestamp, staffId, memberId, subtotal, discount, tax, total (tab-separated)
+ * Amounts are written with exactly two decimals and held in memory as sen (see Money).
+ * Older files hold only subtotal, discount, tax, total; those rows are still read, with the
+ * missing fields set to 0. Amounts written as doubles by older versions (e.g. 2.4299999999999997)
+ * are rounded half-up to the sen when read.
+ *
+ * A sparse index (Transaction.idx) describes the file in blocks of INDEX_BLOCK_SIZE records:
+ * each entry holds the block's byte range, its earliest and latest timestamp and the staff IDs
+ * in it. Range and staff queries only read the blocks that can match, plus the short tail of
+ * records written after the last full block.
  */
-public class TransactionRepository {
+public class TransactionRepository implements TransactionStore {
     private static final String TRANSACTION_FILE_PATH = "Transaction.txt";
+    private static final String TRANSACTION_INDEX_FILE_PATH = "Transaction.idx";
+    private static final String TEMP_TRANSACTION_FILE_PATH = "TransactionTemp.txt";
+    private static final int INDEX_BLOCK_SIZE = 64;
+    // Bytes read from the end of the file to find the last order ID
+    private static final int TAIL_READ_BYTES = 4096;
+    // Column positions, for reading the file with a MappedLogReader.
+    // Rows in the older format have LEGACY_FIELD_COUNT fields holding only the amounts.
+    public static final int FIELD_ORDER_ID = 0;
+    public static final int FIELD_TIMESTAMP = 1;
+    public static final int FIELD_STAFF_ID = 2;
+    public static final int FIELD_MEMBER_ID = 3;
+    public static final int FIELD_SUBTOTAL = 4;
+    public static final int FIELD_DISCOUNT = 5;
+    public static final int FIELD_TAX = 6;
+    public static final int FIELD_TOTAL = 7;
+    public static final int FIELD_COUNT = 8;
+    public static final int LEGACY_FIELD_COUNT = 4;
     private static final Logger LOGGER = Logger.getLogger(TransactionRepository.class.getName());
 
+    // Sparse index state, loaded on first use
+    private final List<IndexBlock> blocks = new ArrayList<>();
+    private boolean indexLoaded = false;
+    // The block currently being filled (records after the last indexed block)
+    private long openBlockStart = 0;
+    private long openBlockEnd = 0;
+    private int openBlockCount = 0;
+    private long openBlockMinTs = Long.MAX_VALUE;
+    private long openBlockMaxTs = Long.MIN_VALUE;
+    private final Set<Integer> openBlockStaff = new HashSet<>();
+    // Reused to parse records while indexing; guarded by this
+    private final FieldTokenizer indexFields = new FieldTokenizer();
+
     /**
      * Represents a transaction record.
      */
     public static class Transaction {
-        private final double subtotal;
-        private final double discount;
-        private final double tax;
-        private final double total;
+        private final long orderId;
+        private final long timestamp;
+        private final int staffId;
+        private final int memberId;
+        // Amounts in sen (see Money)
+        private final long subtotal;
+        private final long discount;
+        private final long tax;
+        private final long total;
 
-        public Transaction(double subtotal, double discount, double tax, double total) {
+        public Transaction(long orderId, long timestamp, int staffId, int memberId,
+                           long subtotal, long discount, long tax, long total) {
+            this.orderId = orderId;
+            this.timestamp = timestamp;
+            this.staffId = staffId;
+            this.memberId = memberId;
             this.subtotal = subtotal;
             this.discount = discount;
             this.tax = tax;
             this.total = total;
         }
 
-        public double getSubtotal() {
+        public Transaction(long subtotal, long discount, long tax, long total) {
+            this(0, 0, 0, 0, subtotal, discount, tax, total);
+        }
+
+        public long getOrderId() {
+            return orderId;
+        }
+
+        // Epoch milliseconds when the payment was taken, 0 for rows written before timestamps were kept
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public int getStaffId() {
+            return staffId;
+        }
+
+        // 0 when no member was given
+        public int getMemberId() {
+            return memberId;
+        }
+
+        public long getSubtotal() {
             return subtotal;
         }
 
-        public double getDiscount() {
+        public long getDiscount() {
             return discount;
         }
 
-        public double getTax() {
+        public long getTax() {
             return tax;
         }
 
-        public double getTotal() {
+        public long getTotal() {
             return total;
         }
     }
 
     /**
-     * Appends a transaction to the file.
+     * One entry of the sparse index.
      */
-    public void appendTransaction(double subtotal, double discount, double tax, double total) {
+    private static class IndexBlock {
+        private final long startOffset;
+        private final long endOffset;
+        private final long minTimestamp;
+        private final long maxTimestamp;
+        private final int count;
+        private final Set<Integer> staffIds;
+
+        IndexBlock(long startOffset, long endOffset, long minTimestamp, long maxTimestamp, int count, Set<Integer> staffIds) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.count = count;
+            this.staffIds = staffIds;
+        }
+
+        boolean mayMatch(long from, long to, Integer staffId) {
+            return maxTimestamp >= from && minTimestamp <= to
+                    && (staffId == null || staffIds.contains(staffId));
+        }
+
+        String toFileString() {
+            StringBuilder staff = new StringBuilder();
+            for (Integer id : staffIds) {
+                if (staff.length() > 0) {
+                    staff.append(',');
+                }
+                staff.append(id);
+            }
+            return startOffset + "\t" + endOffset + "\t" + minTimestamp + "\t" + maxTimestamp + "\t" + count + "\t" + staff;
+        }
+    }
+
+    private interface RecordConsumer {
+        void accept(long startOffset, long endOffset, String line);
+    }
+
+    /**
+     * Appends a line produced by formatTransaction and adds it to the sparse index.
+     */
+    public synchronized void appendFormatted(String line) throws IOException {
         ensureFileExists();
+        ensureIndexLoaded();
+        long startOffset = length();
         try (FileWriter writer = new FileWriter(TRANSACTION_FILE_PATH, true)) {
-            writer.write(subtotal + "\t");
-            writer.write(discount + "\t");
-            writer.write(tax + "\t");
-            writer.write(total + "\t");
-            writer.write("\n");
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Error writing transaction", e);
+            IoStats.recordOpen(TRANSACTION_FILE_PATH);
+            writer.write(line);
         }
+        addToIndex(startOffset, length(), line.trim());
+    }
+
+    /**
+     * Forces everything written to the file so far to disk (see CheckoutLog.commit).
+     */
+    public void force() throws IOException {
+        PaidItemRepository.forceFile(TRANSACTION_FILE_PATH);
+    }
+
+    /**
+     * Rewrites the whole file in the current format: 8 columns with two-decimal amounts.
+     * Used to migrate files written by older versions; the sparse index is rebuilt afterwards.
+     * Returns the number of transactions written.
+     */
+    public synchronized long rewriteInCurrentFormat() throws IOException {
+        ensureFileExists();
+        long count = 0;
+        File tempFile = new File(TEMP_TRANSACTION_FILE_PATH);
+        try (Stream<Transaction> transactions = streamAllTransactions();
+             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+            IoStats.recordOpen(TEMP_TRANSACTION_FILE_PATH);
+            Iterator<Transaction> it = transactions.iterator();
+            while (it.hasNext()) {
+                Transaction t = it.next();
+                writer.write(formatTransaction(t.getOrderId(), t.getTimestamp(), t.getStaffId(), t.getMemberId(),
+                        t.getSubtotal(), t.getDiscount(), t.getTax(), t.getTotal()));
+                count++;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Files.move(tempFile.toPath(), new File(TRANSACTION_FILE_PATH).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Offsets have all changed, so drop the index and let it be rebuilt on next use
+        new File(TRANSACTION_INDEX_FILE_PATH).delete();
+        blocks.clear();
+        indexLoaded = false;
+        return count;
+    }
+
+    public String getFilePath() {
+        return TRANSACTION_FILE_PATH;
+    }
+
+    // Returns the current size of the file in bytes (0 if it does not exist yet)
+    public long length() {
+        return new File(TRANSACTION_FILE_PATH).length();
+    }
+
+    /**
+     * Returns the order ID of the last transaction in the file, or 0 if there is none.
+     * Orders are appended in ID order, so only the end of the file is read.
+     */
+    public long findLastOrderId() {
+        File file = new File(TRANSACTION_FILE_PATH);
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            IoStats.recordOpen(TRANSACTION_FILE_PATH);
+            int tailLength = (int) Math.min(raf.length(), TAIL_READ_BYTES);
+            byte[] tail = new byte[tailLength];
+            raf.seek(raf.length() - tailLength);
+            raf.readFully(tail);
+            String[] lines = new String(tail, StandardCharsets.UTF_8).split("\n");
+            FieldTokenizer fields = new FieldTokenizer();
+            // The first line of the tail may be cut off, so it is only trusted if it is the whole file
+            int first = tailLength == raf.length() ? 0 : 1;
+            for (int i = lines.length - 1; i >= first; i--) {
+                if (fields.reset(lines[i].trim()).fieldCount() >= FIELD_COUNT) {
+                    return fields.getLong(FIELD_ORDER_ID);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Unable to read the last order ID", e);
+        }
+        return 0;
     }
 
     /**
@@ -75,19 +283,12 @@ public class TransactionRepository {
         List<Transaction> transactions = new ArrayList<>();
 
         try (BufferedReader br = new BufferedReader(new FileReader(TRANSACTION_FILE_PATH))) {
+            FieldTokenizer fields = new FieldTokenizer();
             String line;
             while ((line = br.readLine()) != null) {
-                String[] parts = line.split("\t");
-                if (parts.length >= 4) {
-                    try {
-                        double subtotal = Double.parseDouble(parts[0]);
-                        double discount = Double.parseDouble(parts[1]);
-                        double tax = Double.parseDouble(parts[2]);
-                        double total = Double.parseDouble(parts[3]);
-                        transactions.add(new Transaction(subtotal, discount, tax, total));
-                    } catch (NumberFormatException e) {
-                        LOGGER.log(Level.WARNING, "Error parsing transaction line: " + line, e);
-                    }
+                Transaction transaction = parse(fields, line);
+                if (transaction != null) {
+                    transactions.add(transaction);
                 }
             }
         } catch (IOException e) {
@@ -97,6 +298,285 @@ public class TransactionRepository {
         return transactions;
     }
 
+    /**
+     * Streams every transaction in the file, reading it lazily line by line.
+     * Memory use does not depend on the file size. The stream must be closed after use.
+     */
+    public Stream<Transaction> streamAllTransactions() {
+        ensureFileExists();
+        return streamRange(0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Streams the transactions in the time range, optionally only those of one staff member.
+     * Like query(), only index blocks that can match are read, but records are read lazily
+     * as the stream is consumed instead of being collected into a list.
+     * The stream must be closed after use.
+     */
+    public Stream<Transaction> streamTransactions(long fromMillis, long toMillis, Integer staffId) {
+        List<long[]> ranges = new ArrayList<>();
+        synchronized (this) {
+            ensureFileExists();
+            ensureIndexLoaded();
+            for (IndexBlock block : blocks) {
+                if (block.mayMatch(fromMillis, toMillis, staffId)) {
+                    ranges.add(new long[]{block.startOffset, block.endOffset});
+                }
+            }
+            ranges.add(new long[]{openBlockStart, Long.MAX_VALUE});
+        }
+
+        return ranges.stream()
+                .flatMap(range -> streamRange(range[0], range[1]))
+                .filter(t -> t.getTimestamp() >= fromMillis && t.getTimestamp() <= toMillis
+                        && (staffId == null || t.getStaffId() == staffId));
+    }
+
+    /**
+     * Opens a reader that parses the whole file straight from a memory mapping into
+     * primitives, for scans over the whole history (see MappedLogReader and the FIELD_
+     * constants). The reader must be closed after use.
+     */
+    @Override
+    public MappedLogReader openReader() throws IOException {
+        ensureFileExists();
+        return new MappedLogReader(TRANSACTION_FILE_PATH);
+    }
+
+    /**
+     * Returns the transactions in the time range, optionally only those of one staff member.
+     * Only index blocks whose time span and staff set can match are read from disk.
+     */
+    public synchronized List<Transaction> query(long fromMillis, long toMillis, Integer staffId) {
+        ensureFileExists();
+        ensureIndexLoaded();
+        List<Transaction> results = new ArrayList<>();
+        FieldTokenizer fields = new FieldTokenizer();
+        RecordConsumer collect = (start, end, line) -> {
+            Transaction transaction = parse(fields, line);
+            if (transaction != null
+                    && transaction.getTimestamp() >= fromMillis && transaction.getTimestamp() <= toMillis
+                    && (staffId == null || transaction.getStaffId() == staffId)) {
+                results.add(transaction);
+            }
+        };
+
+        try {
+            for (IndexBlock block : blocks) {
+                if (block.mayMatch(fromMillis, toMillis, staffId)) {
+                    scan(block.startOffset, block.endOffset, collect);
+                }
+            }
+            scan(openBlockStart, length(), collect);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading transaction file", e);
+        }
+        return results;
+    }
+
+    // Lazily parses the lines between two byte offsets; the file is opened when the stream is consumed
+    private Stream<Transaction> streamRange(long fromOffset, long toOffset) {
+        BufferedReader reader;
+        try {
+            FileInputStream fileIn = new FileInputStream(TRANSACTION_FILE_PATH);
+            fileIn.getChannel().position(fromOffset);
+            reader = new BufferedReader(new InputStreamReader(
+                    new RangeInputStream(fileIn, toOffset - fromOffset), StandardCharsets.UTF_8), 64 * 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading transaction file", e);
+        }
+
+        FieldTokenizer fields = new FieldTokenizer();
+        return reader.lines()
+                .map(line -> parse(fields, line))
+                .filter(Objects::nonNull)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Error closing transaction file", e);
+                    }
+                });
+    }
+
+    // Stops reading after a fixed number of bytes so a stream covers exactly one index block
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Parses one line in either the current or the older 4-column format.
+     * Returns null for blank or unreadable lines.
+     */
+    static Transaction parse(FieldTokenizer fields, String line) {
+        fields.reset(line);
+        try {
+            if (fields.fieldCount() >= FIELD_COUNT) {
+                return new Transaction(fields.getLong(FIELD_ORDER_ID), fields.getLong(FIELD_TIMESTAMP),
+                        fields.getInt(FIELD_STAFF_ID), fields.getInt(FIELD_MEMBER_ID),
+                        fields.getCents(FIELD_SUBTOTAL), fields.getCents(FIELD_DISCOUNT),
+                        fields.getCents(FIELD_TAX), fields.getCents(FIELD_TOTAL));
+            } else if (fields.fieldCount() >= LEGACY_FIELD_COUNT) {
+                return new Transaction(fields.getCents(0), fields.getCents(1),
+                        fields.getCents(2), fields.getCents(3));
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Error parsing transaction line: " + line, e);
+        }
+        return null;
+    }
+
+    /**
+     * Loads the sparse index and indexes any records written after its last block
+     * (for example every record of a file written before the index existed).
+     */
+    private void ensureIndexLoaded() {
+        if (indexLoaded) {
+            return;
+        }
+        blocks.clear();
+        long fileLength = length();
+        File indexFile = new File(TRANSACTION_INDEX_FILE_PATH);
+        if (indexFile.exists()) {
+            try (BufferedReader br = new BufferedReader(new FileReader(indexFile))) {
+                FieldTokenizer fields = new FieldTokenizer();
+                FieldTokenizer staffFields = new FieldTokenizer(',');
+                String line;
+                while ((line = br.readLine()) != null) {
+                    IndexBlock block = parseIndexLine(fields, staffFields, line);
+                    // Ignore entries past the end of the data (e.g. the file was replaced)
+                    if (block != null && block.endOffset <= fileLength) {
+                        blocks.add(block);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error reading transaction index", e);
+                blocks.clear();
+            }
+        }
+
+        resetOpenBlock(blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).endOffset);
+        indexLoaded = true;
+        try {
+            scan(openBlockStart, fileLength, (start, end, line) -> addToIndex(start, end, line));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error indexing transaction file", e);
+        }
+    }
+
+    private IndexBlock parseIndexLine(FieldTokenizer fields, FieldTokenizer staffFields, String line) {
+        if (fields.reset(line).fieldCount() < 5) {
+            return null;
+        }
+        try {
+            Set<Integer> staffIds = new HashSet<>();
+            if (fields.fieldCount() >= 6) {
+                staffFields.reset(line, fields.start(5), fields.end(5));
+                for (int i = 0; i < staffFields.fieldCount(); i++) {
+                    staffIds.add(staffFields.getInt(i));
+                }
+            }
+            return new IndexBlock(fields.getLong(0), fields.getLong(1),
+                    fields.getLong(2), fields.getLong(3), fields.getInt(4), staffIds);
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Error parsing transaction index line: " + line, e);
+            return null;
+        }
+    }
+
+    // Adds a record to the open block, closing and persisting the block once it is full
+    private void addToIndex(long startOffset, long endOffset, String line) {
+        Transaction transaction = parse(indexFields, line);
+        if (transaction == null) {
+            return;
+        }
+        openBlockEnd = endOffset;
+        openBlockCount++;
+        openBlockMinTs = Math.min(openBlockMinTs, transaction.getTimestamp());
+        openBlockMaxTs = Math.max(openBlockMaxTs, transaction.getTimestamp());
+        openBlockStaff.add(transaction.getStaffId());
+
+        if (openBlockCount >= INDEX_BLOCK_SIZE) {
+            IndexBlock block = new IndexBlock(openBlockStart, openBlockEnd, openBlockMinTs, openBlockMaxTs,
+                    openBlockCount, new HashSet<>(openBlockStaff));
+            try (FileWriter writer = new FileWriter(TRANSACTION_INDEX_FILE_PATH, true)) {
+                IoStats.recordOpen(TRANSACTION_INDEX_FILE_PATH);
+                writer.write(block.toFileString() + "\n");
+            } catch (IOException e) {
+                // The block stays in memory; the next start re-indexes it from the data file
+                LOGGER.log(Level.SEVERE, "Error writing transaction index", e);
+            }
+            blocks.add(block);
+            resetOpenBlock(openBlockEnd);
+        }
+    }
+
+    private void resetOpenBlock(long startOffset) {
+        openBlockStart = startOffset;
+        openBlockEnd = startOffset;
+        openBlockCount = 0;
+        openBlockMinTs = Long.MAX_VALUE;
+        openBlockMaxTs = Long.MIN_VALUE;
+        openBlockStaff.clear();
+    }
+
+    /**
+     * Reads the complete lines between two byte offsets, passing each with its own offsets.
+     */
+    private void scan(long fromOffset, long toOffset, RecordConsumer consumer) throws IOException {
+        if (fromOffset >= toOffset) {
+            return;
+        }
+        try (FileInputStream fileIn = new FileInputStream(TRANSACTION_FILE_PATH)) {
+            fileIn.getChannel().position(fromOffset);
+            BufferedInputStream in = new BufferedInputStream(fileIn, 64 * 1024);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            long position = fromOffset;
+            long lineStart = fromOffset;
+            int b;
+            while (position < toOffset && (b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    consumer.accept(lineStart, position, line.toString(StandardCharsets.UTF_8).trim());
+                    line.reset();
+                    lineStart = position;
+                } else {
+                    line.write(b);
+                }
+            }
+            // A last line without its newline is a torn write and is left for the checkout log to repair
+        }
+    }
+
     private void ensureFileExists() {
         File file = new File(TRANSACTION_FILE_PATH);
         if (!file.exists()) {
@@ -108,4 +588,3 @@ public class TransactionRepository {
         }
     }
 }
-
@@ -0,0 +1,83 @@
+package assignment.repo;
+
+import assignment.repo.TransactionRepository.Transaction;
+import assignment.util.Money;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Storage for transactions. TransactionRepository keeps them in Transaction.txt and
+ * EmbeddedTransactionStore keeps them in the embedded database; Repositories.transactions()
+ * returns the one selected by StoreConfig. Both hold each transaction in the format written
+ * by formatTransaction, so the TransactionRepository.FIELD_ constants apply to either.
+ */
+public interface TransactionStore {
+
+    /**
+     * Formats a transaction exactly as it is stored.
+     */
+    default String formatTransaction(long orderId, long timestamp, int staffId, int memberId,
+                                     long subtotal, long discount, long tax, long total) {
+        return orderId + "\t" + timestamp + "\t" + staffId + "\t" + memberId + "\t"
+                + Money.format(subtotal) + "\t" + Money.format(discount) + "\t"
+                + Money.format(tax) + "\t" + Money.format(total) + "\t" + "\n";
+    }
+
+    /**
+     * Appends a transaction.
+     */
+    default void appendTransaction(long orderId, long timestamp, int staffId, int memberId,
+                                   long subtotal, long discount, long tax, long total) throws IOException {
+        appendFormatted(formatTransaction(orderId, timestamp, staffId, memberId, subtotal, discount, tax, total));
+    }
+
+    /**
+     * Appends a line produced by formatTransaction.
+     * Throws if it could not be written; part of it may have reached the store.
+     */
+    void appendFormatted(String line) throws IOException;
+
+    /**
+     * Returns the order ID of the last transaction, or 0 if there is none.
+     */
+    long findLastOrderId();
+
+    List<Transaction> loadAllTransactions();
+
+    /**
+     * Streams every transaction, reading them lazily. The stream must be closed after use.
+     */
+    Stream<Transaction> streamAllTransactions();
+
+    /**
+     * Streams the transactions in the time range (epoch milliseconds, inclusive), optionally
+     * only those of one staff member. The stream must be closed after use.
+     */
+    Stream<Transaction> streamTransactions(long fromMillis, long toMillis, Integer staffId);
+
+    /**
+     * Returns the transactions in the time range, optionally only those of one staff member.
+     */
+    List<Transaction> query(long fromMillis, long toMillis, Integer staffId);
+
+    /**
+     * Returns the transactions taken between the two times (epoch milliseconds, inclusive).
+     */
+    default List<Transaction> findByTimeRange(long fromMillis, long toMillis) {
+        return query(fromMillis, toMillis, null);
+    }
+
+    /**
+     * Returns every transaction taken by one staff member.
+     */
+    default List<Transaction> findByStaff(int staffId) {
+        return query(Long.MIN_VALUE, Long.MAX_VALUE, staffId);
+    }
+
+    /**
+     * Opens a cursor over every transaction, for scans over the whole history.
+     * The cursor must be closed after use.
+     */
+    RecordCursor openReader() throws IOException;
+}
@@ -0,0 +1,174 @@
+package assignment.service;
+
+import assignment.model.Cart;
+import assignment.model.Reservation;
+import assignment.repo.StockRepository;
+import assignment.util.Metrics;
+import assignment.util.SalesConfig;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of every open cart, shared by all tills.
+ *
+ * The items in a cart are held by stock reservations, which lapse on their own when left
+ * unused (see StockRepository). A background sweep also closes carts that have been idle
+ * for longer than the timeout (see SalesConfig) and releases whatever they still hold.
+ * Cart ids are only unique while the program runs; a paid cart is recorded under the
+ * checkout's order id instead.
+ *
+ * The tills share one manager, getInstance(), which runs the sweep and reports the number
+ * of open carts as the "sales.openCarts" gauge. Other managers (as in the benchmarks) are
+ * only swept if startSweeper() is called and are not reported.
+ */
+public class CartSessionManager {
+    private static final Logger LOGGER = Logger.getLogger(CartSessionManager.class.getName());
+
+    private static CartSessionManager instance;
+
+    private final StockRepository stockRepo;
+    private final long idleTimeoutMs;
+    private final Map<Long, Cart> openCarts = new ConcurrentHashMap<>();
+    private final AtomicLong nextCartId = new AtomicLong(1);
+    private ScheduledExecutorService sweeper;
+
+    public CartSessionManager(StockRepository stockRepo) {
+        this(stockRepo, SalesConfig.CART_IDLE_TIMEOUT_MS);
+    }
+
+    public CartSessionManager(StockRepository stockRepo, long idleTimeoutMs) {
+        this.stockRepo = stockRepo;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * The manager shared by every till, created on first use with its sweep running.
+     */
+    public static synchronized CartSessionManager getInstance() {
+        if (instance == null) {
+            instance = new CartSessionManager(new StockRepository());
+            instance.startSweeper(SalesConfig.CART_SWEEP_INTERVAL_MS);
+            Metrics.gauge("sales.openCarts", instance.openCarts::size);
+        }
+        return instance;
+    }
+
+    public Cart open(String label) {
+        long id = nextCartId.getAndIncrement();
+        String cartLabel = label == null || label.isBlank() ? SalesConfig.DEFAULT_CART_LABEL + " " + id : label;
+        Cart cart = new Cart(id, cartLabel);
+        openCarts.put(id, cart);
+        return cart;
+    }
+
+    // Returns the open cart with this id, or null if it is closed or unknown
+    public Cart find(long cartId) {
+        return openCarts.get(cartId);
+    }
+
+    // Returns the open carts, oldest first
+    public List<Cart> getOpenCarts() {
+        List<Cart> carts = new ArrayList<>();
+        for (Cart cart : openCarts.values()) {
+            if (!cart.isClosed()) {
+                carts.add(cart);
+            }
+        }
+        carts.sort(Comparator.comparingLong(Cart::getId));
+        return carts;
+    }
+
+    /**
+     * Forgets a cart whose items have been paid for.
+     */
+    public void close(Cart cart) {
+        cart.close();
+        openCarts.remove(cart.getId());
+    }
+
+    /**
+     * Closes a cart without payment and releases its reservations.
+     */
+    public void cancel(Cart cart) {
+        synchronized (cart) {
+            release(cart.close());
+        }
+        openCarts.remove(cart.getId());
+    }
+
+    /**
+     * Closes every cart that has been idle for longer than the timeout and releases its
+     * reservations. Returns the number of carts closed.
+     */
+    public int expireIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMs;
+        int expired = 0;
+        for (Cart cart : openCarts.values()) {
+            if (cart.getLastActivity() > cutoff) {
+                continue;
+            }
+            synchronized (cart) {
+                // Re-check under the cart's lock: a till may have just used it, or paid for it
+                if (cart.isClosed()) {
+                    openCarts.remove(cart.getId());
+                    continue;
+                }
+                if (cart.getLastActivity() > cutoff) {
+                    continue;
+                }
+                List<Reservation> held = cart.close();
+                release(held);
+                LOGGER.info("Expired idle cart " + cart.getLabel() + ", released " + held.size() + " line(s)");
+            }
+            openCarts.remove(cart.getId());
+            expired++;
+        }
+        return expired;
+    }
+
+    /**
+     * Starts the background sweep that expires idle carts. Does nothing if it is running.
+     */
+    public synchronized void startSweeper(long intervalMs) {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cart-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::expireQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
+    private void expireQuietly() {
+        try {
+            expireIdle();
+        } catch (RuntimeException e) {
+            // Keep the sweep scheduled; the next run will try again
+            LOGGER.log(Level.SEVERE, "Error expiring idle carts", e);
+        }
+    }
+
+    private void release(List<Reservation> held) {
+        for (Reservation reservation : held) {
+            stockRepo.releaseReservation(reservation);
+        }
+    }
+}
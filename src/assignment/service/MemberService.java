@@ -1,19 +1,19 @@
 package assignment.service;
 
 import assignment.model.Membership;
-import assignment.repo.MemberRepository;
+import assignment.repo.MemberStore;
 
 import java.util.List;
 
 /**
  * Service layer for Member domain.
- * Encapsulates business rules on top of MemberRepository.
+ * Encapsulates business rules on top of a MemberStore.
  */
 public class MemberService {
 
-    private final MemberRepository memberRepo;
+    private final MemberStore memberRepo;
 
-    public MemberService(MemberRepository memberRepo) {
+    public MemberService(MemberStore memberRepo) {
         this.memberRepo = memberRepo;
     }
 
@@ -37,17 +37,20 @@ public class MemberService {
         return true;
     }
 
+    /**
+     * Issues the ID for a new member. IDs are never reused and never collide with an
+     * existing member's, and are not limited to three digits.
+     */
+    public int nextMemberId() {
+        return memberRepo.nextMemberId();
+    }
+
     /**
      * Checks if a member ID is already taken.
      * Returns true if ID exists, false otherwise.
      */
     public boolean checkIdExists (int id) {
-        for (Membership member : memberRepo.loadAllMembers()) {
-            if (member.getId() == id) {
-                return true;
-            }
-        }
-        return false;
+        return memberRepo.existsById(id);
     }
 
     /**
@@ -55,12 +58,7 @@ public class MemberService {
      * Returns the member if found, or null if not found.
      */
     public Membership findMemberById(int memberId) {
-        for (Membership member : memberRepo.loadAllMembers()) {
-            if (member.getId() == memberId) {
-                return member;
-            }
-        }
-        return null;
+        return memberRepo.findById(memberId);
     }
 
     /**
@@ -1,34 +1,123 @@
 package assignment.service;
 
+import assignment.model.Cart;
+import assignment.model.Membership;
+import assignment.model.Reservation;
 import assignment.model.Stock;
-import assignment.repo.PaidItemRepository;
+import assignment.repo.CheckoutWriter;
+import assignment.repo.PaidItemStore;
+import assignment.repo.RecordCursor;
+import assignment.repo.Repositories;
+import assignment.repo.RollupRepository;
+import assignment.repo.SequenceAllocator;
+import assignment.repo.StockJournal;
 import assignment.repo.StockRepository;
 import assignment.repo.TransactionRepository;
+import assignment.repo.TransactionStore;
+import assignment.util.LatencyHistogram;
+import assignment.util.Metrics;
+import assignment.util.Money;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Service layer for payment processing.
  * Handles business logic for payments, discounts, taxes, and transaction recording.
+ * All amounts are in sen (see Money); rates are applied with half-up rounding to the sen.
  */
 public class PaymentService {
     private final StockRepository stockRepo;
-    private final PaidItemRepository paidItemRepo;
-    private final TransactionRepository transactionRepo;
-    private static final double TAX_RATE = 0.06; // 6% tax rate
+    private final PaidItemStore paidItemRepo;
+    private final TransactionStore transactionRepo;
+    private final CheckoutWriter checkoutWriter;
+    private final RollupRepository rollupRepo;
+    private final MemberService memberService;
+    // Order IDs, also used as checkout IDs; they must increase in commit order (see RollupRepository)
+    private final SequenceAllocator.Sequence orderIds;
+    private static final long TAX_RATE_BASIS_POINTS = 600; // 6% tax rate
+    private static final Logger LOGGER = Logger.getLogger(PaymentService.class.getName());
+    // Whole payments of a cart, and the part spent waiting for and writing the checkout (see Metrics)
+    private static final LatencyHistogram PAYMENT_LATENCY = Metrics.histogram("payment.processPayment");
+    private static final LatencyHistogram CHECKOUT_LATENCY = Metrics.histogram("payment.checkoutWrite");
+    private static final Metrics.Counter PAYMENT_FAILED = Metrics.counter("payment.processPayment.failed");
 
-    public PaymentService(StockRepository stockRepo, PaidItemRepository paidItemRepo, TransactionRepository transactionRepo) {
+    public PaymentService(StockRepository stockRepo, PaidItemStore paidItemRepo, TransactionStore transactionRepo) {
+        this(stockRepo, paidItemRepo, transactionRepo, Repositories.checkoutWriter(paidItemRepo, transactionRepo));
+    }
+
+    public PaymentService(StockRepository stockRepo, PaidItemStore paidItemRepo, TransactionStore transactionRepo,
+                          CheckoutWriter checkoutWriter) {
+        this(stockRepo, paidItemRepo, transactionRepo, checkoutWriter, new RollupRepository(),
+                new MemberService(Repositories.members()));
+    }
+
+    public PaymentService(StockRepository stockRepo, PaidItemStore paidItemRepo, TransactionStore transactionRepo,
+                          CheckoutWriter checkoutWriter, RollupRepository rollupRepo, MemberService memberService) {
         this.stockRepo = stockRepo;
         this.paidItemRepo = paidItemRepo;
         this.transactionRepo = transactionRepo;
+        this.checkoutWriter = checkoutWriter;
+        this.rollupRepo = rollupRepo;
+        this.memberService = memberService;
+        // Finish any checkout that was interrupted by a crash before taking new payments
+        long recoveredCheckoutId = this.checkoutWriter.recover();
+        settleInterruptedSales();
+        long lastOrderId = transactionRepo.findLastOrderId();
+        if (Math.max(recoveredCheckoutId, lastOrderId) > rollupRepo.getLastOrderId()) {
+            // The crash came before the checkout reached the rollups, so recount them from the stores
+            rollupRepo.rebuild(transactionRepo, paidItemRepo, memberService.getAllMembers());
+        }
+        // Continue after every order already recorded. Orders taken before the sequence
+        // existed used the clock as their ID, so the first new ID follows on from those.
+        this.orderIds = SequenceAllocator.getInstance().sequence(SequenceAllocator.ORDER,
+                Math.max(rollupRepo.getLastOrderId(), lastOrderId) + 1);
+    }
+
+    /**
+     * Settles the sales whose stock was deducted in the last run but that may not have been
+     * recorded before it stopped (see StockRepository.getUnsettledSales). Sales found in the
+     * transactions are kept; the rest have their units given back. Runs after the checkout
+     * writer's recovery, so an interrupted checkout counts as recorded once it is completed.
+     */
+    private void settleInterruptedSales() {
+        Set<Long> unsettled = stockRepo.getUnsettledSales();
+        if (unsettled.isEmpty()) {
+            return;
+        }
+        Set<Long> recorded = new HashSet<>();
+        try (RecordCursor reader = transactionRepo.openReader()) {
+            while (reader.next()) {
+                try {
+                    if (reader.fieldCount() >= TransactionRepository.FIELD_COUNT
+                            && unsettled.contains(reader.getLong(TransactionRepository.FIELD_ORDER_ID))) {
+                        recorded.add(reader.getLong(TransactionRepository.FIELD_ORDER_ID));
+                    }
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Skipping malformed transaction line: " + reader.lineToString());
+                }
+            }
+        } catch (IOException e) {
+            // Leave them unsettled rather than give back stock that may have been sold
+            LOGGER.log(Level.SEVERE, "Error reading transaction file, interrupted sales left unsettled", e);
+            return;
+        }
+        for (long checkoutId : unsettled) {
+            stockRepo.resolveUnsettledSale(checkoutId, recorded.contains(checkoutId));
+        }
     }
 
     /**
      * Calculates the subtotal of all items in the cart.
      */
-    public double calculateSubtotal() {
-        double subtotal = 0.0;
-        for (Stock item : stockRepo.getCart()) {
-            subtotal += item.calculateTotalCost();
+    public long calculateSubtotal(List<Stock> cart) {
+        long subtotal = Money.ZERO;
+        for (Stock item : cart) {
+            subtotal = Math.addExact(subtotal, item.calculateTotalCost());
         }
         return subtotal;
     }
@@ -36,82 +125,209 @@ public class PaymentService {
     /**
      * Calculates discount based on member type and subtotal.
      * @param discountRate The discount rate (e.g., 0.1 for 10%)
-     * @param subtotal The subtotal amount
-     * @return The discount amount
+     * @param subtotal The subtotal amount in sen
+     * @return The discount amount in sen
      */
-    public double calculateDiscount(double discountRate, double subtotal) {
-        return subtotal * discountRate;
+    public long calculateDiscount(double discountRate, long subtotal) {
+        return Money.applyRate(subtotal, Money.rateToBasisPoints(discountRate));
     }
 
     /**
      * Calculates tax on the subtotal after discount.
-     * @param subtotal The subtotal amount
-     * @param discount The discount amount
-     * @return The tax amount
+     * @param subtotal The subtotal amount in sen
+     * @param discount The discount amount in sen
+     * @return The tax amount in sen
+     */
+    public long calculateTax(long subtotal, long discount) {
+        long amountAfterDiscount = subtotal - discount;
+        return Money.applyRate(amountAfterDiscount, TAX_RATE_BASIS_POINTS);
+    }
+
+    /**
+     * Processes payment for an open cart and closes it, so its items cannot be paid for
+     * twice or released by the session manager afterwards.
+     * This is where the cart's reservations become stock deductions. If a reservation has
+     * expired and its units have been sold meanwhile, or the payment cannot be recorded,
+     * nothing is deducted and the cart stays open.
+     * @param cart The cart to pay for (see SalesService.getCurrentCart)
+     * @param discountRate The discount rate to apply (0.0 if no member discount)
+     * @param staffId The staff member taking the payment (0 if unknown)
+     * @param memberId The member the discount belongs to (0 if none)
+     * @return PaymentResult containing all payment details, or null if the cart is empty,
+     *         already closed, or the payment could not be recorded
+     */
+    public PaymentResult processPayment(Cart cart, double discountRate, int staffId, int memberId) {
+        long start = System.nanoTime();
+        PaymentResult result = payCart(cart, discountRate, staffId, memberId);
+        PAYMENT_LATENCY.recordSince(start);
+        if (result == null) {
+            PAYMENT_FAILED.increment();
+        }
+        return result;
+    }
+
+    private PaymentResult payCart(Cart cart, double discountRate, int staffId, int memberId) {
+        synchronized (cart) {
+            if (cart.isClosed()) {
+                return null; // Paid elsewhere, cancelled or expired
+            }
+            PaymentResult result = checkout(cart.getItems(), cart.getReservations(), discountRate, staffId, memberId);
+            if (result == null) {
+                return null;
+            }
+            cart.close();
+            return result;
+        }
+    }
+
+    // Gives back the units of a sale whose payment was not recorded; paying again takes them anew.
+    // Returns false if any could not be given back, in which case the sale is left pending for
+    // recovery to finish on the next start.
+    private boolean returnStock(List<Stock> items, long checkoutId) {
+        boolean returned = true;
+        for (Stock item : items) {
+            Stock stockItem = stockRepo.findById(item.getStockID());
+            if (stockItem != null) {
+                try {
+                    stockRepo.adjustQuantity(stockItem, item.getQty(), StockJournal.REASON_PAYMENT_ROLLBACK, checkoutId);
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "Unable to return " + item.getQty() + " units of stock "
+                            + item.getStockID() + " after a failed payment", e);
+                    returned = false;
+                }
+            }
+        }
+        return returned;
+    }
+
+    /**
+     * Processes payment for all items in the cart.
+     * @param cart Items whose stock has already been deducted (a cart is paid for with the Cart overload)
+     * @param discountRate The discount rate to apply (0.0 if no member discount)
+     * @return PaymentResult containing all payment details
      */
-    public double calculateTax(double subtotal, double discount) {
-        double amountAfterDiscount = subtotal - discount;
-        return amountAfterDiscount * TAX_RATE;
+    public PaymentResult processPayment(List<Stock> cart, double discountRate) {
+        return processPayment(cart, discountRate, 0, 0);
     }
 
     /**
      * Processes payment for all items in the cart.
+     * The paid items and the transaction are committed as one unit through the checkout writer:
+     * either both are stored or, after a crash, recovery completes them together.
+     * The sales rollups are updated before the checkout is marked finished, so a crash in
+     * between is either replayed harmlessly or leads to the rollups being rebuilt on the next
+     * start. Tills share one checkout writer, so checkouts are committed one at a time; the
+     * cart is emptied once its payment is recorded.
+     * @param cart Items whose stock has already been deducted (a cart is paid for with the Cart overload)
      * @param discountRate The discount rate to apply (0.0 if no member discount)
+     * @param staffId The staff member taking the payment (0 if unknown)
+     * @param memberId The member the discount belongs to (0 if none)
      * @return PaymentResult containing all payment details
      */
-    public PaymentResult processPayment(double discountRate) {
-        List<Stock> cart = stockRepo.getCart();
-        
+    public PaymentResult processPayment(List<Stock> cart, double discountRate, int staffId, int memberId) {
+        return checkout(cart, null, discountRate, staffId, memberId);
+    }
+
+    /**
+     * Records the payment for the items as one checkout. If reservations are given they are
+     * committed under the checkout's order ID while holding the checkout writer, so the
+     * deductions are journaled against the ID before the sale is recorded; if the process
+     * stops in between, the next start finds them unsettled and gives the units back.
+     * @param reservations The reservations to turn into sales, or null if the stock has already been deducted
+     */
+    private PaymentResult checkout(List<Stock> cart, Collection<Reservation> reservations, double discountRate,
+                                   int staffId, int memberId) {
         if (cart.isEmpty()) {
             return null; // No items to pay for
         }
 
-        double subtotal = calculateSubtotal();
-        double discount = calculateDiscount(discountRate, subtotal);
-        double tax = calculateTax(subtotal, discount);
-        double total = subtotal - discount + tax;
+        long subtotal = calculateSubtotal(cart);
+        long discount = calculateDiscount(discountRate, subtotal);
+        long tax = calculateTax(subtotal, discount);
+        long total = subtotal - discount + tax;
 
-        // Write paid items to file
-        paidItemRepo.appendPaidItems(cart);
-
-        // Write transaction to file
-        transactionRepo.appendTransaction(subtotal, discount, tax, total);
+        String paidItemLines = paidItemRepo.formatPaidItems(cart);
+        String memberTier = findMemberTier(memberId);
+        long checkoutStart = System.nanoTime();
+        synchronized (checkoutWriter) {
+            // The ID is taken under the lock so orders are committed in ID order
+            long checkoutId;
+            try {
+                checkoutId = orderIds.next();
+            } catch (IllegalStateException e) {
+                LOGGER.log(Level.SEVERE, "Unable to allocate an order ID, payment not taken", e);
+                return null;
+            }
+            if (reservations != null && !stockRepo.commitReservations(reservations, StockJournal.REASON_SALE, checkoutId)) {
+                return null;
+            }
+            // Make sure every pending stock deduction is on disk before the sale is recorded
+            stockRepo.flush();
+            long timestamp = System.currentTimeMillis();
+            String transactionLine = transactionRepo.formatTransaction(checkoutId, timestamp,
+                    staffId, memberId, subtotal, discount, tax, total);
+            try {
+                checkoutWriter.write(checkoutId, paidItemLines, transactionLine);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Unable to record checkout, payment not taken", e);
+                if (reservations != null && returnStock(cart, checkoutId)) {
+                    stockRepo.endSale(checkoutId);
+                }
+                return null;
+            }
+            rollupRepo.recordCheckout(checkoutId, timestamp, staffId, memberTier,
+                    subtotal, discount, tax, total, cart);
+            checkoutWriter.commit(checkoutId);
+            if (reservations != null) {
+                stockRepo.endSale(checkoutId);
+            }
+        }
+        CHECKOUT_LATENCY.recordSince(checkoutStart);
 
         // Clear the cart after payment
-        stockRepo.clearCart();
+        cart.clear();
 
         return new PaymentResult(subtotal, discount, tax, total);
     }
 
+    // Returns the membership type of the member, or null if there is no such member
+    private String findMemberTier(int memberId) {
+        if (memberId == 0) {
+            return null;
+        }
+        Membership member = memberService.findMemberById(memberId);
+        return member == null ? null : member.getMemberType();
+    }
+
     /**
-     * Result object containing payment calculation details.
+     * Result object containing payment calculation details, in sen.
      */
     public static class PaymentResult {
-        private final double subtotal;
-        private final double discount;
-        private final double tax;
-        private final double total;
+        private final long subtotal;
+        private final long discount;
+        private final long tax;
+        private final long total;
 
-        public PaymentResult(double subtotal, double discount, double tax, double total) {
+        public PaymentResult(long subtotal, long discount, long tax, long total) {
             this.subtotal = subtotal;
             this.discount = discount;
             this.tax = tax;
             this.total = total;
         }
 
-        public double getSubtotal() {
+        public long getSubtotal() {
             return subtotal;
         }
 
-        public double getDiscount() {
+        public long getDiscount() {
             return discount;
         }
 
-        public double getTax() {
+        public long getTax() {
             return tax;
         }
 
-        public double getTotal() {
+        public long getTotal() {
             return total;
         }
     }
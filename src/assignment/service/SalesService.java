@@ -1,17 +1,41 @@
 package assignment.service;
 
+import assignment.model.Cart;
+import assignment.model.Reservation;
 import assignment.model.Stock;
 import assignment.repo.StockRepository;
+import assignment.util.LatencyHistogram;
+import assignment.util.Metrics;
 import java.util.List;
 
+/**
+ * Sales logic for one till (session). A till works on one cart at a time, chosen from the
+ * carts open across all tills (see CartSessionManager), and can switch between them so
+ * several orders can be open at once. The stock it sells from is shared with every other
+ * till through StockRepository: adding to a cart reserves the units atomically per product,
+ * and they are only deducted when the cart is paid for (see PaymentService).
+ */
 public class SalesService {
+    // Cart operations of every till, and how many were turned down (see Metrics)
+    private static final LatencyHistogram ADD_LATENCY = Metrics.histogram("sales.addToCart");
+    private static final LatencyHistogram REMOVE_LATENCY = Metrics.histogram("sales.removeOrder");
+    private static final LatencyHistogram EDIT_LATENCY = Metrics.histogram("sales.editOrderQuantity");
+    private static final Metrics.Counter ADD_FAILED = Metrics.counter("sales.addToCart.failed");
+    private static final Metrics.Counter REMOVE_FAILED = Metrics.counter("sales.removeOrder.failed");
+    private static final Metrics.Counter EDIT_FAILED = Metrics.counter("sales.editOrderQuantity.failed");
+
     private final StockRepository stockRepo;
-    // nextOrderNo should ideally be loaded from a file/persistence layer
-    // to ensure uniqueness across application restarts, but we initialize to 1 here.
-    private static int nextOrderNo = 1;
+    private final CartSessionManager sessions;
+    private Cart currentCart;
 
+    // A till working on the carts shared by every till
     public SalesService(StockRepository stockRepo) {
+        this(stockRepo, CartSessionManager.getInstance());
+    }
+
+    public SalesService(StockRepository stockRepo, CartSessionManager sessions) {
         this.stockRepo = stockRepo;
+        this.sessions = sessions;
         // Ensure stock is loaded into memory when service is initialized
         this.stockRepo.loadStockFromFile();
     }
@@ -20,90 +44,144 @@ public class SalesService {
         return stockRepo.getStocklist();
     }
 
+    /**
+     * Returns the cart this till is working on, opening a new one if there is none or the
+     * previous one has been paid for or expired.
+     */
+    public Cart getCurrentCart() {
+        if (currentCart == null || currentCart.isClosed()) {
+            currentCart = sessions.open(null);
+        }
+        return currentCart;
+    }
+
+    // True if the cart this till was working on was closed without being paid for here
+    public boolean isCurrentCartExpired() {
+        return currentCart != null && currentCart.isClosed();
+    }
+
+    public List<Cart> getOpenCarts() {
+        return sessions.getOpenCarts();
+    }
+
+    // Opens a new cart and makes it this till's current cart
+    public Cart openCart(String label) {
+        currentCart = sessions.open(label);
+        return currentCart;
+    }
+
+    /**
+     * Makes an open cart this till's current cart.
+     * @return false if there is no open cart with that id.
+     */
+    public boolean switchCart(long cartId) {
+        Cart cart = sessions.find(cartId);
+        if (cart == null) {
+            return false;
+        }
+        cart.touch();
+        stockRepo.extendReservations(cart.getReservations());
+        currentCart = cart;
+        return true;
+    }
+
+    // Forgets the current cart once it has been paid for
+    public void closeCurrentCart() {
+        if (currentCart != null) {
+            sessions.close(currentCart);
+            currentCart = null;
+        }
+    }
+
     public List<Stock> getCartItems() {
-        return stockRepo.getCart();
+        return getCurrentCart().getItems();
     }
 
     public Stock findStockItem(int itemID) {
-        for (Stock stock : stockRepo.getStocklist()) {
-            if (stock.getStockID() == itemID) {
-                return stock;
-            }
-        }
-        return null;
+        return stockRepo.findById(itemID);
     }
 
     public Stock findCartItemByOrderNo(int orderNo) {
-        // We iterate through the list as order numbers may not be sequential due to removals
-        for (Stock item : stockRepo.getCart()) {
-            if (item.getOrderNo() == orderNo) {
-                return item;
-            }
-        }
-        return null;
+        return getCurrentCart().findLine(orderNo);
     }
 
     /**
-     * Attempts to add an item to the cart, updating stock immediately.
+     * Attempts to add an item to the cart, reserving the quantity.
+     * The check for sufficient stock and the reservation happen as one step, so another till
+     * cannot take the same units in between. Nothing is deducted until payment.
      * @param itemID The ID of the product.
      * @param quantity The amount to order.
      * @return true if successful, false otherwise.
      */
     public boolean addToCart(int itemID, int quantity) {
+        long start = System.nanoTime();
+        boolean added = tryAddToCart(itemID, quantity);
+        ADD_LATENCY.recordSince(start);
+        if (!added) {
+            ADD_FAILED.increment();
+        }
+        return added;
+    }
+
+    private boolean tryAddToCart(int itemID, int quantity) {
         Stock foundStock = findStockItem(itemID);
+        Cart cart = getCurrentCart();
 
-        // Business Rule: Check for validity and sufficient stock
-        if (foundStock == null || foundStock.getQty() < quantity || quantity <= 0) {
+        // Business Rule: Check for validity and sufficient stock, and hold the quantity
+        Reservation reservation = foundStock == null ? null : stockRepo.reserve(foundStock, quantity);
+        if (reservation == null) {
             return false;
         }
 
-        // 1. Update stocklist (deduct quantity) - In-memory change
-        foundStock.setQty(foundStock.getQty() - quantity);
-
-        // 2. Add item to cart
-        Stock cartItem = new Stock(
-                nextOrderNo,
+        // Add item to cart
+        Stock cartItem = cart.addLine(
                 foundStock.getStockID(),
                 foundStock.getStockName(),
                 quantity,
-                foundStock.getPrice()
+                foundStock.getPriceCents(),
+                reservation
         );
-        stockRepo.getCart().add(cartItem);
-        nextOrderNo++;
-
-        // 3. Persist the stock change immediately
-        stockRepo.saveStockToFile();
+        if (cartItem == null) {
+            // The cart expired in the meantime, so give the units back
+            stockRepo.releaseReservation(reservation);
+            return false;
+        }
+        // Using the cart keeps the rest of its reservations alive
+        stockRepo.extendReservations(cart.getReservations());
 
         return true;
     }
 
     /**
-     * Removes an order from the cart and refunds the quantity back to the stock.
+     * Removes an order from the cart and releases its reserved quantity.
      * @param orderNoRemove The order number to remove.
      * @return true if successful, false otherwise.
      */
     public boolean removeOrder(int orderNoRemove) {
-        List<Stock> cart = stockRepo.getCart();
-        int indexToRemove = -1;
-
-        for (int i = 0; i < cart.size(); i++) {
-            if (cart.get(i).getOrderNo() == orderNoRemove) {
-                indexToRemove = i;
-                break;
-            }
+        long start = System.nanoTime();
+        boolean removed = tryRemoveOrder(orderNoRemove);
+        REMOVE_LATENCY.recordSince(start);
+        if (!removed) {
+            REMOVE_FAILED.increment();
         }
+        return removed;
+    }
 
-        if (indexToRemove != -1) {
-            Stock removedItem = cart.remove(indexToRemove);
+    private boolean tryRemoveOrder(int orderNoRemove) {
+        Cart cart = getCurrentCart();
+        Reservation reservation;
+        Stock removedItem;
+        synchronized (cart) {
+            reservation = cart.findReservation(orderNoRemove);
+            removedItem = cart.removeLine(orderNoRemove);
+        }
 
-            // Refund the stock quantity (Business Rule)
-            Stock stockItem = findStockItem(removedItem.getStockID());
-            if (stockItem != null) {
-                stockItem.setQty(stockItem.getQty() + removedItem.getQty());
+        if (removedItem != null) {
+            // Put the quantity back on sale (Business Rule)
+            if (reservation != null) {
+                stockRepo.releaseReservation(reservation);
             }
 
-            // Persist the refund change
-            stockRepo.saveStockToFile();
             return true;
         }
         return false;
@@ -117,35 +195,53 @@ public class SalesService {
      * @return true if successful, false otherwise.
      */
     public boolean editOrderQuantity(int orderNo, int quantityChange, int type) {
-        Stock cartItem = findCartItemByOrderNo(orderNo);
-        if (cartItem == null) return false;
+        long start = System.nanoTime();
+        boolean edited = tryEditOrderQuantity(orderNo, quantityChange, type);
+        EDIT_LATENCY.recordSince(start);
+        if (!edited) {
+            EDIT_FAILED.increment();
+        }
+        return edited;
+    }
 
-        Stock stockItem = findStockItem(cartItem.getStockID());
-        if (stockItem == null) return false;
+    private boolean tryEditOrderQuantity(int orderNo, int quantityChange, int type) {
+        Cart cart = getCurrentCart();
+        // Hold the cart so it cannot expire and release the line's reservation mid-edit
+        synchronized (cart) {
+            Stock cartItem = cart.findLine(orderNo);
+            Reservation reservation = cart.findReservation(orderNo);
+            if (cartItem == null || reservation == null) return false;
 
-        int currentCartQty = cartItem.getQty();
-        int availableStock = stockItem.getQty();
+            int currentCartQty = cartItem.getQty();
 
-        if (quantityChange <= 0) return false;
+            if (quantityChange <= 0) return false;
 
-        if (type == 1) { // Reduce Quantity
-            if (quantityChange > currentCartQty) return false; // Cannot reduce more than what's ordered
+            if (type == 1) { // Reduce Quantity
+                if (quantityChange > currentCartQty) return false; // Cannot reduce more than what's ordered
 
-            cartItem.setQty(currentCartQty - quantityChange);
-            stockItem.setQty(availableStock + quantityChange); // Refund stock
+                if (quantityChange == currentCartQty) {
+                    // Nothing left of the line, so it goes, giving its units back
+                    cart.removeLine(orderNo);
+                    stockRepo.releaseReservation(reservation);
+                } else {
+                    // Releases the difference; if the reservation had lapsed this holds the new quantity again
+                    if (!stockRepo.resizeReservation(reservation, currentCartQty - quantityChange)) return false;
+                    cartItem.setQty(currentCartQty - quantityChange);
+                }
 
-        } else if (type == 2) { // Add Quantity
-            if (quantityChange > availableStock) return false; // Insufficient stock
+            } else if (type == 2) { // Add Quantity
+                // Reserve more, failing if there is not enough left
+                if (!stockRepo.resizeReservation(reservation, currentCartQty + quantityChange)) return false;
 
-            cartItem.setQty(currentCartQty + quantityChange);
-            stockItem.setQty(availableStock - quantityChange); // Deduct stock
+                cartItem.setQty(currentCartQty + quantityChange);
 
-        } else {
-            return false; // Invalid type
-        }
+            } else {
+                return false; // Invalid type
+            }
 
-        // Persist the changes
-        stockRepo.saveStockToFile();
+            cart.touch();
+            stockRepo.extendReservations(cart.getReservations());
+        }
         return true;
     }
-}
\ No newline at end of file
+}
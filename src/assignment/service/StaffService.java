@@ -1,18 +1,20 @@
 package assignment.service;
 
 import assignment.model.Staff;
-import assignment.repo.StaffRepository;
+import assignment.repo.StaffStore;
+import assignment.util.LoginRateLimiter;
 import java.util.List;
 
 /**
  * Service layer for Staff domain.
- * Encapsulates business rules on top of StaffRepository.
+ * Encapsulates business rules on top of a StaffStore.
  */
 public class StaffService {
 
-    private final StaffRepository staffRepo;
+    private final StaffStore staffRepo;
+    private final LoginRateLimiter loginRateLimiter = new LoginRateLimiter();
 
-    public StaffService(StaffRepository staffRepo) {
+    public StaffService(StaffStore staffRepo) {
         this.staffRepo = staffRepo;
     }
 
@@ -94,9 +96,29 @@ public class StaffService {
     /**
      * Attempts to log in with given credentials.
      * Returns the Staff if found, otherwise null.
+     * After repeated failures the IC is locked out for a while (see LoginRateLimiter)
+     * and null is returned without checking the password.
      */
     public Staff login(String ic, String password) {
-        return staffRepo.findByCredentials(ic, password);
+        if (loginRateLimiter.getLockoutRemainingMillis(ic) > 0) {
+            return null; // Locked out: refused without checking the password
+        }
+        Staff staff = staffRepo.findByCredentials(ic, password);
+        if (staff == null) {
+            loginRateLimiter.recordFailure(ic);
+        } else {
+            loginRateLimiter.recordSuccess(ic);
+        }
+        return staff;
+    }
+
+    /**
+     * Returns how many seconds logins for the IC are still refused after repeated failures
+     * (0 if they are not).
+     */
+    public long getLoginLockoutSeconds(String ic) {
+        long millis = loginRateLimiter.getLockoutRemainingMillis(ic);
+        return (millis + 999) / 1000;
     }
 }
 
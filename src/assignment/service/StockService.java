@@ -1,6 +1,7 @@
 package assignment.service;
 
 import assignment.model.Stock;
+import assignment.repo.SequenceAllocator;
 import assignment.repo.StockRepository;
 import java.io.IOException;
 import java.util.List;
@@ -9,11 +10,15 @@ import java.util.logging.Logger;
 
 public class StockService {
     private final StockRepository stockRepo;
+    private final SequenceAllocator.Sequence stockIds;
     private static final Logger LOGGER = Logger.getLogger(StockService.class.getName());
 
     public StockService(StockRepository stockRepo) {
         this.stockRepo = stockRepo;
         this.stockRepo.loadStockFromFile(); // Ensure stock is loaded on service initialization
+        // The file is scanned once here; after that new IDs come from the sequence
+        this.stockIds = SequenceAllocator.getInstance()
+                .sequence(SequenceAllocator.STOCK, stockRepo.findLastStockID() + 1);
     }
 
     public List<Stock> getAvailableStock() {
@@ -21,16 +26,12 @@ public class StockService {
     }
 
     public Stock getStockByID(int id) {
-        for (Stock stock : stockRepo.getStocklist()) {
-            if (stock.getStockID() == id) {
-                return stock;
-            }
-        }
-        return null;
+        return stockRepo.findById(id);
     }
 
+    // The ID the next product added is expected to get, for display; does not use it up
     public int getNextStockID() {
-        return stockRepo.findLastStockID() + 1;
+        return (int) stockIds.peek();
     }
 
     public boolean isStockNameUnique(String stockName) {
@@ -44,7 +45,7 @@ public class StockService {
 
         try {
             // Set the correct ID before writing
-            newStock.setStockID(getNextStockID());
+            newStock.setStockID((int) stockIds.next());
             stockRepo.addStockToFile(newStock);
             return true;
         } catch (IOException e) {
@@ -0,0 +1,188 @@
+package assignment.util;
+
+import java.util.Arrays;
+
+/**
+ * Splits a delimited line (tab-separated by default) into fields by recording where each
+ * field starts and ends, and parses fields in place. Unlike line.split("\t") followed by
+ * Integer.parseInt, no String[] or substrings are created; only getString() allocates.
+ *
+ * One tokenizer is reused for every line of a file:
+ *
+ *   FieldTokenizer fields = new FieldTokenizer();
+ *   while ((line = reader.readLine()) != null) {
+ *       if (fields.reset(line).fieldCount() >= 4) {
+ *           int id = fields.getInt(0);
+ *           ...
+ *
+ * Fields follow String.split rules, so existing "parts.length" checks carry over: trailing
+ * empty fields (the files end every line with a tab) are not counted. A blank line has no
+ * fields. A tokenizer is not thread-safe; use one per reading loop.
+ */
+public final class FieldTokenizer {
+    private static final int INITIAL_FIELDS = 8;
+    // Powers of ten that are exact doubles, for the fast decimal path of getDouble
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final char delimiter;
+    private CharSequence line = "";
+    private int[] starts = new int[INITIAL_FIELDS];
+    private int[] ends = new int[INITIAL_FIELDS];
+    private int fieldCount = 0;
+
+    public FieldTokenizer() {
+        this('\t');
+    }
+
+    public FieldTokenizer(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Tokenizes a whole line. Returns this tokenizer so calls can be chained.
+     */
+    public FieldTokenizer reset(CharSequence line) {
+        return reset(line, 0, line.length());
+    }
+
+    /**
+     * Tokenizes part of a line, e.g. a comma-separated list held in one field
+     * (see start() and end()).
+     */
+    public FieldTokenizer reset(CharSequence line, int from, int to) {
+        this.line = line;
+        fieldCount = 0;
+        if (from >= to) {
+            return this;
+        }
+        int fieldStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || line.charAt(i) == delimiter) {
+                if (fieldCount == starts.length) {
+                    starts = Arrays.copyOf(starts, fieldCount * 2);
+                    ends = Arrays.copyOf(ends, fieldCount * 2);
+                }
+                starts[fieldCount] = fieldStart;
+                ends[fieldCount] = i;
+                fieldCount++;
+                fieldStart = i + 1;
+            }
+        }
+        while (fieldCount > 0 && starts[fieldCount - 1] == ends[fieldCount - 1]) {
+            fieldCount--;
+        }
+        return this;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    // Index in the line where the field starts
+    public int start(int field) {
+        return starts[check(field)];
+    }
+
+    // Index in the line just after the field ends
+    public int end(int field) {
+        return ends[check(field)];
+    }
+
+    public boolean isEmpty(int field) {
+        return starts[check(field)] == ends[field];
+    }
+
+    // Compares a field with a string without extracting it
+    public boolean fieldEquals(int field, String value) {
+        int start = starts[check(field)];
+        int length = ends[field] - start;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @throws NumberFormatException if the field is not an int
+     */
+    public int getInt(int field) {
+        return Integer.parseInt(line, starts[check(field)], ends[field], 10);
+    }
+
+    /**
+     * @throws NumberFormatException if the field is not a long
+     */
+    public long getLong(int field) {
+        return Long.parseLong(line, starts[check(field)], ends[field], 10);
+    }
+
+    /**
+     * Parses an amount field into sen (see Money.parse).
+     * @throws NumberFormatException if the field is not a decimal number
+     */
+    public long getCents(int field) {
+        return Money.parse(line, starts[check(field)], ends[field]);
+    }
+
+    /**
+     * Parses a decimal field such as "3500.0" as a double. Plain decimals of up to 15
+     * significant digits are converted exactly in place; anything else (exponents, NaN,
+     * longer values) falls back to Double.parseDouble.
+     * @throws NumberFormatException if the field is not a number
+     */
+    public double getDouble(int field) {
+        int start = starts[check(field)];
+        int end = ends[field];
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (c >= '0' && c <= '9' && mantissa < MAX_EXACT_MANTISSA / 10) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else {
+                return Double.parseDouble(getString(field));
+            }
+        }
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(getString(field));
+        }
+        // Both values are exact doubles, so one division gives the correctly rounded result
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    // Copies the field out as a String; the only accessor that allocates
+    public String getString(int field) {
+        return line.subSequence(starts[check(field)], ends[field]).toString();
+    }
+
+    private int check(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + field + " of a line with " + fieldCount + " fields");
+        }
+        return field;
+    }
+}
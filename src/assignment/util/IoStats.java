@@ -0,0 +1,47 @@
+package assignment.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how many times each data file is opened for writing.
+ * Repositories call recordOpen() whenever they open a file handle, so benchmarks and
+ * diagnostics can report file opens per operation (e.g. per checkout).
+ */
+public class IoStats {
+    private static final Map<String, LongAdder> opensByFile = new ConcurrentHashMap<>();
+
+    private IoStats() {
+        // prevent instantiation
+    }
+
+    public static void recordOpen(String filePath) {
+        opensByFile.computeIfAbsent(filePath, k -> new LongAdder()).increment();
+    }
+
+    public static long getOpenCount(String filePath) {
+        LongAdder count = opensByFile.get(filePath);
+        return count == null ? 0 : count.sum();
+    }
+
+    public static long getTotalOpens() {
+        long total = 0;
+        for (LongAdder count : opensByFile.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    // Returns a sorted copy of the open counts per file
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> copy = new TreeMap<>();
+        opensByFile.forEach((file, count) -> copy.put(file, count.sum()));
+        return copy;
+    }
+
+    public static void reset() {
+        opensByFile.clear();
+    }
+}
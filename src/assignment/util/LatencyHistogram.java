@@ -0,0 +1,161 @@
+package assignment.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram in the style of HdrHistogram: fixed log-linear buckets covering every
+ * long value, with SUB_BUCKETS buckets per power of two, so any recorded value is reported
+ * within about 3% of what it was. Recording is one array increment plus a sum and a max
+ * update, with no allocation and no lock, so it is cheap enough for every call of a hot path
+ * and safe from any number of threads.
+ *
+ * Readers see each bucket as of the moment they read it; a snapshot taken while values are
+ * being recorded may be a few values out between its count and its percentiles.
+ *
+ *   long start = System.nanoTime();
+ *   ...
+ *   histogram.recordSince(start);
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS get a bucket each, then SUB_BUCKETS per power of two up to 2^63
+    private static final int BUCKET_COUNT = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records a latency in nanoseconds; negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // another thread raised the max in between; try again
+        }
+    }
+
+    // Records the time since start, a System.nanoTime() reading
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns a copy of the histogram as it is now, for reporting.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, total.get(), max.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        // The top bit is implied by the exponent; the next SUB_BUCKET_BITS pick the bucket
+        return SUB_BUCKETS * (shift + 1) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // The smallest value that falls in the bucket
+    static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    // The number of values that fall in the bucket
+    static long widthOf(int bucket) {
+        return bucket < SUB_BUCKETS ? 1 : 1L << (bucket / SUB_BUCKETS - 1);
+    }
+
+    /**
+     * A histogram's counts at one moment. Values are in nanoseconds.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Returns the value at the percentile (0 to 100): the middle of the bucket holding it,
+         * capped at the largest value recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100.0) / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(max, lowestValueOf(i) + (widthOf(i) - 1) / 2);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package assignment.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory limit on failed logins per IC.
+ * After "login.maxFailures" consecutive failures (default 5) the IC is locked out for
+ * "login.lockoutMs" milliseconds (default 60000), during which logins are refused without
+ * checking the password. Each further failure after a lockout starts a new one; a
+ * successful login clears the count, and so does "login.failureWindowMs" milliseconds
+ * (default 900000) without a failure. Only ICs whose count has cleared this way are ever
+ * dropped to keep the map small, so an attacker cannot reset an IC by guessing others.
+ */
+public class LoginRateLimiter {
+    public static final int MAX_FAILURES = Integer.getInteger("login.maxFailures", 5);
+    public static final long LOCKOUT_MILLIS = Long.getLong("login.lockoutMs", 60_000L);
+    public static final long FAILURE_WINDOW_MILLIS = Long.getLong("login.failureWindowMs", 15 * 60_000L);
+    private static final int SWEEP_THRESHOLD = 1024;
+
+    private static class Attempts {
+        private int failures;
+        private long lastFailure;
+        private long lockedUntil;
+
+        // True once the IC is neither locked out nor has a failure within the window
+        private boolean isExpired(long now) {
+            return lockedUntil <= now && now - lastFailure >= FAILURE_WINDOW_MILLIS;
+        }
+    }
+
+    private final Map<String, Attempts> attemptsByIc = new ConcurrentHashMap<>();
+    // Map size at which the next sweep runs; raised when a sweep frees little, so a map full
+    // of live counts is not swept on every failure
+    private volatile int nextSweepSize = SWEEP_THRESHOLD;
+
+    /**
+     * Returns how many milliseconds the IC is still locked out for, or 0 if it is not.
+     */
+    public long getLockoutRemainingMillis(String ic) {
+        Attempts attempts = attemptsByIc.get(ic);
+        if (attempts == null) {
+            return 0;
+        }
+        synchronized (attempts) {
+            return Math.max(0, attempts.lockedUntil - System.currentTimeMillis());
+        }
+    }
+
+    public void recordFailure(String ic) {
+        if (attemptsByIc.size() >= nextSweepSize) {
+            sweepExpired();
+        }
+        Attempts attempts = attemptsByIc.computeIfAbsent(ic, k -> new Attempts());
+        synchronized (attempts) {
+            long now = System.currentTimeMillis();
+            if (attempts.isExpired(now)) {
+                attempts.failures = 0;
+            }
+            attempts.failures++;
+            attempts.lastFailure = now;
+            if (attempts.failures >= MAX_FAILURES) {
+                attempts.lockedUntil = now + LOCKOUT_MILLIS;
+            }
+        }
+    }
+
+    public void recordSuccess(String ic) {
+        attemptsByIc.remove(ic);
+    }
+
+    // Drops ICs whose failures have expired, so guessing many ICs cannot grow the map without
+    // bound; a live count is never dropped
+    private synchronized void sweepExpired() {
+        if (attemptsByIc.size() < nextSweepSize) {
+            return; // another thread has just swept
+        }
+        long now = System.currentTimeMillis();
+        Iterator<Attempts> it = attemptsByIc.values().iterator();
+        while (it.hasNext()) {
+            Attempts attempts = it.next();
+            synchronized (attempts) {
+                if (attempts.isExpired(now)) {
+                    it.remove();
+                }
+            }
+        }
+        nextSweepSize = Math.max(SWEEP_THRESHOLD, attemptsByIc.size() * 2);
+    }
+}
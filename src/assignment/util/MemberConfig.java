@@ -9,6 +9,10 @@ public class MemberConfig {
     public static final String MEMBER_FILE_PATH = "members.txt";
     public static final String TEMP_DELETE_FILE_PATH = "dltTemp.txt";
     
+    // ================== MEMBER ID CONFIG ==================
+    // Lowest ID issued to a new member; after that IDs follow the highest one in use (see MemberRepository)
+    public static final int FIRST_MEMBER_ID = 100;
+
     // ================== UI LABELS / TITLES ==================
     public static final String TITLE_MEMBER_SYSTEM = "[ MEMBER MANAGEMENT SYSTEM ]";
     public static final String TITLE_VIEW_MEMBERS  = "[ VIEW ALL MEMBERS ]";
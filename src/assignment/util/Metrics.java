@@ -0,0 +1,162 @@
+package assignment.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the program's operational metrics: counters, gauges, and latency histograms
+ * (see LatencyHistogram), each under a dotted name such as "payment.processPayment".
+ *
+ * A metric is looked up once, typically into a static final field of the class it measures,
+ * and then updated directly, so recording never touches the registry and never allocates:
+ *
+ *   private static final LatencyHistogram LOAD_LATENCY = Metrics.histogram("stock.load");
+ *   ...
+ *   long start = System.nanoTime();
+ *   try { ... } finally { LOAD_LATENCY.recordSince(start); }
+ *
+ * dump() formats every metric for the SYSTEM METRICS menu; startSnapshots() also writes
+ * that text to a file at a fixed interval (see MetricsConfig).
+ */
+public class Metrics {
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService snapshotWriter;
+
+    private Metrics() {
+        // prevent instantiation
+    }
+
+    /**
+     * A count that only goes up, such as failed logins.
+     */
+    public static class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    // Returns the counter with this name, creating it on first use
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    // Returns the histogram with this name, creating it on first use
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    /**
+     * Registers a gauge: a value read only when the metrics are reported, such as the number
+     * of open carts. A later gauge with the same name replaces the earlier one.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Formats every metric, sorted by name: counters and gauges with their value, histograms
+     * with their count, mean, percentiles and max in microseconds.
+     */
+    public static String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append("METRICS AT ").append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
+                .append('\n');
+
+        text.append("\nCOUNTERS AND GAUGES\n");
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.get()));
+        gauges.forEach((name, gauge) -> {
+            try {
+                values.put(name, gauge.getAsLong());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error reading gauge " + name, e);
+            }
+        });
+        for (Map.Entry<String, Long> value : values.entrySet()) {
+            text.append(String.format(Locale.ROOT, "%-36s %14d%n", value.getKey(), value.getValue()));
+        }
+
+        text.append("\nLATENCY (us)\n");
+        text.append(String.format(Locale.ROOT, "%-36s %10s %10s %10s %10s %10s %10s%n",
+                "OPERATION", "COUNT", "MEAN", "P50", "P99", "P999", "MAX"));
+        for (LatencyHistogram histogram : new TreeMap<>(histograms).values()) {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            text.append(String.format(Locale.ROOT, "%-36s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    histogram.getName(), snapshot.getCount(), snapshot.getMean() / 1000.0,
+                    snapshot.getValueAtPercentile(50) / 1000.0, snapshot.getValueAtPercentile(99) / 1000.0,
+                    snapshot.getValueAtPercentile(99.9) / 1000.0, snapshot.getMax() / 1000.0));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes dump() to the file now, replacing it in one step so a reader never sees half of it.
+     */
+    public static void writeSnapshot(String filePath) throws IOException {
+        File file = new File(filePath);
+        File tempFile = new File(filePath + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+            writer.write(dump());
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Starts writing a snapshot to the file every intervalMs milliseconds, on a daemon thread,
+     * and once more at shutdown. Does nothing if snapshots are already being written or the
+     * interval is not positive.
+     */
+    public static synchronized void startSnapshots(String filePath, long intervalMs) {
+        if (snapshotWriter != null || intervalMs <= 0) {
+            return;
+        }
+        snapshotWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotWriter.scheduleWithFixedDelay(() -> writeSnapshotQuietly(filePath),
+                intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> writeSnapshotQuietly(filePath), "metrics-final-snapshot"));
+    }
+
+    private static void writeSnapshotQuietly(String filePath) {
+        try {
+            writeSnapshot(filePath);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Error writing metrics snapshot to " + filePath, e);
+        }
+    }
+}
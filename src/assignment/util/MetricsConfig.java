@@ -0,0 +1,15 @@
+package assignment.util;
+
+public class MetricsConfig {
+    private MetricsConfig() {
+        // prevent instantiation
+    }
+
+    // ================== METRICS SNAPSHOT CONFIG ==================
+    // The metrics (see Metrics) are written to this file at a fixed interval, replacing the
+    // previous snapshot, and once more when the program exits.
+    // Each value can be overridden with a -D system property at startup.
+    public static final String SNAPSHOT_FILE_PATH = System.getProperty("metrics.snapshotFile", "metrics.txt");
+    // Milliseconds between snapshots; 0 turns them off
+    public static final long SNAPSHOT_INTERVAL_MS = Long.getLong("metrics.snapshotIntervalMs", 60 * 1000L);
+}
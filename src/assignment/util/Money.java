@@ -0,0 +1,237 @@
+package assignment.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed-point money helpers. Amounts are held as a primitive long number of sen (cents),
+ * so adding up prices and totals is exact and allocates nothing.
+ *
+ * Rates (tax, discounts) are expressed in basis points (1/100 of a percent) and applied
+ * with half-up rounding to the nearest sen. Files store amounts with exactly two decimals;
+ * parse() also accepts the older double-formatted values (e.g. "2.4299999999999997") and
+ * rounds them half-up, which is how existing files are migrated on read.
+ */
+public class Money {
+    public static final long ZERO = 0L;
+    public static final long BASIS_POINTS_PER_UNIT = 10_000L;
+
+    private Money() {
+        // prevent instantiation
+    }
+
+    /**
+     * Parses a decimal amount such as "12", "12.5", "12.50" or "12.499999" into sen,
+     * rounding half-up on the third decimal.
+     * @throws NumberFormatException if the text is not a decimal number
+     */
+    public static long parse(String text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses the amount between two indexes of a line without copying it out
+     * (see FieldTokenizer). Surrounding spaces are ignored.
+     * @throws NumberFormatException if the text is not a decimal number
+     */
+    public static long parse(CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        for (int j = start; j < end; j++) {
+            char c = text.charAt(j);
+            if (c == 'e' || c == 'E') {
+                // Scientific notation only ever comes from Double.toString of very small/large values
+                return fromDouble(Double.parseDouble(text.subSequence(start, end).toString()));
+            }
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int unitDigits = 0;
+        for (; i < end && text.charAt(i) != '.'; i++) {
+            units = Math.addExact(Math.multiplyExact(units, 10), digit(text, i, start, end));
+            unitDigits++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end) {
+            i++; // skip the decimal point
+            for (; i < end; i++) {
+                int d = digit(text, i, start, end);
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + d;
+                } else if (fractionDigits == 2) {
+                    roundUp = d >= 5;
+                }
+                fractionDigits++;
+            }
+        }
+        if (unitDigits == 0 && fractionDigits == 0) {
+            throw notAnAmount(text, start, end);
+        }
+        return toCents(negative, units, fraction, fractionDigits, roundUp);
+    }
+
+    /**
+     * Parses the amount held in bytes start to end of a buffer (such as a memory-mapped
+     * file, see MappedLogReader) without copying it out. Amounts are ASCII, so each byte is
+     * read as one character; the rules are those of parse(CharSequence, int, int).
+     * @throws NumberFormatException if the bytes are not a decimal number
+     */
+    public static long parse(ByteBuffer bytes, int start, int end) {
+        while (start < end && Character.isWhitespace(charAt(bytes, start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(charAt(bytes, end - 1))) {
+            end--;
+        }
+        for (int j = start; j < end; j++) {
+            char c = charAt(bytes, j);
+            if (c == 'e' || c == 'E') {
+                return fromDouble(Double.parseDouble(text(bytes, start, end)));
+            }
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (charAt(bytes, i) == '-' || charAt(bytes, i) == '+')) {
+            negative = charAt(bytes, i) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int unitDigits = 0;
+        for (; i < end && charAt(bytes, i) != '.'; i++) {
+            units = Math.addExact(Math.multiplyExact(units, 10), digit(bytes, i, start, end));
+            unitDigits++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end) {
+            i++; // skip the decimal point
+            for (; i < end; i++) {
+                int d = digit(bytes, i, start, end);
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + d;
+                } else if (fractionDigits == 2) {
+                    roundUp = d >= 5;
+                }
+                fractionDigits++;
+            }
+        }
+        if (unitDigits == 0 && fractionDigits == 0) {
+            throw notAnAmount(text(bytes, start, end), 0, end - start);
+        }
+        return toCents(negative, units, fraction, fractionDigits, roundUp);
+    }
+
+    // Combines the parsed parts of an amount into sen, rounding half-up on the third decimal
+    private static long toCents(boolean negative, long units, long fraction, int fractionDigits, boolean roundUp) {
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+        long cents = Math.addExact(Math.multiplyExact(units, 100), fraction + (roundUp ? 1 : 0));
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Converts a double amount (e.g. typed by a user) to sen, rounding half-up.
+     * Uses the shortest decimal form of the double, so 2.675 becomes 268 rather than 267.
+     */
+    public static long fromDouble(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new NumberFormatException("Not an amount: " + amount);
+        }
+        String text = Double.toString(amount);
+        if (text.indexOf('E') >= 0) {
+            return Math.round(amount * 100);
+        }
+        return parse(text);
+    }
+
+    /**
+     * Formats sen as a plain amount with exactly two decimals, e.g. 1250 -> "12.50".
+     */
+    public static String format(long cents) {
+        StringBuilder sb = new StringBuilder(12);
+        if (cents < 0) {
+            sb.append('-');
+        }
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        sb.append(abs / 100).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction).toString();
+    }
+
+    // Price times quantity, failing instead of overflowing
+    public static long multiply(long cents, long quantity) {
+        return Math.multiplyExact(cents, quantity);
+    }
+
+    /**
+     * Applies a rate in basis points (600 = 6%) to an amount, rounding half-up to the nearest sen.
+     */
+    public static long applyRate(long cents, long basisPoints) {
+        long product = Math.multiplyExact(cents, basisPoints);
+        long result = product / BASIS_POINTS_PER_UNIT;
+        long remainder = Math.abs(product % BASIS_POINTS_PER_UNIT);
+        if (remainder * 2 >= BASIS_POINTS_PER_UNIT) {
+            result += Long.signum(product);
+        }
+        return result;
+    }
+
+    // Converts a fractional rate (0.1 = 10%) to basis points
+    public static long rateToBasisPoints(double rate) {
+        return Math.round(rate * BASIS_POINTS_PER_UNIT);
+    }
+
+    // The byte at an absolute index of a buffer, read as a character
+    private static char charAt(ByteBuffer bytes, int index) {
+        return (char) (bytes.get(index) & 0xFF);
+    }
+
+    // Copies bytes out as a String; only for the rare scientific-notation amounts and for errors
+    private static String text(ByteBuffer bytes, int start, int end) {
+        byte[] copy = new byte[end - start];
+        bytes.get(start, copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    private static int digit(ByteBuffer bytes, int index, int start, int end) {
+        char c = charAt(bytes, index);
+        if (c < '0' || c > '9') {
+            throw notAnAmount(text(bytes, start, end), 0, end - start);
+        }
+        return c - '0';
+    }
+
+    private static int digit(CharSequence text, int index, int start, int end) {
+        char c = text.charAt(index);
+        if (c < '0' || c > '9') {
+            throw notAnAmount(text, start, end);
+        }
+        return c - '0';
+    }
+
+    private static NumberFormatException notAnAmount(CharSequence text, int start, int end) {
+        return new NumberFormatException("Not an amount: \"" + text.subSequence(start, end) + "\"");
+    }
+}
@@ -0,0 +1,186 @@
+package assignment.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Salted password hashing for staff credentials.
+ *
+ * Stored format: pbkdf2$iterations$salt$hash  (salt and hash Base64, PBKDF2WithHmacSHA256)
+ * The iteration count is the cost factor; it is read from the system property
+ * "staff.password.iterations" (see PasswordHashBenchmark for choosing a value) and stored
+ * with each hash, so raising it only affects new hashes and needsRehash() reports old ones.
+ *
+ * Passwords from files written before hashing are stored as plain text; verify() still
+ * accepts them so they can be migrated (see PasswordMigration and StaffRepository).
+ *
+ * Successful verifications are remembered as an HMAC of the password under a random key
+ * that only lives in this process, so repeated logins by the same staff member skip the
+ * expensive derivation. The cache is keyed by the stored hash and never reaches disk.
+ */
+public class PasswordHasher {
+    public static final String ALGORITHM_PREFIX = "pbkdf2";
+    public static final int DEFAULT_ITERATIONS = 210_000;
+    public static final int ITERATIONS = Integer.getInteger("staff.password.iterations", DEFAULT_ITERATIONS);
+
+    private static final String KEY_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String CACHE_MAC_ALGORITHM = "HmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int MAX_CACHED_VERIFIERS = 10_000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final byte[] CACHE_KEY = newCacheKey();
+    private static final Map<String, byte[]> verifiedCache = new ConcurrentHashMap<>();
+    // Random salt and hash that no password derives to, for verifyNothing()
+    private static final byte[] DUMMY_SALT = randomBytes(SALT_BYTES);
+    private static final byte[] DUMMY_HASH = randomBytes(HASH_BITS / 8);
+
+    private PasswordHasher() {
+        // prevent instantiation
+    }
+
+    /**
+     * Hashes a password with a new random salt and the configured iteration count.
+     */
+    public static String hash(String password) {
+        return hash(password, ITERATIONS);
+    }
+
+    public static String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = derive(password, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        String stored = ALGORITHM_PREFIX + "$" + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+        // The password is known to match, so the next login with it can skip the derivation
+        remember(stored, cacheVerifier(password));
+        return stored;
+    }
+
+    // Returns the value to store for a password: hashed if it is not hashed already
+    public static String toStored(String password) {
+        return isHashed(password) ? password : hash(password);
+    }
+
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(ALGORITHM_PREFIX + "$");
+    }
+
+    /**
+     * Returns true if the stored value is plain text or hashed with fewer iterations than configured.
+     */
+    public static boolean needsRehash(String stored) {
+        if (!isHashed(stored)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Checks a password against a stored value (hashed or, for old records, plain text).
+     */
+    public static boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+
+        byte[] verifier = cacheVerifier(password);
+        byte[] cached = verifiedCache.get(stored);
+        if (cached != null && MessageDigest.isEqual(cached, verifier)) {
+            return true;
+        }
+
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        boolean matches;
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] salt = decoder.decode(parts[2]);
+            byte[] expected = decoder.decode(parts[3]);
+            matches = MessageDigest.isEqual(expected, derive(password, salt, Integer.parseInt(parts[1])));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        if (matches) {
+            remember(stored, verifier);
+        }
+        return matches;
+    }
+
+    /**
+     * Spends as long as verify() against a hash of the configured cost, without anything to
+     * match. Used when a login names no staff member, so the time taken does not tell which
+     * ICs are registered.
+     */
+    public static void verifyNothing(String password) {
+        if (password == null) {
+            return;
+        }
+        // Never remembered, so this always pays for the full derivation like a wrong password does
+        MessageDigest.isEqual(DUMMY_HASH, derive(password, DUMMY_SALT, ITERATIONS));
+    }
+
+    private static void remember(String stored, byte[] verifier) {
+        if (verifiedCache.size() >= MAX_CACHED_VERIFIERS) {
+            verifiedCache.clear();
+        }
+        verifiedCache.put(stored, verifier);
+    }
+
+    // Forgets every cached verification (e.g. for benchmarks measuring the full derivation)
+    public static void clearCache() {
+        verifiedCache.clear();
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(KEY_ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(KEY_ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] cacheVerifier(String password) {
+        try {
+            Mac mac = Mac.getInstance(CACHE_MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(CACHE_KEY, CACHE_MAC_ALGORITHM));
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(CACHE_MAC_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static byte[] newCacheKey() {
+        return randomBytes(32);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+}
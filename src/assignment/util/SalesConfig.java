@@ -0,0 +1,18 @@
+package assignment.util;
+
+public class SalesConfig {
+    private SalesConfig() {
+        // prevent instantiation
+    }
+
+    // ================== CART SESSION CONFIG ==================
+    // Label given to the cart a till opens when none has been chosen
+    public static final String DEFAULT_CART_LABEL = "WALK-IN";
+    // A cart left untouched this long is abandoned: it is closed and its stock goes back on sale.
+    // Each value can be overridden with a -D system property at startup.
+    public static final long CART_IDLE_TIMEOUT_MS =
+            Long.getLong("sales.cart.idleTimeoutMs", 30 * 60 * 1000L);
+    // How often the session manager looks for abandoned carts (milliseconds)
+    public static final long CART_SWEEP_INTERVAL_MS =
+            Long.getLong("sales.cart.sweepIntervalMs", 60 * 1000L);
+}
@@ -0,0 +1,52 @@
+package assignment.util;
+
+public class StockConfig {
+    private StockConfig() {
+        // prevent instantiation
+    }
+
+    // ================== FILE & PATH CONFIG ==================
+    public static final String STOCK_FILE_PATH = "stock.txt";
+    public static final String TEMP_UPDATE_FILE_PATH = "stkUpdateTemp.txt";
+    // Append-only log of quantity movements; stock.txt is the snapshot it is compacted into
+    public static final String STOCK_JOURNAL_FILE_PATH = "stock.journal";
+    // Every compacted journal record ends up here as a permanent audit trail
+    public static final String STOCK_AUDIT_FILE_PATH = "stock_audit.txt";
+    // Fixed-width records and product names of the binary stock store (see BinaryStockStore)
+    public static final String STOCK_BINARY_FILE_PATH = "stock.bin";
+    public static final String STOCK_NAMES_FILE_PATH = "stock.names";
+
+    // ================== BACKEND CONFIG ==================
+    // "text" keeps stock in stock.txt with the quantity journal; "binary" keeps it in stock.bin,
+    // where a quantity change is written in place and no journal or audit trail is kept.
+    // Convert between the two with StockStoreTool while the program is stopped.
+    // "embedded" keeps it in the database file shared with the other repositories (see
+    // StoreConfig) and is the default when -Drepo.backend=embedded.
+    public static final String BACKEND_TEXT = "text";
+    public static final String BACKEND_BINARY = "binary";
+    public static final String BACKEND_EMBEDDED = "embedded";
+    public static final String STOCK_BACKEND = System.getProperty("stock.backend",
+            StoreConfig.isEmbedded() ? BACKEND_EMBEDDED : BACKEND_TEXT);
+
+    // ================== WRITE-BEHIND CONFIG ==================
+    // When enabled, stock changes are journaled and marked dirty, and a background thread
+    // compacts them into stock.txt in batches instead of rewriting the file on every cart change.
+    // Each value can be overridden with a -D system property at startup.
+    public static final boolean WRITE_BEHIND_ENABLED =
+            Boolean.parseBoolean(System.getProperty("stock.writeBehind", "true"));
+    // How often the background thread compacts dirty rows (milliseconds)
+    public static final long WRITE_BEHIND_INTERVAL_MS =
+            Long.getLong("stock.writeBehind.intervalMs", 2000L);
+    // Number of dirty rows that triggers an early compaction without waiting for the interval
+    public static final int WRITE_BEHIND_MAX_DIRTY =
+            Integer.getInteger("stock.writeBehind.maxDirty", 32);
+
+    // ================== RESERVATION CONFIG ==================
+    // Adding an item to a cart only reserves it; the units leave stock when the cart is paid for.
+    // A reservation not used for this long is released so the units go back on sale.
+    public static final long RESERVATION_TTL_MS =
+            Long.getLong("stock.reservation.ttlMs", 15 * 60 * 1000L);
+    // How often the background reaper releases expired reservations (milliseconds)
+    public static final long RESERVATION_REAP_INTERVAL_MS =
+            Long.getLong("stock.reservation.reapIntervalMs", 30 * 1000L);
+}
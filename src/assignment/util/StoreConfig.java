@@ -0,0 +1,44 @@
+package assignment.util;
+
+public class StoreConfig {
+    private StoreConfig() {
+        // prevent instantiation
+    }
+
+    // ================== BACKEND CONFIG ==================
+    // "file" keeps members, staff, transactions and paid items in their .txt files; "embedded"
+    // keeps them in one database file (see EmbeddedStore), with stock following unless
+    // -Dstock.backend says otherwise. Copy the .txt data across with StoreMigration first.
+    public static final String BACKEND_FILE = "file";
+    public static final String BACKEND_EMBEDDED = "embedded";
+    public static final String REPOSITORY_BACKEND = System.getProperty("repo.backend", BACKEND_FILE);
+
+    // ================== EMBEDDED STORE CONFIG ==================
+    public static final String EMBEDDED_FILE_PATH = "tarcafe.db";
+    // The file is compacted once this share of it is overwritten or deleted rows ...
+    public static final double EMBEDDED_COMPACT_DEAD_RATIO =
+            Double.parseDouble(System.getProperty("repo.embedded.compactRatio", "0.5"));
+    // ... and it is at least this large (bytes), so small files are left alone
+    public static final long EMBEDDED_COMPACT_MIN_BYTES =
+            Long.getLong("repo.embedded.compactMinBytes", 1024 * 1024L);
+
+    // ================== FLAT FILE CONFIG ==================
+    // members.txt, staff.txt and stock.txt are rewritten without their deleted rows once this
+    // share of the file is tombstones (see TombstoneFile) ...
+    public static final double TOMBSTONE_COMPACT_DEAD_RATIO =
+            Double.parseDouble(System.getProperty("repo.file.compactRatio", "0.3"));
+    // ... and it is at least this large (bytes)
+    public static final long TOMBSTONE_COMPACT_MIN_BYTES =
+            Long.getLong("repo.file.compactMinBytes", 4096L);
+
+    // ================== ROLLUP CONFIG ==================
+    // Each checkout appends its changes to rollups.txt (see RollupRepository); the file is
+    // rewritten with the summed buckets after this many checkouts ...
+    public static final int ROLLUP_COMPACT_EVERY = Integer.getInteger("repo.rollup.compactEvery", 1000);
+    // ... dropping hour buckets older than this many days (the day buckets keep their totals)
+    public static final int ROLLUP_HOUR_RETENTION_DAYS = Integer.getInteger("repo.rollup.hourRetentionDays", 7);
+
+    public static boolean isEmbedded() {
+        return BACKEND_EMBEDDED.equals(REPOSITORY_BACKEND);
+    }
+}
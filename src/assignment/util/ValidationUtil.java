@@ -20,7 +20,8 @@ public class ValidationUtil {
             return null;
         }
 
-        if(length != input.length()){
+        // A length of 0 accepts any number of digits
+        if(length > 0 && length != input.length()){
             System.out.println("THE INPUT LENGTH MUST BE IN " + length + " DIGITS!!\n");
             return null;
         }
@@ -6,8 +6,13 @@ import assignment.enums.OrderMenu;
 import assignment.enums.SalesMenu;
 import assignment.enums.StockMenu;
 import assignment.model.Staff;
+import assignment.repo.RollupRepository;
+import assignment.repo.StockRepository;
 import assignment.repo.TransactionRepository;
-import java.util.List;
+import assignment.util.Money;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 /**
  * View class for Main application entry and global menus.
@@ -68,46 +73,135 @@ public class MainView {
         System.out.println("-------------------------------------------------------");
     }
 
-    public void printTransactionReport(List<TransactionRepository.Transaction> transactions) {
+    /**
+     * Prints the sales summary from the rollup buckets, one table per breakdown.
+     */
+    public void printSalesSummary(RollupRepository.Bucket grandTotal,
+                                  Map<String, RollupRepository.Bucket> recentHours,
+                                  Map<String, RollupRepository.Bucket> byDay,
+                                  Map<String, RollupRepository.Bucket> byStaff,
+                                  Map<String, RollupRepository.Bucket> byTier,
+                                  Map<String, RollupRepository.Bucket> bySku) {
+        System.out.println("[ SALES SUMMARY ]");
+        System.out.println("-------------------------------------------------------");
+        System.out.println("TOTAL TRANSACTIONS: " + grandTotal.getCount());
+        System.out.printf("SUBTOTAL: RM%s  DISCOUNT: RM%s  TAX: RM%s  TOTAL: RM%s\n",
+                Money.format(grandTotal.getSubtotal()), Money.format(grandTotal.getDiscount()),
+                Money.format(grandTotal.getTax()), Money.format(grandTotal.getTotal()));
+
+        printSummaryTable("LAST 24 HOURS", "HOUR", recentHours, "");
+        printSummaryTable("BY DAY", "DAY", byDay, "");
+        printSummaryTable("BY STAFF", "STAFF", byStaff, "S-");
+        printSummaryTable("BY MEMBER TIER", "TIER", byTier, "");
+
+        System.out.println("\nBY PRODUCT");
+        System.out.println("-------------------------------------------------------");
+        if (bySku.isEmpty()) {
+            System.out.println("NO SALES RECORDED.");
+        } else {
+            System.out.printf("%-15s %-15s %-15s\n", "STOCK ID", "QTY SOLD", "REVENUE");
+            for (Map.Entry<String, RollupRepository.Bucket> entry : bySku.entrySet()) {
+                System.out.printf("%-15s %-15d RM%-14s\n",
+                        entry.getKey(), entry.getValue().getQuantity(), Money.format(entry.getValue().getSubtotal()));
+            }
+        }
+        System.out.println("-------------------------------------------------------");
+    }
+
+    /**
+     * Prints the metrics as formatted by Metrics.dump().
+     */
+    public void printMetrics(String metrics) {
+        System.out.println("[ SYSTEM METRICS ]");
+        System.out.println("-------------------------------------------------------");
+        System.out.print(metrics);
+        System.out.println("-------------------------------------------------------");
+    }
+
+    // Cart reservations since startup: how many ended in a sale and how many were left to expire
+    public void printReservationStats(StockRepository.ReservationStats stats) {
+        System.out.println("\nCART RESERVATIONS (SINCE STARTUP)");
+        System.out.println("-------------------------------------------------------");
+        System.out.printf("MADE: %d  REFUSED: %d  ACTIVE: %d\n", stats.getMade(), stats.getRefused(), stats.getActive());
+        System.out.printf("PAID: %d  RELEASED: %d  EXPIRED: %d\n",
+                stats.getCommitted(), stats.getReleased(), stats.getExpired());
+        System.out.printf("HIT RATE: %.1f%%  EXPIRY RATE: %.1f%%\n", stats.getHitRate() * 100, stats.getExpiryRate() * 100);
+        System.out.println("-------------------------------------------------------");
+    }
+
+    private void printSummaryTable(String title, String keyLabel, Map<String, RollupRepository.Bucket> buckets,
+                                   String keyPrefix) {
+        System.out.println("\n" + title);
+        System.out.println("-------------------------------------------------------");
+        if (buckets.isEmpty()) {
+            System.out.println("NO SALES RECORDED.");
+            return;
+        }
+        System.out.printf("%-15s %-15s %-15s\n", keyLabel, "TRANSACTIONS", "TOTAL");
+        for (Map.Entry<String, RollupRepository.Bucket> entry : buckets.entrySet()) {
+            System.out.printf("%-15s %-15d RM%-14s\n",
+                    keyPrefix + entry.getKey(), entry.getValue().getCount(), Money.format(entry.getValue().getTotal()));
+        }
+    }
+
+    /**
+     * Prints the transaction report while reading the transactions, so only one page of
+     * rows is ever held in memory. After each full page showNextPage is asked whether to
+     * keep printing rows; either way the totals cover every transaction.
+     */
+    public void printTransactionReport(Iterator<TransactionRepository.Transaction> transactions, int pageSize,
+                                       BooleanSupplier showNextPage) {
         System.out.println("[ TRANSACTION REPORT ]");
         System.out.println("-------------------------------------------------------");
 
-        if (transactions.isEmpty()) {
+        if (!transactions.hasNext()) {
             System.out.println("NO TRANSACTIONS FOUND.");
-        } else {
-            System.out.printf("%-10s %-15s %-15s %-15s %-15s\n", "NO.", "SUBTOTAL", "DISCOUNT", "TAX", "TOTAL");
-            System.out.println("-------------------------------------------------------");
+            return;
+        }
+
+        System.out.printf("%-10s %-15s %-15s %-15s %-15s\n", "NO.", "SUBTOTAL", "DISCOUNT", "TAX", "TOTAL");
+        System.out.println("-------------------------------------------------------");
 
-            int transactionNo = 1;
-            double grandTotalSubtotal = 0.0;
-            double grandTotalDiscount = 0.0;
-            double grandTotalTax = 0.0;
-            double grandTotal = 0.0;
-
-            for (TransactionRepository.Transaction transaction : transactions) {
-                System.out.printf("%-10d RM%-14.2f RM%-14.2f RM%-14.2f RM%-14.2f\n",
-                        transactionNo++,
-                        transaction.getSubtotal(),
-                        transaction.getDiscount(),
-                        transaction.getTax(),
-                        transaction.getTotal());
-
-                grandTotalSubtotal += transaction.getSubtotal();
-                grandTotalDiscount += transaction.getDiscount();
-                grandTotalTax += transaction.getTax();
-                grandTotal += transaction.getTotal();
+        long transactionNo = 0;
+        // Summed in sen, so the totals are exact however many rows there are
+        long grandTotalSubtotal = Money.ZERO;
+        long grandTotalDiscount = Money.ZERO;
+        long grandTotalTax = Money.ZERO;
+        long grandTotal = Money.ZERO;
+        boolean printing = true;
+
+        while (transactions.hasNext()) {
+            TransactionRepository.Transaction transaction = transactions.next();
+            transactionNo++;
+
+            if (printing) {
+                System.out.printf("%-10d RM%-14s RM%-14s RM%-14s RM%-14s\n",
+                        transactionNo,
+                        Money.format(transaction.getSubtotal()),
+                        Money.format(transaction.getDiscount()),
+                        Money.format(transaction.getTax()),
+                        Money.format(transaction.getTotal()));
+
+                if (transactionNo % pageSize == 0 && transactions.hasNext()) {
+                    printing = showNextPage.getAsBoolean();
+                }
             }
 
-            System.out.println("-------------------------------------------------------");
-            System.out.printf("%-10s RM%-14.2f RM%-14.2f RM%-14.2f RM%-14.2f\n",
-                    "TOTAL:",
-                    grandTotalSubtotal,
-                    grandTotalDiscount,
-                    grandTotalTax,
-                    grandTotal);
-            System.out.println("-------------------------------------------------------");
-            System.out.println("TOTAL TRANSACTIONS: " + transactions.size());
+            grandTotalSubtotal += transaction.getSubtotal();
+            grandTotalDiscount += transaction.getDiscount();
+            grandTotalTax += transaction.getTax();
+            grandTotal += transaction.getTotal();
         }
+
+        System.out.println("-------------------------------------------------------");
+        System.out.printf("%-10s RM%-14s RM%-14s RM%-14s RM%-14s\n",
+                "TOTAL:",
+                Money.format(grandTotalSubtotal),
+                Money.format(grandTotalDiscount),
+                Money.format(grandTotalTax),
+                Money.format(grandTotal));
+        System.out.println("-------------------------------------------------------");
+        System.out.println("TOTAL TRANSACTIONS: " + transactionNo);
     }
 
     public void printExitMessage() {
@@ -1,7 +1,9 @@
 package assignment.view;
 
+import assignment.model.Cart;
 import assignment.model.Stock;
 import assignment.service.PaymentService;
+import assignment.util.Money;
 import java.util.List;
 
 /**
@@ -18,32 +20,33 @@ public class SalesView {
         System.out.println("-------------------------------------------------------");
 
         for (Stock stockItem : availableStock) {
-            if (stockItem.getQty() > 0) {
-                System.out.printf("%-15d %-20s %-15.2f %-10d\n",
+            if (stockItem.getAvailableQty() > 0) {
+                System.out.printf("%-15d %-20s %-15s %-10d\n",
                         stockItem.getStockID(),
                         stockItem.getStockName(),
-                        stockItem.getPrice(),
-                        stockItem.getQty());
+                        Money.format(stockItem.getPriceCents()),
+                        stockItem.getAvailableQty());
             }
         }
         System.out.println("-------------------------------------------------------");
     }
 
-    public void printOrderMenu() {
+    public void printOrderMenu(Cart cart) {
         System.out.println("[ ORDERING SYSTEM ]");
+        System.out.printf("CURRENT ORDER: %s (CART NO %d)\n", cart.getLabel(), cart.getId());
         System.out.println("-------------------------------------------------------");
     }
 
     public void printProductDetails(Stock foundStock) {
         System.out.printf("PRODUCT NAME: %s\n", foundStock.getStockName());
-        System.out.printf("PRODUCT PRICE: RM%.2f\n", foundStock.getPrice());
-        System.out.printf("AVAILABLE QUANTITY: %d\n", foundStock.getQty());
+        System.out.printf("PRODUCT PRICE: RM%s\n", Money.format(foundStock.getPriceCents()));
+        System.out.printf("AVAILABLE QUANTITY: %d\n", foundStock.getAvailableQty());
         System.out.println("-------------------------------------------------------");
     }
 
     public void printCartSummary(Stock foundStock, int quantity) {
         System.out.println("-------------------------------------------------------");
-        System.out.printf("TOTAL COST: RM%.2f\n", foundStock.getPrice() * quantity);
+        System.out.printf("TOTAL COST: RM%s\n", Money.format(Money.multiply(foundStock.getPriceCents(), quantity)));
         System.out.println("-------------------------------------------------------");
         System.out.println("[ORDER ADDED]");
     }
@@ -61,7 +64,7 @@ public class SalesView {
         System.out.println("ORDER NO " + item.getOrderNo());
         System.out.println("PRODUCT NAME: " + item.getStockName());
         System.out.println("QUANTITY: " + item.getQty());
-        System.out.printf("TOTAL COST: RM%.2f\n", item.calculateTotalCost());
+        System.out.printf("TOTAL COST: RM%s\n", Money.format(item.calculateTotalCost()));
         System.out.println("-----------------------");
     }
 
@@ -103,7 +106,7 @@ public class SalesView {
         System.out.println("-------------------------------------------------------");
         System.out.println("PRODUCT NAME: " + cartItem.getStockName());
         System.out.println("CURRENT QUANTITY IN ORDER: " + cartItem.getQty());
-        System.out.println("AVAILABLE QUANTITY IN INVENTORY: " + stockItem.getQty());
+        System.out.println("AVAILABLE QUANTITY IN INVENTORY: " + stockItem.getAvailableQty());
         System.out.println("-------------------------------------------------------");
     }
 
@@ -135,12 +138,12 @@ public class SalesView {
         System.out.println("-------------------------------------------------------");
 
         for (Stock item : cart) {
-            System.out.printf("%-15d %-20s %-10d RM%-9.2f RM%-14.2f\n",
+            System.out.printf("%-15d %-20s %-10d RM%-9s RM%-14s\n",
                     item.getOrderNo(),
                     item.getStockName(),
                     item.getQty(),
-                    item.getPrice(),
-                    item.calculateTotalCost());
+                    Money.format(item.getPriceCents()),
+                    Money.format(item.calculateTotalCost()));
         }
         System.out.println("-------------------------------------------------------");
     }
@@ -149,11 +152,11 @@ public class SalesView {
         System.out.println("\n-------------------------------------------------------");
         System.out.println("PAYMENT SUMMARY");
         System.out.println("-------------------------------------------------------");
-        System.out.printf("SUBTOTAL:        RM%.2f\n", result.getSubtotal());
-        System.out.printf("DISCOUNT:        RM%.2f\n", result.getDiscount());
-        System.out.printf("TAX (6%%):        RM%.2f\n", result.getTax());
+        System.out.printf("SUBTOTAL:        RM%s\n", Money.format(result.getSubtotal()));
+        System.out.printf("DISCOUNT:        RM%s\n", Money.format(result.getDiscount()));
+        System.out.printf("TAX (6%%):        RM%s\n", Money.format(result.getTax()));
         System.out.println("-------------------------------------------------------");
-        System.out.printf("TOTAL:           RM%.2f\n", result.getTotal());
+        System.out.printf("TOTAL:           RM%s\n", Money.format(result.getTotal()));
         System.out.println("-------------------------------------------------------");
     }
 
@@ -165,5 +168,42 @@ public class SalesView {
 
     public void printPaymentFailure() {
         System.out.println("<<<PAYMENT FAILED.>>>");
+        System.out.println("<<<Some items may no longer be available; please edit the order and try again.>>>");
+    }
+
+    public void printOpenCarts(List<Cart> carts, Cart currentCart) {
+        System.out.println("[ OPEN / SWITCH ORDER ]");
+        System.out.println("-------------------------------------------------------");
+        System.out.printf("%-10s %-20s %-10s %-15s\n", "CART NO", "LABEL", "LINES", "IDLE (MIN)");
+        System.out.println("-------------------------------------------------------");
+
+        long now = System.currentTimeMillis();
+        for (Cart cart : carts) {
+            System.out.printf("%-10d %-20s %-10d %-15d%s\n",
+                    cart.getId(),
+                    cart.getLabel(),
+                    cart.size(),
+                    (now - cart.getLastActivity()) / 60000,
+                    cart == currentCart ? " <- CURRENT" : "");
+        }
+        System.out.println("-------------------------------------------------------");
+    }
+
+    public void printCartOpened(Cart cart) {
+        System.out.printf("NEW ORDER %s OPENED (CART NO %d)\n", cart.getLabel(), cart.getId());
+    }
+
+    public void printCartSwitched(Cart cart) {
+        System.out.printf("SWITCHED TO ORDER %s (CART NO %d)\n", cart.getLabel(), cart.getId());
+    }
+
+    public void printCartNotFound() {
+        System.out.println("<<<No open order with that cart number.>>>");
+    }
+
+    public void printCartExpired(Cart newCart) {
+        System.out.println("<<<Your previous order was left idle and has expired; its items were released back to stock.>>>");
+        System.out.printf("<<<Now working on a new order: %s (CART NO %d)>>>\n", newCart.getLabel(), newCart.getId());
+        System.out.println("-------------------------------------------------------");
     }
 }
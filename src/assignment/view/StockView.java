@@ -1,6 +1,7 @@
 package assignment.view;
 
 import assignment.model.Stock;
+import assignment.util.Money;
 import java.util.List;
 
 /**
@@ -20,11 +21,11 @@ public class StockView {
         boolean found = false;
         for (Stock product : stockList) {
             // Display all products, even those with 0 quantity, for inventory view
-            System.out.printf("%-10d      %-25s%-10d  RM%-10.2f\n",
+            System.out.printf("%-10d      %-25s%-10d  RM%-10s\n",
                     product.getStockID(),
                     product.getStockName(),
                     product.getQty(),
-                    product.getPrice());
+                    Money.format(product.getPriceCents()));
             System.out.println("------------------------------------------------------------------");
             found = true;
         }